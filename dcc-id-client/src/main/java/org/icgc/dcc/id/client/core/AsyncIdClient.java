@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.client.core;
+
+import java.io.Closeable;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link IdClient}. Futures complete exceptionally with the same exceptions the blocking
+ * client throws.
+ */
+public interface AsyncIdClient extends Closeable {
+
+  /**
+   * Read-only
+   */
+
+  CompletableFuture<Optional<String>> getDonorId(String submittedDonorId, String submittedProjectId);
+
+  CompletableFuture<Optional<String>> getSampleId(String submittedSampleId, String submittedProjectId);
+
+  CompletableFuture<Optional<String>> getSpecimenId(String submittedSpecimenId, String submittedProjectId);
+
+  CompletableFuture<Optional<String>> getMutationId(String chromosome, String chromosomeStart, String chromosomeEnd,
+      String mutation, String mutationType, String assemblyVersion);
+
+  CompletableFuture<Optional<String>> getFileId(String submittedFileId);
+
+  CompletableFuture<Optional<String>> getObjectId(String analysisId, String fileName);
+
+  CompletableFuture<Optional<String>> getAnalysisId(String submittedAnalysisId);
+
+  /**
+   * Create if it doesn't exist
+   */
+
+  CompletableFuture<String> createDonorId(String submittedDonorId, String submittedProjectId);
+
+  CompletableFuture<String> createSpecimenId(String submittedSpecimenId, String submittedProjectId);
+
+  CompletableFuture<String> createSampleId(String submittedSampleId, String submittedProjectId);
+
+  CompletableFuture<String> createMutationId(String chromosome, String chromosomeStart, String chromosomeEnd,
+      String mutation, String mutationType, String assemblyVersion);
+
+  CompletableFuture<String> createFileId(String submittedFileId);
+
+  CompletableFuture<String> createAnalysisId(String submittedAnalysisId);
+
+  CompletableFuture<String> createRandomAnalysisId();
+
+  CompletableFuture<String> generateUniqueAnalysisId();
+
+}
@@ -18,8 +18,14 @@
 package org.icgc.dcc.id.client.core;
 
 import org.icgc.dcc.id.client.exception.ExportDataNotSupportedException;
+import org.icgc.dcc.id.core.MutationKey;
+
 import java.io.Closeable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 public interface IdClient extends Closeable {
 
@@ -63,6 +69,51 @@ public interface IdClient extends Closeable {
 
   String generateUniqueAnalysisId();
 
+  /**
+   * Batch variants. Read-only methods omit keys that were not found. Implementations should override these to avoid a
+   * round-trip per key.
+   */
+
+  default Map<String, String> getDonorIds(String submittedProjectId, Collection<String> submittedDonorIds) {
+    return collectIds(submittedDonorIds, submittedDonorId -> getDonorId(submittedDonorId, submittedProjectId));
+  }
+
+  default Map<String, String> getSpecimenIds(String submittedProjectId, Collection<String> submittedSpecimenIds) {
+    return collectIds(submittedSpecimenIds,
+        submittedSpecimenId -> getSpecimenId(submittedSpecimenId, submittedProjectId));
+  }
+
+  default Map<String, String> getSampleIds(String submittedProjectId, Collection<String> submittedSampleIds) {
+    return collectIds(submittedSampleIds, submittedSampleId -> getSampleId(submittedSampleId, submittedProjectId));
+  }
+
+  default Map<MutationKey, String> getMutationIds(Collection<MutationKey> mutations) {
+    return collectIds(mutations, mutation -> getMutationId(mutation.getChromosome(), mutation.getChromosomeStart(),
+        mutation.getChromosomeEnd(), mutation.getMutation(), mutation.getMutationType(),
+        mutation.getAssemblyVersion()));
+  }
+
+  default Map<String, String> createDonorIds(String submittedProjectId, Collection<String> submittedDonorIds) {
+    return collectIds(submittedDonorIds,
+        submittedDonorId -> Optional.of(createDonorId(submittedDonorId, submittedProjectId)));
+  }
+
+  default Map<String, String> createSpecimenIds(String submittedProjectId, Collection<String> submittedSpecimenIds) {
+    return collectIds(submittedSpecimenIds,
+        submittedSpecimenId -> Optional.of(createSpecimenId(submittedSpecimenId, submittedProjectId)));
+  }
+
+  default Map<String, String> createSampleIds(String submittedProjectId, Collection<String> submittedSampleIds) {
+    return collectIds(submittedSampleIds,
+        submittedSampleId -> Optional.of(createSampleId(submittedSampleId, submittedProjectId)));
+  }
+
+  default Map<MutationKey, String> createMutationIds(Collection<MutationKey> mutations) {
+    return collectIds(mutations, mutation -> Optional.of(createMutationId(mutation.getChromosome(),
+        mutation.getChromosomeStart(), mutation.getChromosomeEnd(), mutation.getMutation(), mutation.getMutationType(),
+        mutation.getAssemblyVersion())));
+  }
+
   /**
    *  export the whole data from the db table as a string
    */
@@ -91,4 +142,15 @@ public interface IdClient extends Closeable {
     throw new ExportDataNotSupportedException("analysis");
   }
 
+  static <K> Map<K, String> collectIds(Collection<K> keys, Function<K, Optional<String>> resolver) {
+    Map<K, String> ids = new LinkedHashMap<>();
+    for (K key : keys) {
+      if (!ids.containsKey(key)) {
+        resolver.apply(key).ifPresent(id -> ids.put(key, id));
+      }
+    }
+
+    return ids;
+  }
+
 }
@@ -23,6 +23,7 @@ import java.io.Serializable;
 
 import lombok.NonNull;
 
+import org.icgc.dcc.id.client.http.AsyncHttpIdClient;
 import org.icgc.dcc.id.client.http.HttpIdClient;
 import org.icgc.dcc.id.client.http.webclient.WebClientConfig;
 import org.icgc.dcc.id.client.util.HashIdClient;
@@ -85,4 +86,15 @@ public class IdClientFactory implements Serializable {
     }
   }
 
+  /**
+   * Creates {@link AsyncHttpIdClient}
+   */
+  public AsyncIdClient createAsync() {
+    if (HTTP_ID_CLIENT_CLASSNAME.equals(idClassName)) {
+      return new AsyncHttpIdClient(config);
+    } else {
+      throw new IllegalArgumentException(format("%s client is not supported asynchronously", idClassName));
+    }
+  }
+
 }
@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.client.http;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.util.EntityUtils;
+import org.icgc.dcc.id.client.core.AsyncIdClient;
+import org.icgc.dcc.id.client.http.webclient.WebClientConfig;
+import org.icgc.dcc.id.core.ExhaustedRetryException;
+import org.icgc.dcc.id.core.IdentifierException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javax.ws.rs.core.Response.Status.FORBIDDEN;
+import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
+import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+import static javax.ws.rs.core.Response.Status.UNAUTHORIZED;
+import static org.icgc.dcc.id.client.http.HttpIdClient.ANALYSIS_ID_PATH;
+import static org.icgc.dcc.id.client.http.HttpIdClient.DONOR_ID_PATH;
+import static org.icgc.dcc.id.client.http.HttpIdClient.FILE_ID_PATH;
+import static org.icgc.dcc.id.client.http.HttpIdClient.GENERATE_UNIQUE_UUID_PATH;
+import static org.icgc.dcc.id.client.http.HttpIdClient.MUTATION_ID_PATH;
+import static org.icgc.dcc.id.client.http.HttpIdClient.OBJECT_ID_PATH;
+import static org.icgc.dcc.id.client.http.HttpIdClient.SAMPLE_ID_PATH;
+import static org.icgc.dcc.id.client.http.HttpIdClient.SPECIMEN_ID_PATH;
+import static org.icgc.dcc.id.client.http.webclient.WebClientFactory.createAsyncClient;
+import static org.icgc.dcc.id.core.Prefixes.DONOR_ID_PREFIX;
+import static org.icgc.dcc.id.core.Prefixes.FILE_ID_PREFIX;
+import static org.icgc.dcc.id.core.Prefixes.MUTATION_ID_PREFIX;
+import static org.icgc.dcc.id.core.Prefixes.SAMPLE_ID_PREFIX;
+import static org.icgc.dcc.id.core.Prefixes.SPECIMEN_ID_PREFIX;
+import static org.icgc.dcc.id.util.Ids.validateId;
+
+/**
+ * {@link AsyncIdClient} on a non-blocking HTTP client. Follows the status handling of {@link HttpIdClient}, but
+ * schedules retries on a timer instead of sleeping so that no thread is held while a request is outstanding.
+ */
+@Slf4j
+public class AsyncHttpIdClient implements AsyncIdClient {
+
+  /**
+   * State.
+   */
+  private final CloseableHttpAsyncClient httpClient;
+  private final ScheduledExecutorService retryScheduler;
+  private final String serviceUrl;
+  private final String release;
+  private final WebClientConfig clientConfig;
+
+  public AsyncHttpIdClient(@NonNull WebClientConfig config) {
+    this.httpClient = createAsyncClient(config);
+    this.retryScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("id-client-retry-%d")
+        .setDaemon(true)
+        .build());
+    this.serviceUrl = config.getServiceUrl();
+    this.release = config.getRelease();
+    this.clientConfig = config;
+
+    httpClient.start();
+  }
+
+  @Override
+  public CompletableFuture<Optional<String>> getDonorId(@NonNull String submittedDonorId,
+      @NonNull String submittedProjectId) {
+    return getDonorId(submittedDonorId, submittedProjectId, false);
+  }
+
+  @Override
+  public CompletableFuture<String> createDonorId(@NonNull String submittedDonorId,
+      @NonNull String submittedProjectId) {
+    return getDonorId(submittedDonorId, submittedProjectId, true).thenApply(id -> checkCreated(id,
+        "Failed to create donor id. submittedDonorId: '%s', submittedProjectId: '%s'",
+        submittedDonorId, submittedProjectId));
+  }
+
+  private CompletableFuture<Optional<String>> getDonorId(String submittedDonorId, String submittedProjectId,
+      boolean create) {
+    val request = request(DONOR_ID_PATH)
+        .addParameter("submittedDonorId", submittedDonorId)
+        .addParameter("submittedProjectId", submittedProjectId)
+        .addParameter("release", release)
+        .addParameter("create", String.valueOf(create));
+
+    return getResponse(request).thenApply(id -> validate(id, DONOR_ID_PREFIX));
+  }
+
+  @Override
+  public CompletableFuture<Optional<String>> getSpecimenId(@NonNull String submittedSpecimenId,
+      @NonNull String submittedProjectId) {
+    return getSpecimenId(submittedSpecimenId, submittedProjectId, false);
+  }
+
+  @Override
+  public CompletableFuture<String> createSpecimenId(@NonNull String submittedSpecimenId,
+      @NonNull String submittedProjectId) {
+    return getSpecimenId(submittedSpecimenId, submittedProjectId, true).thenApply(id -> checkCreated(id,
+        "Failed to create specimen id. submittedSpecimenId: '%s', submittedProjectId: '%s'",
+        submittedSpecimenId, submittedProjectId));
+  }
+
+  private CompletableFuture<Optional<String>> getSpecimenId(String submittedSpecimenId, String submittedProjectId,
+      boolean create) {
+    val request = request(SPECIMEN_ID_PATH)
+        .addParameter("submittedSpecimenId", submittedSpecimenId)
+        .addParameter("submittedProjectId", submittedProjectId)
+        .addParameter("release", release)
+        .addParameter("create", String.valueOf(create));
+
+    return getResponse(request).thenApply(id -> validate(id, SPECIMEN_ID_PREFIX));
+  }
+
+  @Override
+  public CompletableFuture<Optional<String>> getSampleId(@NonNull String submittedSampleId,
+      @NonNull String submittedProjectId) {
+    return getSampleId(submittedSampleId, submittedProjectId, false);
+  }
+
+  @Override
+  public CompletableFuture<String> createSampleId(@NonNull String submittedSampleId,
+      @NonNull String submittedProjectId) {
+    return getSampleId(submittedSampleId, submittedProjectId, true).thenApply(id -> checkCreated(id,
+        "Failed to create sample id. submittedSampleId: '%s', submittedProjectId: '%s'",
+        submittedSampleId, submittedProjectId));
+  }
+
+  private CompletableFuture<Optional<String>> getSampleId(String submittedSampleId, String submittedProjectId,
+      boolean create) {
+    val request = request(SAMPLE_ID_PATH)
+        .addParameter("submittedSampleId", submittedSampleId)
+        .addParameter("submittedProjectId", submittedProjectId)
+        .addParameter("release", release)
+        .addParameter("create", String.valueOf(create));
+
+    return getResponse(request).thenApply(id -> validate(id, SAMPLE_ID_PREFIX));
+  }
+
+  @Override
+  public CompletableFuture<Optional<String>> getMutationId(@NonNull String chromosome,
+      @NonNull String chromosomeStart, @NonNull String chromosomeEnd, @NonNull String mutation,
+      @NonNull String mutationType, @NonNull String assemblyVersion) {
+    return getMutationId(chromosome, chromosomeStart, chromosomeEnd, mutation, mutationType, assemblyVersion, false);
+  }
+
+  @Override
+  public CompletableFuture<String> createMutationId(@NonNull String chromosome, @NonNull String chromosomeStart,
+      @NonNull String chromosomeEnd, @NonNull String mutation, @NonNull String mutationType,
+      @NonNull String assemblyVersion) {
+    return getMutationId(chromosome, chromosomeStart, chromosomeEnd, mutation, mutationType, assemblyVersion, true)
+        .thenApply(id -> checkCreated(id, "Failed to create mutation id. chromosome: '%s', chromosomeStart: '%s', "
+            + "chromosomeEnd: '%s', mutation: '%s', mutationType: '%s', assemblyVersion: '%s'", chromosome,
+            chromosomeStart, chromosomeEnd, mutation, mutationType, assemblyVersion));
+  }
+
+  private CompletableFuture<Optional<String>> getMutationId(String chromosome, String chromosomeStart,
+      String chromosomeEnd, String mutation, String mutationType, String assemblyVersion, boolean create) {
+    val request = request(MUTATION_ID_PATH)
+        .addParameter("chromosome", chromosome)
+        .addParameter("chromosomeStart", chromosomeStart)
+        .addParameter("chromosomeEnd", chromosomeEnd)
+        .addParameter("mutation", mutation)
+        .addParameter("mutationType", mutationType)
+        .addParameter("assemblyVersion", assemblyVersion)
+        .addParameter("release", release)
+        .addParameter("create", String.valueOf(create));
+
+    return getResponse(request).thenApply(id -> validate(id, MUTATION_ID_PREFIX));
+  }
+
+  @Override
+  public CompletableFuture<Optional<String>> getFileId(@NonNull String submittedFileId) {
+    return getFileId(submittedFileId, false);
+  }
+
+  @Override
+  public CompletableFuture<String> createFileId(@NonNull String submittedFileId) {
+    return getFileId(submittedFileId, true).thenApply(id -> checkCreated(id,
+        "Failed to create file id. submittedFileId: '%s'", submittedFileId));
+  }
+
+  private CompletableFuture<Optional<String>> getFileId(String submittedFileId, boolean create) {
+    val request = request(FILE_ID_PATH)
+        .addParameter("submittedFileId", submittedFileId)
+        .addParameter("create", String.valueOf(create));
+
+    return getResponse(request).thenApply(id -> validate(id, FILE_ID_PREFIX));
+  }
+
+  @Override
+  public CompletableFuture<Optional<String>> getObjectId(@NonNull String analysisId, @NonNull String fileName) {
+    val request = request(OBJECT_ID_PATH)
+        .addParameter("analysisId", analysisId)
+        .addParameter("fileName", fileName);
+
+    return getResponse(request);
+  }
+
+  @Override
+  public CompletableFuture<Optional<String>> getAnalysisId(@NonNull String submittedAnalysisId) {
+    return getAnalysisId(submittedAnalysisId, false);
+  }
+
+  @Override
+  public CompletableFuture<String> createAnalysisId(@NonNull String submittedAnalysisId) {
+    return getAnalysisId(submittedAnalysisId, true).thenApply(id -> checkCreated(id,
+        "Failed to create analysis id. submittedAnalysisId: '%s'", submittedAnalysisId));
+  }
+
+  private CompletableFuture<Optional<String>> getAnalysisId(String submittedAnalysisId, boolean create) {
+    val request = request(ANALYSIS_ID_PATH)
+        .addParameter("submittedAnalysisId", submittedAnalysisId)
+        .addParameter("create", String.valueOf(create));
+
+    return getResponse(request);
+  }
+
+  @Override
+  public CompletableFuture<String> createRandomAnalysisId() {
+    return getResponse(request(ANALYSIS_ID_PATH))
+        .thenApply(id -> checkCreated(id, "Failed to create a random analysis id"));
+  }
+
+  @Override
+  public CompletableFuture<String> generateUniqueAnalysisId() {
+    return getResponse(request(GENERATE_UNIQUE_UUID_PATH))
+        .thenApply(id -> checkCreated(id, "Failed to create a random analysis id"));
+  }
+
+  @Override
+  public void close() throws IOException {
+    log.info("Destroying async client...");
+    retryScheduler.shutdownNow();
+    httpClient.close();
+    log.info("Async client destroyed");
+  }
+
+  /*
+   * Helpers
+   */
+
+  @SneakyThrows
+  private URIBuilder request(String path) {
+    return new URIBuilder(serviceUrl + path);
+  }
+
+  @SneakyThrows
+  private CompletableFuture<Optional<String>> getResponse(URIBuilder request) {
+    val result = new CompletableFuture<Optional<String>>();
+    execute(request.build(), RetryContext.create(clientConfig), result);
+
+    return result;
+  }
+
+  private void execute(URI uri, RetryContext retryContext, CompletableFuture<Optional<String>> result) {
+    try {
+      httpClient.execute(new HttpGet(uri), new FutureCallback<HttpResponse>() {
+
+        @Override
+        public void completed(HttpResponse response) {
+          try {
+            handleResponse(uri, response, retryContext, result);
+          } catch (Exception e) {
+            result.completeExceptionally(e);
+          }
+        }
+
+        @Override
+        public void failed(Exception e) {
+          if (e instanceof IOException) {
+            log.info("Error requesting {}, {}: {}", uri, retryContext, e.getMessage());
+            retry(uri, retryContext, result, e);
+          } else {
+            result.completeExceptionally(new IdentifierException(e));
+          }
+        }
+
+        @Override
+        public void cancelled() {
+          result.cancel(false);
+        }
+
+      });
+    } catch (Exception e) {
+      // Client already closed
+      result.completeExceptionally(new IdentifierException(e));
+    }
+  }
+
+  private void handleResponse(URI uri, HttpResponse response, RetryContext retryContext,
+      CompletableFuture<Optional<String>> result) throws IOException {
+    val statusCode = response.getStatusLine().getStatusCode();
+
+    // Always consume the entity so the connection goes back to the pool
+    val entity = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity(), UTF_8);
+
+    if (isNonRetriableError(statusCode)) {
+      throw new IdentifierException(entity);
+    } else if (statusCode == NOT_FOUND.getStatusCode()) {
+      result.complete(Optional.empty());
+    } else if (statusCode == SERVICE_UNAVAILABLE.getStatusCode()) {
+      log.warn("Could not get {}", uri);
+      retry(uri, retryContext, result, null);
+    } else if (isClientError(statusCode) || isServerError(statusCode)) {
+      val errorFamily = isClientError(statusCode) ? "CLIENT" : "SERVER";
+      log.info("{} Error requesting {}, {}: {}", errorFamily, uri, retryContext, statusCode);
+      throw new IdentifierException(
+          format("A %s ERROR occurred requesting '%s' with the response status [%s]: %s",
+              errorFamily, uri, statusCode, response.getStatusLine().getReasonPhrase()));
+    } else {
+      result.complete(Optional.of(entity));
+    }
+  }
+
+  private void retry(URI uri, RetryContext retryContext, CompletableFuture<Optional<String>> result,
+      Throwable cause) {
+    if (!retryContext.isRetry()) {
+      log.error("Failed to request ID because of exhausted retries. Request: {}", uri);
+      val exhaustedRetryException = new ExhaustedRetryException();
+      if (cause != null) {
+        exhaustedRetryException.initCause(cause);
+      }
+
+      result.completeExceptionally(exhaustedRetryException);
+      return;
+    }
+
+    log.info("Waiting for {} seconds before retrying {}...", retryContext.getSleepSeconds(), uri);
+    val nextContext = RetryContext.next(retryContext);
+    try {
+      retryScheduler.schedule(() -> execute(uri, nextContext, result), retryContext.getSleepSeconds(), SECONDS);
+    } catch (Exception e) {
+      // Client already closed
+      result.completeExceptionally(new IdentifierException(e));
+    }
+  }
+
+  private static Optional<String> validate(Optional<String> id, String prefix) {
+    validateId(id, prefix);
+    return id;
+  }
+
+  private static String checkCreated(Optional<String> id, String message, Object... args) {
+    checkState(id.isPresent() && !isNullOrEmpty(id.get()), message, args);
+    return id.get();
+  }
+
+  private static boolean isNonRetriableError(int statusCode) {
+    return statusCode == UNAUTHORIZED.getStatusCode()
+        || statusCode == FORBIDDEN.getStatusCode()
+        || statusCode == INTERNAL_SERVER_ERROR.getStatusCode();
+  }
+
+  private static boolean isClientError(int statusCode) {
+    return statusCode >= 400 && statusCode < 500;
+  }
+
+  private static boolean isServerError(int statusCode) {
+    return statusCode >= 500 && statusCode < 600;
+  }
+
+}
@@ -17,18 +17,18 @@
  */
 package org.icgc.dcc.id.client.http;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.nio.file.Files;
 import java.util.zip.GZIPInputStream;
 
 import com.google.common.net.HttpHeaders;
 
-import lombok.Cleanup;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
@@ -41,36 +41,71 @@ public class ExportClient {
    * Constants.
    */
   private static final String DEFAULT_SERVICE_URL = "https://id.icgc.org/";
+  private static final int BUFFER_SIZE = 64 * 1024;
 
   /**
    * Configuration.
    */
+  @NonNull
   private final String serviceUrl;
+  @NonNull
+  private final ExportClientConfig config;
 
   public ExportClient() {
     this(DEFAULT_SERVICE_URL);
   }
 
-  @SneakyThrows
+  public ExportClient(String serviceUrl) {
+    this(serviceUrl, ExportClientConfig.builder().build());
+  }
+
   public BufferedReader exportEntity(@NonNull String entity) {
-    return new BufferedReader(new InputStreamReader(new GZIPInputStream(readEntityExport(entity))));
+    return exportEntity(entity, null);
   }
 
+  /**
+   * Streams the export in a single request. Prefer {@link #downloadEntityExport} for full exports.
+   *
+   * @param sinceId when not {@code null}, only ids greater than {@code sinceId} are exported
+   */
+  public BufferedReader exportEntity(@NonNull String entity, Long sinceId) {
+    return new BufferedReader(new InputStreamReader(openEntityExport(entity, sinceId), UTF_8));
+  }
+
+  /**
+   * Like {@link #exportEntity(String, Long)}, but returns the decompressed bytes for callers that parse lines
+   * themselves.
+   */
   @SneakyThrows
-  public void downloadEntityExport(@NonNull String entity, File exportFile) {
-    @Cleanup
-    val in = readEntityExport(entity);
+  public InputStream openEntityExport(@NonNull String entity, Long sinceId) {
+    val connection = openConnection(getExportUrl(entity, sinceId), config);
+
+    return new GZIPInputStream(connection.getInputStream(), BUFFER_SIZE);
+  }
+
+  /**
+   * Downloads the gzipped export of {@code entity} to {@code exportFile}, replacing it if it exists.
+   * <p>
+   * The export is fetched in {@code chunkSize} ranges over {@code parallelism} connections. Each chunk is retried on
+   * its own, and a failed download resumes where it left off when called again. See {@link RangeDownload}.
+   */
+  public void downloadEntityExport(@NonNull String entity, @NonNull File exportFile) {
+    new RangeDownload(config, getExportUrl(entity, null), exportFile).run();
+  }
 
-    Files.copy(in, exportFile.toPath());
+  @SneakyThrows
+  private URL getExportUrl(String entity, Long sinceId) {
+    return new URL(serviceUrl + "/" + entity + "/export" + (sinceId == null ? "" : "?sinceId=" + sinceId));
   }
 
   @SneakyThrows
-  private InputStream readEntityExport(String entity) {
-    val url = new URL(serviceUrl + "/" + entity + "/export");
+  static HttpURLConnection openConnection(URL url, ExportClientConfig config) {
     val connection = (HttpURLConnection) url.openConnection();
+    connection.setConnectTimeout(config.getConnectTimeoutSeconds() * 1000);
+    connection.setReadTimeout(config.getReadTimeoutSeconds() * 1000);
     connection.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, "gzip");
 
-    return connection.getInputStream();
+    return connection;
   }
 
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.client.http;
+
+import java.io.Serializable;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.val;
+
+@Value
+@Builder
+public class ExportClientConfig implements Serializable {
+
+  /**
+   * Timeouts.
+   */
+  int connectTimeoutSeconds;
+  int readTimeoutSeconds;
+
+  /**
+   * Retries, per chunk.
+   */
+  int maxRetries;
+  int waitBeforeRetrySeconds;
+  float retryMultiplier;
+
+  /**
+   * Chunked downloads.
+   */
+  int parallelism;
+  long chunkSize;
+
+  public static ExportClientConfigBuilder builder() {
+    val builder = new ExportClientConfigBuilder();
+    builder.connectTimeoutSeconds(30);
+    builder.readTimeoutSeconds(300);
+    builder.maxRetries(10);
+    builder.waitBeforeRetrySeconds(3);
+    builder.retryMultiplier(1.5f);
+    builder.parallelism(4);
+    builder.chunkSize(64L * 1024 * 1024);
+
+    return builder;
+  }
+
+}
@@ -18,42 +18,76 @@
 package org.icgc.dcc.id.client.http;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.Cleanup;
-import lombok.Getter;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.icgc.dcc.id.client.util.FileMutex;
+import org.icgc.dcc.id.client.util.IdIndex;
+import org.icgc.dcc.id.client.util.IdIndexLoader;
+import org.icgc.dcc.id.client.util.IdIndexLoader.KeyEncoder;
+import org.icgc.dcc.id.client.util.IdIndexWriter;
+import org.icgc.dcc.id.core.MutationKeyCodec;
 import org.icgc.dcc.id.core.Prefixes;
-import org.mapdb.DB;
-import org.mapdb.DBException;
-import org.mapdb.DBMaker;
-import org.mapdb.Serializer;
 
 import java.io.File;
-import java.util.Map;
+import java.io.FileInputStream;
+import java.time.Duration;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
 
-import static lombok.AccessLevel.PRIVATE;
-import static org.icgc.dcc.common.core.util.Formats.formatCount;
+import static com.google.common.base.Preconditions.checkState;
 import static org.icgc.dcc.common.core.util.Joiners.TAB;
+import static org.icgc.dcc.id.client.util.IdIndex.NOT_FOUND;
 
 /**
  * Memory efficient, disk based cache for all entity ids.
  * <p>
  * Works with the dcc-id-server's {@code /export} APIs to download the entire DB. Can be used with and {@code IdClient}
  * to significantly improve lookup times.'
+ * <p>
+ * Each entity is stored as a sorted, memory mapped {@link IdIndex}, so lookups are lock-free and safe to share across
+ * threads.
+ * <p>
+ * Refreshing downloads only the ids created since shortly before the highest cached id and merges the new ones into a
+ * new index. Readers keep
+ * using the previous snapshot until the new one has been swapped in. Refreshes happen on demand via
+ * {@link #refresh()}, or in the background once a snapshot is older than {@code maxAge}.
  */
 @Slf4j
-@RequiredArgsConstructor
 public class ExportIdCache implements AutoCloseable {
 
   /**
    * Constants.
    */
   private static final File DEFAULT_CACHE_DIR = new File("/tmp");
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * How far below the highest cached id a delta starts. Ids are drawn when a row is inserted but only become visible
+   * when its transaction commits, so an id below the highest one seen can still appear after a refresh. Re-reading
+   * the ids within this distance picks those up, and the ones already cached are skipped.
+   */
+  static final long DELTA_ID_MARGIN = 100_000;
+
+  /**
+   * Analysis ids are not sequential, so they are always reloaded in full.
+   */
+  private static final String ANALYSIS_ENTITY = "analysis";
+
+  /**
+   * Mutation keys are indexed in {@link MutationKeyCodec} form, under a different file name than the plain keys of
+   * earlier versions.
+   */
+  private static final String MUTATION_ENTITY = "mutation";
+  private static final String MUTATION_INDEX_SUFFIX = ".packed.idx";
 
   /**
    * Configuration.
@@ -62,38 +96,19 @@ public class ExportIdCache implements AutoCloseable {
 
   private final ExportClient exportClient;
 
+  /**
+   * Age after which a lookup schedules a refresh, or {@code null} to only refresh on demand.
+   */
+  private final Duration maxAge;
+
   /**
    * State.
    */
-  @Getter(lazy = true, value = PRIVATE)
-  private final DB donorDB = loadEntity("donor");
-  @Getter(lazy = true, value = PRIVATE)
-  private final Map<String, Long> donorIds = createEntityMap(getDonorDB(), "donor");
-
-  @Getter(lazy = true, value = PRIVATE)
-  private final DB specimenDB = loadEntity("specimen");
-  @Getter(lazy = true, value = PRIVATE)
-  private final Map<String, Long> specimenIds = createEntityMap(getSpecimenDB(), "specimen");
-
-  @Getter(lazy = true, value = PRIVATE)
-  private final DB sampleDB = loadEntity("sample");
-  @Getter(lazy = true, value = PRIVATE)
-  private final Map<String, Long> sampleIds = createEntityMap(getSampleDB(), "sample");
-
-  @Getter(lazy = true, value = PRIVATE)
-  private final DB mutationDB = loadEntity("mutation");
-  @Getter(lazy = true, value = PRIVATE)
-  private final Map<String, Long> mutationIds = createEntityMap(getMutationDB(), "mutation");
-
-  @Getter(lazy = true, value = PRIVATE)
-  private final DB fileDB = loadEntity("file");
-  @Getter(lazy = true, value = PRIVATE)
-  private final Map<String, Long> fileIds = createEntityMap(getFileDB(), "file");
-
-  @Getter(lazy = true, value = PRIVATE)
-  private final DB analysisDB = loadEntity("analysis");
-  @Getter(lazy = true, value = PRIVATE)
-  private final Set<String> analysisIds = createEntitySet(getAnalysisDB(), "analysis");
+  private final ConcurrentMap<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+  private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+  private final ExecutorService refreshExecutor;
+  private final IdIndexLoader loader = new IdIndexLoader();
 
   private volatile boolean closed;
 
@@ -101,75 +116,123 @@ public class ExportIdCache implements AutoCloseable {
     this(DEFAULT_CACHE_DIR, new ExportClient());
   }
 
+  public ExportIdCache(@NonNull File cacheDir, @NonNull ExportClient exportClient) {
+    this(cacheDir, exportClient, null);
+  }
+
+  public ExportIdCache(@NonNull File cacheDir, @NonNull ExportClient exportClient, Duration maxAge) {
+    this.cacheDir = cacheDir;
+    this.exportClient = exportClient;
+    this.maxAge = maxAge;
+    this.refreshExecutor = maxAge == null ? null : Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("export-id-cache-refresh-%d")
+        .setDaemon(true)
+        .build());
+  }
+
   public String getDonorId(@NonNull String projectCode, @NonNull String submittedDonorId) {
     val key = TAB.join(submittedDonorId, projectCode);
-    val id = getDonorIds().get(key);
-    if (id == null) return null;
+    val id = getIndex("donor").get(key);
+    if (id == NOT_FOUND) return null;
 
     return Prefixes.DONOR_ID_PREFIX + id;
   }
 
   public String getSpecimenId(@NonNull String projectCode, @NonNull String submittedSpecimenId) {
     val key = TAB.join(submittedSpecimenId, projectCode);
-    val id = getSpecimenIds().get(key);
-    if (id == null) return null;
+    val id = getIndex("specimen").get(key);
+    if (id == NOT_FOUND) return null;
 
     return Prefixes.SPECIMEN_ID_PREFIX + id;
   }
 
   public String getSampleId(@NonNull String projectCode, @NonNull String submittedSampleId) {
     val key = TAB.join(submittedSampleId, projectCode);
-    val id = getSampleIds().get(key);
-    if (id == null) return null;
+    val id = getIndex("sample").get(key);
+    if (id == NOT_FOUND) return null;
 
     return Prefixes.SAMPLE_ID_PREFIX + id;
   }
 
   public String getAnalysisId(@NonNull String submittedAnalysisId) {
-    return getAnalysisIds().contains(submittedAnalysisId) ? submittedAnalysisId : null;
+    return getIndex(ANALYSIS_ENTITY).contains(submittedAnalysisId) ? submittedAnalysisId : null;
   }
 
   public String getMutationId(@NonNull String chromosome, @NonNull String chromosomeStart,
       @NonNull String chromosomeEnd, @NonNull String mutation, @NonNull String mutationType,
       @NonNull String assemblyVersion) {
-    val key = TAB.join(chromosome, chromosomeStart, chromosomeEnd, mutation, mutationType, assemblyVersion);
-    val id = getMutationIds().get(key);
-    if (id == null) return null;
+    val key = MutationKeyCodec.encode(chromosome, chromosomeStart, chromosomeEnd, mutation, mutationType,
+        assemblyVersion);
+    val id = getIndex(MUTATION_ENTITY).get(key.toBytes());
+    if (id == NOT_FOUND) return null;
 
     return Prefixes.MUTATION_ID_PREFIX + id;
   }
 
   public String getFileId(@NonNull String submittedFileId) {
-    val id = getFileIds().get(submittedFileId);
-    if (id == null) return null;
+    val id = getIndex("file").get(submittedFileId);
+    if (id == NOT_FOUND) return null;
 
     return Prefixes.FILE_ID_PREFIX + id;
   }
 
+  /**
+   * Refreshes every loaded entity, returning once the new snapshots are in place.
+   */
+  public void refresh() {
+    for (val entity : snapshots.keySet()) {
+      refresh(entity);
+    }
+  }
+
+  public void refresh(@NonNull String entity) {
+    refreshEntity(entity, true);
+  }
+
   @Override
   public void close() {
-    log.info("Closing dbs...");
+    log.info("Closing indexes...");
     closed = true;
 
-    if (getDonorDB() != null) getDonorDB().close();
-    if (getSpecimenDB() != null) getSpecimenDB().close();
-    if (getSampleDB() != null) getSampleDB().close();
-    if (getMutationDB() != null) getMutationDB().close();
-    if (getFileDB() != null) getFileDB().close();
-    log.info("Closed dbs");
+    if (refreshExecutor != null) refreshExecutor.shutdownNow();
+    snapshots.values().forEach(snapshot -> snapshot.getIndex().close());
+    snapshots.clear();
+    log.info("Closed indexes");
+  }
+
+  private IdIndex getIndex(String entity) {
+    checkState(!closed, "Cache is closed");
+    Snapshot snapshot = snapshots.get(entity);
+    if (snapshot == null) {
+      snapshot = loadEntity(entity);
+    }
+
+    if (maxAge != null && snapshot.isOlderThan(maxAge) && refreshing.add(entity)) {
+      refreshExecutor.execute(() -> {
+        try {
+          refreshEntity(entity, false);
+        } catch (Exception e) {
+          log.error("Error refreshing {} ids, retrying in {}: {}", entity, maxAge, e.getMessage());
+          snapshots.computeIfPresent(entity, (key, stale) -> new Snapshot(stale.getIndex(), now()));
+        } finally {
+          refreshing.remove(entity);
+        }
+      });
+    }
+
+    return snapshot.getIndex();
   }
 
   @SneakyThrows
-  private synchronized DB loadEntity(String entity) {
-    // TODO: Implement a refresh policy for the file
-    {
-      if (closed) {
-        // Avoid loading on close() access.
-        return null;
+  private Snapshot loadEntity(String entity) {
+    synchronized (getLock(entity)) {
+      val loaded = snapshots.get(entity);
+      if (loaded != null) {
+        return loaded;
       }
 
-      val dbFile = getEntityDBFile(entity);
-      val lockFile = getEntityDBLockFile(entity);
+      val indexFile = getEntityIndexFile(entity);
+      val lockFile = getEntityIndexLockFile(entity);
 
       // Only one process should be in this section at a time
       log.info("Acquiring lock file: {}...", lockFile);
@@ -177,23 +240,23 @@ public class ExportIdCache implements AutoCloseable {
 
         @Override
         public void withLock() {
-          if (dbFile.exists()) {
+          if (indexFile.exists()) {
             log.info("{} ids available, skipping download.", entity);
             try {
-              log.info("Verifying {} db...", entity);
+              log.info("Verifying {} index...", entity);
 
               @Cleanup
-              DB db = createEntityDB(entity, true);
-              log.info("{} db appears valid", entity);
-            } catch (DBException e) {
-              log.error("Error verifying existing {} db file {}: {}", entity, dbFile, e.getMessage());
+              val index = IdIndex.open(indexFile);
+              log.info("{} index appears valid", entity);
+            } catch (Exception e) {
+              log.error("Error verifying existing {} index file {}: {}", entity, indexFile, e.getMessage());
 
-              log.warn("Deleting {}", dbFile);
-              dbFile.delete();
+              log.warn("Deleting {}", indexFile);
+              indexFile.delete();
 
-              log.warn("Refreshing {}...", dbFile);
+              log.warn("Refreshing {}...", indexFile);
               readEntity(entity);
-              log.warn("Finished refreshing {}", dbFile);
+              log.warn("Finished refreshing {}", indexFile);
             }
           } else {
             readEntity(entity);
@@ -201,9 +264,56 @@ public class ExportIdCache implements AutoCloseable {
         }
 
       };
+
+      return swap(entity, null);
     }
+  }
+
+  @SneakyThrows
+  private void refreshEntity(String entity, boolean force) {
+    synchronized (getLock(entity)) {
+      val current = snapshots.containsKey(entity) ? snapshots.get(entity) : loadEntity(entity);
+      val indexFile = getEntityIndexFile(entity);
+      val lockFile = getEntityIndexLockFile(entity);
+
+      log.info("Acquiring lock file: {}...", lockFile);
+      new FileMutex(lockFile) {
 
-    return createEntityDB(entity, true);
+        @Override
+        public void withLock() {
+          if (!force && indexFile.lastModified() > current.getTimestamp()) {
+            log.info("{} ids already refreshed by another process", entity);
+          } else if (ANALYSIS_ENTITY.equals(entity)) {
+            readEntity(entity);
+          } else {
+            readEntityDelta(entity, current.getIndex());
+          }
+        }
+
+      };
+
+      swap(entity, current);
+    }
+  }
+
+  /**
+   * Opens the current index file and publishes it, closing the snapshot it replaces.
+   */
+  @SneakyThrows
+  private Snapshot swap(String entity, Snapshot previous) {
+    val indexFile = getEntityIndexFile(entity);
+    val snapshot = new Snapshot(IdIndex.open(indexFile), indexFile.lastModified());
+    if (closed) {
+      snapshot.getIndex().close();
+      return snapshot;
+    }
+
+    snapshots.put(entity, snapshot);
+    if (previous != null) {
+      previous.getIndex().close();
+    }
+
+    return snapshot;
   }
 
   @SneakyThrows
@@ -211,78 +321,83 @@ public class ExportIdCache implements AutoCloseable {
     log.info("Reading {} ids...", entity);
     val watch = Stopwatch.createStarted();
 
+    // Download first so that a dropped connection resumes rather than restarts
+    val exportFile = new File(cacheDir, entity + ".tsv.gz");
+    exportClient.downloadEntityExport(entity, exportFile);
+
     @Cleanup
-    val db = createEntityDB(entity, false);
-    val map = createEntityMap(db, entity);
+    val writer = new IdIndexWriter(getEntityIndexFile(entity));
 
     @Cleanup
-    val export = exportClient.exportEntity(entity);
+    val export = new GZIPInputStream(new FileInputStream(exportFile), BUFFER_SIZE);
+    val count = loader.load(entity, export, writer, getKeyEncoder(entity));
 
-    String line;
-    int count = 0;
-    while ((line = export.readLine()) != null) {
-      val id = parseId(line);
-      val key = parseKey(line);
-      map.put(key, id);
+    log.info("Indexing {} {} ids...", count, entity);
+    writer.finish();
+    exportFile.delete();
 
-      if (++count % 1_000_000 == 0) {
-        log.info("Processed {} {}s", formatCount(count), entity);
-      }
-    }
-
-    log.info("Finished reading {} {} ids in {}", formatCount(count), entity, watch);
+    log.info("Finished reading {} {} ids in {}", count, entity, watch);
   }
 
-  private DB createEntityDB(String entity, boolean readOnly) {
-    val file = getEntityDBFile(entity);
-    if (readOnly) {
-      return DBMaker
-          .fileDB(file)
-          .concurrencyDisable()
-          .fileMmapEnable()
-          .readOnly()
-          .closeOnJvmShutdown()
-          .make();
+  @SneakyThrows
+  private void readEntityDelta(String entity, IdIndex current) {
+    val sinceId = Math.max(0, current.getMaxId() - DELTA_ID_MARGIN);
+    log.info("Reading {} ids since {}...", entity, sinceId);
+    val watch = Stopwatch.createStarted();
+
+    val indexFile = getEntityIndexFile(entity);
+    @Cleanup
+    val writer = new IdIndexWriter(indexFile, current);
+
+    @Cleanup
+    val export = exportClient.openEntityExport(entity, sinceId);
+    val count = loader.load(entity, export, writer, getKeyEncoder(entity));
+    val added = writer.getAddedCount();
+
+    if (added == 0) {
+      // Nothing to merge, just restart the clock
+      indexFile.setLastModified(now());
     } else {
-      return DBMaker
-          .fileDB(file)
-          .concurrencyDisable()
-          .fileMmapEnable()
-          .make();
+      writer.finish();
     }
-  }
 
-  private File getEntityDBFile(String entity) {
-    return new File(cacheDir, entity + ".db");
+    log.info("Finished reading {} {} ids, {} new, in {}", count, entity, added, watch);
   }
 
-  private File getEntityDBLockFile(String entity) {
-    val dbFile = getEntityDBFile(entity);
-    return new File(dbFile.getParentFile(), dbFile.getName() + ".lock");
+  private Object getLock(String entity) {
+    return locks.computeIfAbsent(entity, key -> new Object());
   }
 
-  private static Set<String> createEntitySet(DB db, String name) {
-    return db
-        .hashSet(name, Serializer.STRING_ASCII)
-        .createOrOpen();
+  private static KeyEncoder getKeyEncoder(String entity) {
+    return MUTATION_ENTITY.equals(entity) ? MutationKeyCodec::encodeBytes : IdIndexLoader.COPY_KEY;
   }
 
-  private static Map<String, Long> createEntityMap(DB db, String name) {
-    return db
-        .hashMap(name, Serializer.STRING_ASCII, Serializer.LONG)
-        .createOrOpen();
+  private File getEntityIndexFile(String entity) {
+    return new File(cacheDir, entity + (MUTATION_ENTITY.equals(entity) ? MUTATION_INDEX_SUFFIX : ".idx"));
   }
 
+  private File getEntityIndexLockFile(String entity) {
+    val indexFile = getEntityIndexFile(entity);
+    return new File(indexFile.getParentFile(), indexFile.getName() + ".lock");
+  }
 
-  private static Long parseId(String line) {
-    val idTab = line.indexOf('\t');
-    return Long.valueOf(line.substring(0, idTab));
+  private static long now() {
+    return System.currentTimeMillis();
   }
 
-  private static String parseKey(String line) {
-    val idTab = line.indexOf('\t');
-    val releaseTab = line.lastIndexOf('\t');
-    return releaseTab > idTab ? line.substring(idTab + 1, releaseTab) : line.substring(idTab + 1);
+  /**
+   * An index and the time its file was last written or confirmed current.
+   */
+  @Value
+  private static class Snapshot {
+
+    IdIndex index;
+    long timestamp;
+
+    boolean isOlderThan(Duration age) {
+      return now() - timestamp > age.toMillis();
+    }
+
   }
 
 }
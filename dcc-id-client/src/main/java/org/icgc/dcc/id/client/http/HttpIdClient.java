@@ -17,13 +17,19 @@
  */
 package org.icgc.dcc.id.client.http;
 
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.ClientResponse.Status;
 import com.sun.jersey.api.client.WebResource;
 import lombok.NonNull;
+import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.commons.httpclient.ConnectTimeoutException;
@@ -31,14 +37,24 @@ import org.icgc.dcc.id.client.core.IdClient;
 import org.icgc.dcc.id.client.http.webclient.WebClientConfig;
 import org.icgc.dcc.id.core.ExhaustedRetryException;
 import org.icgc.dcc.id.core.IdentifierException;
+import org.icgc.dcc.id.core.MutationKey;
 
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.net.ProtocolException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.isNullOrEmpty;
@@ -72,6 +88,11 @@ public class HttpIdClient implements IdClient {
   public final static String ANALYSIS_ID_PATH = "/analysis/id";
   public final static String GENERATE_UNIQUE_UUID_PATH = "/analysis/unique";
 
+  public final static String DONOR_IDS_PATH = "/donor/ids";
+  public final static String SPECIMEN_IDS_PATH = "/specimen/ids";
+  public final static String SAMPLE_IDS_PATH = "/sample/ids";
+  public final static String MUTATION_IDS_PATH = "/mutation/ids";
+
   public final static String DONOR_EXPORT_PATH = "/donor/export";
   public final static String SPECIMEN_EXPORT_PATH = "/specimen/export";
   public final static String SAMPLE_EXPORT_PATH = "/sample/export";
@@ -93,6 +114,11 @@ public class HttpIdClient implements IdClient {
       INTERNAL_SERVER_ERROR
   );
 
+  private static final Function<WebResource, ClientResponse> GET = request -> request.get(ClientResponse.class);
+  private static final String BATCH_CONTENT_TYPE = "text/tsv";
+  private static final Joiner TAB_JOINER = Joiner.on('\t');
+  private static final Splitter LINE_SPLITTER = Splitter.on('\n');
+
 
   /**
    * State.
@@ -101,12 +127,14 @@ public class HttpIdClient implements IdClient {
   private final WebResource resource;
   private final String release;
   private final WebClientConfig clientConfig;
+  private final ExecutorService batchExecutor;
 
   public HttpIdClient(@NonNull WebClientConfig config) {
     this.client = createClient(config);
     this.release = config.getRelease();
     this.resource = client.resource(config.getServiceUrl());
     this.clientConfig = config;
+    this.batchExecutor = createBatchExecutor(config);
   }
 
   /**
@@ -289,9 +317,84 @@ public class HttpIdClient implements IdClient {
     return id;
   }
 
+  @Override
+  public Map<String, String> getDonorIds(@NonNull String submittedProjectId,
+      @NonNull Collection<String> submittedDonorIds) {
+    return getSubmittedIds(DONOR_IDS_PATH, DONOR_ID_PREFIX, submittedProjectId, submittedDonorIds, false);
+  }
+
+  @Override
+  public Map<String, String> createDonorIds(@NonNull String submittedProjectId,
+      @NonNull Collection<String> submittedDonorIds) {
+    return getSubmittedIds(DONOR_IDS_PATH, DONOR_ID_PREFIX, submittedProjectId, submittedDonorIds, true);
+  }
+
+  @Override
+  public Map<String, String> getSpecimenIds(@NonNull String submittedProjectId,
+      @NonNull Collection<String> submittedSpecimenIds) {
+    return getSubmittedIds(SPECIMEN_IDS_PATH, SPECIMEN_ID_PREFIX, submittedProjectId, submittedSpecimenIds, false);
+  }
+
+  @Override
+  public Map<String, String> createSpecimenIds(@NonNull String submittedProjectId,
+      @NonNull Collection<String> submittedSpecimenIds) {
+    return getSubmittedIds(SPECIMEN_IDS_PATH, SPECIMEN_ID_PREFIX, submittedProjectId, submittedSpecimenIds, true);
+  }
+
+  @Override
+  public Map<String, String> getSampleIds(@NonNull String submittedProjectId,
+      @NonNull Collection<String> submittedSampleIds) {
+    return getSubmittedIds(SAMPLE_IDS_PATH, SAMPLE_ID_PREFIX, submittedProjectId, submittedSampleIds, false);
+  }
+
+  @Override
+  public Map<String, String> createSampleIds(@NonNull String submittedProjectId,
+      @NonNull Collection<String> submittedSampleIds) {
+    return getSubmittedIds(SAMPLE_IDS_PATH, SAMPLE_ID_PREFIX, submittedProjectId, submittedSampleIds, true);
+  }
+
+  @Override
+  public Map<MutationKey, String> getMutationIds(@NonNull Collection<MutationKey> mutations) {
+    return getMutationIds(mutations, false);
+  }
+
+  @Override
+  public Map<MutationKey, String> createMutationIds(@NonNull Collection<MutationKey> mutations) {
+    return getMutationIds(mutations, true);
+  }
+
+  private Map<String, String> getSubmittedIds(String path, String prefix, String submittedProjectId,
+      Collection<String> submittedIds, boolean create) {
+    val request = resource
+        .path(path)
+        .queryParam("submittedProjectId", submittedProjectId)
+        .queryParam("release", release)
+        .queryParam("create", String.valueOf(create));
+
+    return getBatchResponse(request, prefix, submittedIds, submittedId -> submittedId, create);
+  }
+
+  private Map<MutationKey, String> getMutationIds(Collection<MutationKey> mutations, boolean create) {
+    val request = resource
+        .path(MUTATION_IDS_PATH)
+        .queryParam("release", release)
+        .queryParam("create", String.valueOf(create));
+
+    return getBatchResponse(request, MUTATION_ID_PREFIX, mutations, mutation -> TAB_JOINER.join(
+        mutation.getChromosome(),
+        mutation.getChromosomeStart(),
+        mutation.getChromosomeEnd(),
+        mutation.getMutation(),
+        mutation.getMutationType(),
+        mutation.getAssemblyVersion()), create);
+  }
+
   @Override
   public void close() throws IOException {
     log.info("Destroying client...");
+    if (batchExecutor != null) {
+      batchExecutor.shutdownNow();
+    }
     client.destroy();
     log.info("Client destroyed");
   }
@@ -340,6 +443,83 @@ public class HttpIdClient implements IdClient {
     return getResponse(request, RetryContext.create(clientConfig));
   }
 
+  /**
+   * Resolves {@code keys} in chunks of {@code batchSize} lines, {@code batchParallelism} chunks at a time.
+   */
+  @SneakyThrows
+  private <K> Map<K, String> getBatchResponse(WebResource request, String prefix, Collection<K> keys,
+      Function<K, String> formatter, boolean create) {
+    val distinct = ImmutableList.copyOf(ImmutableSet.copyOf(keys));
+    val chunks = Lists.partition(distinct, clientConfig.getBatchSize());
+
+    val chunkIds = new ArrayList<List<String>>(chunks.size());
+    if (batchExecutor == null || chunks.size() <= 1) {
+      for (val chunk : chunks) {
+        chunkIds.add(getBatchChunk(request, Lists.transform(chunk, formatter::apply)));
+      }
+    } else {
+      val futures = new ArrayList<Future<List<String>>>(chunks.size());
+      for (val chunk : chunks) {
+        futures.add(batchExecutor.submit(() -> getBatchChunk(request, Lists.transform(chunk, formatter::apply))));
+      }
+
+      try {
+        for (val future : futures) {
+          chunkIds.add(future.get());
+        }
+      } catch (ExecutionException e) {
+        futures.forEach(future -> future.cancel(true));
+        throw e.getCause();
+      }
+    }
+
+    val ids = new LinkedHashMap<K, String>(distinct.size());
+    for (int i = 0; i < chunks.size(); i++) {
+      val chunk = chunks.get(i);
+      for (int j = 0; j < chunk.size(); j++) {
+        val id = chunkIds.get(i).get(j);
+        if (isNullOrEmpty(id)) {
+          checkState(!create, "Failed to create id for key: '%s'", chunk.get(j));
+          continue;
+        }
+
+        validateId(Optional.of(id), prefix);
+        ids.put(chunk.get(j), id);
+      }
+    }
+
+    return ids;
+  }
+
+  private List<String> getBatchChunk(WebResource request, List<String> lines) {
+    val body = String.join("\n", lines) + "\n";
+    val response = getResponse(request,
+        batchRequest -> batchRequest.type(BATCH_CONTENT_TYPE).post(ClientResponse.class, body),
+        RetryContext.create(clientConfig));
+    checkState(response.isPresent(), "No response requesting '%s'", request);
+
+    // One line per key, with a trailing line terminator
+    val ids = new ArrayList<String>(LINE_SPLITTER.splitToList(response.get()));
+    if (ids.size() == lines.size() + 1 && ids.get(lines.size()).isEmpty()) {
+      ids.remove(lines.size());
+    }
+    checkState(ids.size() == lines.size(), "Expected %s ids but received %s requesting '%s'", lines.size(),
+        ids.size(), request);
+
+    return ids;
+  }
+
+  private static ExecutorService createBatchExecutor(WebClientConfig config) {
+    if (config.getBatchParallelism() <= 1) {
+      return null;
+    }
+
+    return Executors.newFixedThreadPool(config.getBatchParallelism(), new ThreadFactoryBuilder()
+        .setNameFormat("id-client-batch-%d")
+        .setDaemon(true)
+        .build());
+  }
+
   private static boolean isClientError(int statusCode){
     return statusCode >= 400 && statusCode < 500;
   }
@@ -348,15 +528,23 @@ public class HttpIdClient implements IdClient {
   }
 
   static Optional<String> getResponse(WebResource request, RetryContext retryContext) {
+    return getResponse(request, GET, retryContext);
+  }
+
+  static Optional<String> getResponse(WebResource request, Function<WebResource, ClientResponse> call,
+      RetryContext retryContext) {
     try {
-      val response = request.get(ClientResponse.class);
+      val response = call.apply(request);
       val statusCode = response.getStatus();
       verifyNonRetriableErrors(response);
 
       if (statusCode == Status.NOT_FOUND.getStatusCode()) {
+        // Unread bodies must be released or the pooled connection is never returned
+        response.close();
         return Optional.empty();
       } else if (statusCode == SERVICE_UNAVAILABLE.getStatusCode()) {
-        return retryFailedRequest(request, retryContext);
+        response.close();
+        return retryFailedRequest(request, call, retryContext);
       } else if (isClientError(statusCode) || isServerError(statusCode)){
 
         val errorFamily = isClientError(statusCode) ? "CLIENT" : "SERVER";
@@ -365,6 +553,7 @@ public class HttpIdClient implements IdClient {
         if (!isNull(responseStatus)){
           messageSuffix = ": "+responseStatus.getReasonPhrase();
         }
+        response.close();
         log.info("{} Error requesting {}, {}: "+statusCode,
             errorFamily, request, retryContext);
         throw new IdentifierException(
@@ -379,7 +568,7 @@ public class HttpIdClient implements IdClient {
       if (isRetryException(cause)){
         if (retryContext.isRetry()){
           log.info("{}", e.getMessage());
-          return getResponse(request, waitBeforeRetry(retryContext));
+          return getResponse(request, call, waitBeforeRetry(retryContext));
         }
 
         val exhaustedRetryException = new ExhaustedRetryException();
@@ -398,13 +587,14 @@ public class HttpIdClient implements IdClient {
     }
   }
 
-  private static Optional<String> retryFailedRequest(WebResource request, RetryContext retryContext) {
+  private static Optional<String> retryFailedRequest(WebResource request, Function<WebResource, ClientResponse> call,
+      RetryContext retryContext) {
     if (retryContext.isRetry() == false) {
       throw new ExhaustedRetryException();
     }
 
     log.warn("Could not get {}", request);
-    return getResponse(request, waitBeforeRetry(retryContext));
+    return getResponse(request, call, waitBeforeRetry(retryContext));
   }
 
   private static boolean isRetryException(Throwable cause) {
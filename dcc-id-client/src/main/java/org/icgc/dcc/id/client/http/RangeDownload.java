@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.client.http;
+
+import static com.google.common.net.HttpHeaders.CONTENT_RANGE;
+import static com.google.common.net.HttpHeaders.ETAG;
+import static com.google.common.net.HttpHeaders.IF_RANGE;
+import static com.google.common.net.HttpHeaders.RANGE;
+import static java.lang.String.format;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static java.net.HttpURLConnection.HTTP_PARTIAL;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.icgc.dcc.id.client.http.ExportClient.openConnection;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Downloads a URL into a file with parallel HTTP range requests.
+ * <p>
+ * Chunks are written in place into {@code <file>.part} and recorded in {@code <file>.progress} as they complete, so an
+ * interrupted download resumes with the missing chunks as long as the server's {@code ETag} is unchanged. Chunks are
+ * requested with {@code If-Range} so that a resource replaced mid-download restarts the download rather than mixing
+ * versions. When the server sends an RFC 3230 MD5 {@code Digest}, the finished file is verified against it. Servers
+ * that ignore ranges are downloaded in a single request.
+ */
+@Slf4j
+class RangeDownload {
+
+  /**
+   * Constants.
+   */
+  private static final String DIGEST = "Digest";
+  private static final String ACCEPT_RANGES = "Accept-Ranges";
+  private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+  private static final Pattern MD5_DIGEST_PATTERN = Pattern.compile("(?i)(?:^|,)\\s*md5=([A-Za-z0-9+/=]+)");
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Configuration.
+   */
+  private final ExportClientConfig config;
+  private final URL url;
+  private final File file;
+  private final File partFile;
+  private final File progressFile;
+
+  /**
+   * State.
+   */
+  private String etag;
+  private long length;
+  private String digest;
+  private Set<Long> completed;
+
+  RangeDownload(@NonNull ExportClientConfig config, @NonNull URL url, @NonNull File file) {
+    this.config = config;
+    this.url = url;
+    this.file = file;
+    this.partFile = new File(file.getPath() + ".part");
+    this.progressFile = new File(file.getPath() + ".progress");
+  }
+
+  @SneakyThrows
+  void run() {
+    for (int restarts = 0;; restarts++) {
+      try {
+        if (downloadFirstChunk()) {
+          downloadRemainingChunks();
+        }
+
+        break;
+      } catch (ResourceChangedException e) {
+        if (restarts >= config.getMaxRetries()) {
+          throw new IllegalStateException(format("%s kept changing during download", url));
+        }
+
+        log.warn("{} changed during download, restarting...", url);
+        progressFile.delete();
+      }
+    }
+
+    verify();
+    Files.move(partFile.toPath(), file.toPath(), REPLACE_EXISTING);
+    progressFile.delete();
+  }
+
+  /**
+   * Downloads the first chunk, which doubles as a probe for range support, length and version.
+   *
+   * @return {@code false} if the server ignored the range and the whole resource was downloaded
+   */
+  private boolean downloadFirstChunk() throws Exception {
+    readProgress();
+
+    return withRetries("chunk 0", () -> {
+      val connection = open(0, config.getChunkSize() - 1);
+      if (connection.getResponseCode() == HTTP_OK) {
+        if (etag != null && "bytes".equals(connection.getHeaderField(ACCEPT_RANGES))) {
+          // If-Range did not match
+          connection.disconnect();
+          throw new ResourceChangedException();
+        }
+
+        log.info("{} does not support ranges, downloading in one request...", url);
+        progressFile.delete();
+        digest = connection.getHeaderField(DIGEST);
+        try (FileChannel channel = FileChannel.open(partFile.toPath(), CREATE, WRITE, TRUNCATE_EXISTING)) {
+          write(connection, channel, 0, Long.MAX_VALUE);
+        }
+
+        return false;
+      }
+
+      val contentRange = getContentRange(connection, 0);
+      val currentEtag = connection.getHeaderField(ETAG);
+      val currentLength = Long.parseLong(contentRange.group(3));
+      if (currentEtag == null || !currentEtag.equals(etag) || currentLength != length) {
+        startProgress(currentEtag, currentLength);
+      } else {
+        log.info("Resuming {} with {} of {} chunks already downloaded", url, completed.size(), getChunkCount());
+      }
+
+      digest = connection.getHeaderField(DIGEST);
+      writeChunk(connection, 0);
+
+      return true;
+    });
+  }
+
+  private void downloadRemainingChunks() throws Exception {
+    val chunkCount = getChunkCount();
+    log.info("Downloading {} bytes from {} in {} chunks with parallelism {}...", length, url, chunkCount,
+        config.getParallelism());
+
+    val executor = Executors.newFixedThreadPool(config.getParallelism(), new ThreadFactoryBuilder()
+        .setNameFormat("range-download-%d")
+        .setDaemon(true)
+        .build());
+    try {
+      val futures = new ArrayList<Future<?>>();
+      for (long index = 1; index < chunkCount; index++) {
+        if (completed.contains(index)) {
+          continue;
+        }
+
+        val chunk = index;
+        futures.add(executor.submit(() -> withRetries("chunk " + chunk, () -> downloadChunk(chunk))));
+      }
+
+      for (val future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          val cause = e.getCause();
+          if (cause instanceof Exception) {
+            throw (Exception) cause;
+          }
+
+          throw e;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    try (FileChannel channel = FileChannel.open(partFile.toPath(), WRITE)) {
+      channel.truncate(length);
+    }
+  }
+
+  private Void downloadChunk(long index) throws IOException {
+    val start = index * config.getChunkSize();
+    val end = Math.min(start + config.getChunkSize(), length) - 1;
+    val connection = open(start, end);
+    if (connection.getResponseCode() == HTTP_OK) {
+      connection.disconnect();
+      throw new ResourceChangedException();
+    }
+
+    getContentRange(connection, start);
+    writeChunk(connection, index);
+
+    return null;
+  }
+
+  private void writeChunk(HttpURLConnection connection, long index) throws IOException {
+    val start = index * config.getChunkSize();
+    val count = Math.min(config.getChunkSize(), length - start);
+    try (FileChannel channel = FileChannel.open(partFile.toPath(), CREATE, WRITE)) {
+      val written = write(connection, channel, start, count);
+      if (written != count) {
+        throw new IOException(format("Chunk %s of %s ended after %s of %s bytes", index, url, written, count));
+      }
+
+      // Only record chunks that would survive a crash
+      channel.force(false);
+    }
+
+    recordChunk(index);
+  }
+
+  private HttpURLConnection open(long start, long end) throws IOException {
+    val connection = openConnection(url, config);
+    connection.setRequestProperty(RANGE, format("bytes=%d-%d", start, end));
+    if (etag != null) {
+      connection.setRequestProperty(IF_RANGE, etag);
+    }
+
+    return connection;
+  }
+
+  private Matcher getContentRange(HttpURLConnection connection, long start) throws IOException {
+    val status = connection.getResponseCode();
+    if (status != HTTP_PARTIAL) {
+      connection.disconnect();
+      throw new IOException(format("Unexpected status %s from %s", status, url));
+    }
+
+    val contentRange = Strings.nullToEmpty(connection.getHeaderField(CONTENT_RANGE));
+    val matcher = CONTENT_RANGE_PATTERN.matcher(contentRange);
+    if (!matcher.matches() || Long.parseLong(matcher.group(1)) != start) {
+      connection.disconnect();
+      throw new IOException(format("Unexpected Content-Range '%s' from %s", contentRange, url));
+    }
+
+    return matcher;
+  }
+
+  private <T> T withRetries(String description, Callable<T> action) throws Exception {
+    RetryContext retry = RetryContext.create(config);
+    while (true) {
+      try {
+        return action.call();
+      } catch (IOException e) {
+        if (!retry.isRetry()) {
+          throw e;
+        }
+
+        log.warn("Error downloading {} of {}, retrying in {} seconds: {}", description, url, retry.getSleepSeconds(),
+            e.getMessage());
+        Thread.sleep(retry.getSleepSeconds() * 1000L);
+        retry = RetryContext.next(retry);
+      }
+    }
+  }
+
+  private void verify() {
+    val matcher = MD5_DIGEST_PATTERN.matcher(Strings.nullToEmpty(digest));
+    if (!matcher.find()) {
+      log.info("No MD5 digest for {}, skipping verification", url);
+      return;
+    }
+
+    val expected = matcher.group(1);
+    val actual = BaseEncoding.base64().encode(md5(partFile));
+    if (!expected.equals(actual)) {
+      partFile.delete();
+      progressFile.delete();
+      throw new IllegalStateException(format("MD5 of %s is %s but expected %s", url, actual, expected));
+    }
+
+    log.info("Verified MD5 of {}", url);
+  }
+
+  private void readProgress() throws IOException {
+    etag = null;
+    length = -1;
+    completed = ConcurrentHashMap.newKeySet();
+    if (!progressFile.exists() || !partFile.exists()) {
+      return;
+    }
+
+    try {
+      val lines = Files.readAllLines(progressFile.toPath(), UTF_8);
+      val chunks = ConcurrentHashMap.<Long> newKeySet();
+      for (val line : lines.subList(2, lines.size())) {
+        if (!line.isEmpty()) {
+          chunks.add(Long.parseLong(line));
+        }
+      }
+
+      etag = lines.get(0);
+      length = Long.parseLong(lines.get(1));
+      completed = chunks;
+    } catch (RuntimeException e) {
+      log.warn("Ignoring unreadable progress file {}: {}", progressFile, e.getMessage());
+    }
+  }
+
+  private void startProgress(String etag, long length) throws IOException {
+    this.etag = etag;
+    this.length = length;
+    this.completed = ConcurrentHashMap.newKeySet();
+
+    Files.deleteIfExists(partFile.toPath());
+    if (etag == null) {
+      // Nothing to validate a resume against
+      progressFile.delete();
+    } else {
+      Files.write(progressFile.toPath(), ImmutableList.of(etag, String.valueOf(length)), UTF_8);
+    }
+  }
+
+  private synchronized void recordChunk(long index) throws IOException {
+    completed.add(index);
+    if (etag != null) {
+      Files.write(progressFile.toPath(), (index + "\n").getBytes(UTF_8), CREATE, APPEND);
+    }
+  }
+
+  private long getChunkCount() {
+    return (length + config.getChunkSize() - 1) / config.getChunkSize();
+  }
+
+  private static long write(HttpURLConnection connection, FileChannel channel, long position, long maxCount)
+      throws IOException {
+    val buffer = new byte[BUFFER_SIZE];
+    long count = 0;
+    try (InputStream in = connection.getInputStream()) {
+      int n;
+      while (count < maxCount && (n = in.read(buffer, 0, (int) Math.min(buffer.length, maxCount - count))) != -1) {
+        val source = ByteBuffer.wrap(buffer, 0, n);
+        while (source.hasRemaining()) {
+          count += channel.write(source, position + count);
+        }
+      }
+    }
+
+    return count;
+  }
+
+  @SneakyThrows
+  private static byte[] md5(File file) {
+    val digest = MessageDigest.getInstance("MD5");
+    val buffer = new byte[BUFFER_SIZE];
+    try (InputStream in = new FileInputStream(file)) {
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, n);
+      }
+    }
+
+    return digest.digest();
+  }
+
+  /**
+   * The server's copy no longer matches the one being downloaded.
+   */
+  private static class ResourceChangedException extends RuntimeException {
+  }
+
+}
@@ -43,6 +43,15 @@ public final class RetryContext {
         .build();
   }
 
+  public static RetryContext create(ExportClientConfig clientConfig) {
+    return RetryContext.builder()
+        .attempts(clientConfig.getMaxRetries())
+        .sleepSeconds(clientConfig.getWaitBeforeRetrySeconds())
+        .multiplier(clientConfig.getRetryMultiplier())
+        .retry(clientConfig.getMaxRetries() > 0)
+        .build();
+  }
+
   public static RetryContext next(RetryContext previousContext) {
     return RetryContext.builder()
         .retry(previousContext.attempts > 1)
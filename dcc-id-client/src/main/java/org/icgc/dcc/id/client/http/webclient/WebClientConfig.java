@@ -37,6 +37,19 @@ public class WebClientConfig implements Serializable {
   boolean requestLoggingEnabled;
   boolean strictSSLCertificates;
 
+  /**
+   * Connection pool.
+   */
+  int maxConnections;
+  int maxConnectionsPerHost;
+  int idleConnectionTimeoutSeconds;
+
+  /**
+   * Batch requests.
+   */
+  int batchSize;
+  int batchParallelism;
+
   public static WebClientConfigBuilder builder() {
     val builder = new WebClientConfigBuilder();
     builder.requestLoggingEnabled(false);
@@ -44,6 +57,11 @@ public class WebClientConfig implements Serializable {
     builder.waitBeforeRetrySeconds(3);
     builder.retryMultiplier(1.5f);
     builder.strictSSLCertificates(true);
+    builder.maxConnections(200);
+    builder.maxConnectionsPerHost(200);
+    builder.idleConnectionTimeoutSeconds(30);
+    builder.batchSize(1000);
+    builder.batchParallelism(4);
 
     return builder;
   }
@@ -19,6 +19,7 @@ package org.icgc.dcc.id.client.http.webclient;
 
 import static com.sun.jersey.api.json.JSONConfiguration.FEATURE_POJO_MAPPING;
 import static java.lang.Boolean.TRUE;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static javax.ws.rs.core.HttpHeaders.AUTHORIZATION;
 
 import javax.net.ssl.SSLContext;
@@ -30,15 +31,23 @@ import lombok.val;
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.SimpleHttpConnectionManager;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.message.BasicHeader;
 import org.codehaus.jackson.jaxrs.JacksonJsonProvider;
 import org.icgc.dcc.common.core.security.DumbX509TrustManager;
 
+import com.google.common.collect.ImmutableList;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.ClientRequest;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.filter.ClientFilter;
+import com.sun.jersey.api.client.config.ClientConfig;
 import com.sun.jersey.api.client.filter.LoggingFilter;
 import com.sun.jersey.client.apache.ApacheHttpClient;
 import com.sun.jersey.client.apache.ApacheHttpClientHandler;
@@ -50,13 +59,24 @@ public final class WebClientFactory {
 
   @SneakyThrows
   public static Client createClient(WebClientConfig config) {
-    val connectionManager = new SimpleHttpConnectionManager();
+    // Pooled so that a single client can be shared across threads and keep connections alive between requests
+    val connectionManager = new MultiThreadedHttpConnectionManager();
 
     connectionManager.getParams().setConnectionTimeout(30000);
     connectionManager.getParams().setSoTimeout(60000);
-    connectionManager.getParams().setDefaultMaxConnectionsPerHost(10);
+    connectionManager.getParams().setMaxTotalConnections(config.getMaxConnections());
+    connectionManager.getParams().setDefaultMaxConnectionsPerHost(config.getMaxConnectionsPerHost());
     connectionManager.getParams().setStaleCheckingEnabled(false);
 
+    // Closes pooled connections before the server side drops them, since stale checking is disabled
+    val idleConnectionTimeout = SECONDS.toMillis(config.getIdleConnectionTimeoutSeconds());
+    val idleConnectionThread = new IdleConnectionTimeoutThread();
+    idleConnectionThread.setName("id-client-idle-connections");
+    idleConnectionThread.setConnectionTimeout(idleConnectionTimeout);
+    idleConnectionThread.setTimeoutInterval(Math.max(idleConnectionTimeout / 2, 1000));
+    idleConnectionThread.addConnectionManager(connectionManager);
+    idleConnectionThread.start();
+
     val httpClient = new HttpClient(connectionManager);
     val clientHandler = new ApacheHttpClientHandler(httpClient);
     val root = new ApacheHttpClient(clientHandler);
@@ -72,7 +92,7 @@ public final class WebClientFactory {
     clientConfig.getFeatures().put(FEATURE_POJO_MAPPING, TRUE);
     clientConfig.getClasses().add(JacksonJsonProvider.class);
 
-    val client = new Client(root, clientConfig);
+    val client = new PooledClient(root, clientConfig, connectionManager, idleConnectionThread);
 
     if (config.getAuthToken() != null) {
       client.addFilter(oauth2Filter(config));
@@ -85,6 +105,64 @@ public final class WebClientFactory {
     return client;
   }
 
+  /**
+   * Creates the non-blocking transport used by {@link org.icgc.dcc.id.client.http.AsyncHttpIdClient}. The caller
+   * must {@code start()} and {@code close()} it.
+   */
+  @SneakyThrows
+  public static CloseableHttpAsyncClient createAsyncClient(WebClientConfig config) {
+    val idleConnectionTimeout = SECONDS.toMillis(config.getIdleConnectionTimeoutSeconds());
+    val builder = HttpAsyncClients.custom()
+        .setMaxConnTotal(config.getMaxConnections())
+        .setMaxConnPerRoute(config.getMaxConnectionsPerHost())
+        .setKeepAliveStrategy((response, context) -> idleConnectionTimeout)
+        .setDefaultRequestConfig(RequestConfig.custom()
+            .setConnectTimeout(30000)
+            .setSocketTimeout(60000)
+            .build());
+
+    if (!config.isStrictSSLCertificates()) {
+      log.debug("Setting up SSL context");
+      val context = SSLContext.getInstance("TLS");
+      context.init(null, new TrustManager[] { new DumbX509TrustManager() }, null);
+      builder.setSSLContext(context);
+      builder.setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE);
+    }
+
+    if (config.getAuthToken() != null) {
+      builder.setDefaultHeaders(ImmutableList.of(new BasicHeader(AUTHORIZATION, "Bearer " + config.getAuthToken())));
+    }
+
+    return builder.build();
+  }
+
+  /**
+   * Releases the connection pool when the client is destroyed.
+   */
+  private static class PooledClient extends Client {
+
+    private final MultiThreadedHttpConnectionManager connectionManager;
+    private final IdleConnectionTimeoutThread idleConnectionThread;
+
+    private PooledClient(ApacheHttpClient root, ClientConfig config,
+        MultiThreadedHttpConnectionManager connectionManager, IdleConnectionTimeoutThread idleConnectionThread) {
+      super(root, config);
+      this.connectionManager = connectionManager;
+      this.idleConnectionThread = idleConnectionThread;
+    }
+
+    @Override
+    public void destroy() {
+      try {
+        super.destroy();
+      } finally {
+        idleConnectionThread.shutdown();
+        connectionManager.shutdown();
+      }
+    }
+
+  }
+
   private static ClientFilter oauth2Filter(WebClientConfig config) {
     val value = "Bearer " + config.getAuthToken();
     return new ClientFilter() {
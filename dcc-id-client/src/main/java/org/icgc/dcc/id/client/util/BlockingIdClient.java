@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.client.util;
+
+import lombok.NonNull;
+import lombok.val;
+import org.icgc.dcc.id.client.core.AsyncIdClient;
+import org.icgc.dcc.id.client.core.IdClient;
+import org.icgc.dcc.id.core.IdentifierException;
+import org.icgc.dcc.id.core.MutationKey;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Adapts an {@link AsyncIdClient} to the blocking {@link IdClient} API. Batch lookups are issued together and joined
+ * at the end, so they are bounded by the delegate's connection pool rather than by a round-trip per key. At most
+ * {@code maxInFlight} lookups are outstanding at a time, so large batches do not queue unbounded requests.
+ */
+public class BlockingIdClient implements IdClient {
+
+  /**
+   * Constants.
+   * <p>
+   * The default matches the default connection pool size of {@code WebClientConfig}.
+   */
+  public static final int DEFAULT_MAX_IN_FLIGHT = 200;
+
+  /**
+   * Dependencies.
+   */
+  @NonNull
+  private final AsyncIdClient delegate;
+
+  /**
+   * Configuration.
+   */
+  private final int maxInFlight;
+
+  public BlockingIdClient(@NonNull AsyncIdClient delegate) {
+    this(delegate, DEFAULT_MAX_IN_FLIGHT);
+  }
+
+  public BlockingIdClient(@NonNull AsyncIdClient delegate, int maxInFlight) {
+    checkArgument(maxInFlight > 0, "maxInFlight must be positive: %s", maxInFlight);
+    this.delegate = delegate;
+    this.maxInFlight = maxInFlight;
+  }
+
+  @Override
+  public Optional<String> getDonorId(String submittedDonorId, String submittedProjectId) {
+    return join(delegate.getDonorId(submittedDonorId, submittedProjectId));
+  }
+
+  @Override
+  public Optional<String> getSampleId(String submittedSampleId, String submittedProjectId) {
+    return join(delegate.getSampleId(submittedSampleId, submittedProjectId));
+  }
+
+  @Override
+  public Optional<String> getSpecimenId(String submittedSpecimenId, String submittedProjectId) {
+    return join(delegate.getSpecimenId(submittedSpecimenId, submittedProjectId));
+  }
+
+  @Override
+  public Optional<String> getMutationId(String chromosome, String chromosomeStart, String chromosomeEnd,
+      String mutation, String mutationType, String assemblyVersion) {
+    return join(delegate.getMutationId(chromosome, chromosomeStart, chromosomeEnd, mutation, mutationType,
+        assemblyVersion));
+  }
+
+  @Override
+  public Optional<String> getFileId(String submittedFileId) {
+    return join(delegate.getFileId(submittedFileId));
+  }
+
+  @Override
+  public Optional<String> getObjectId(String analysisId, String fileName) {
+    return join(delegate.getObjectId(analysisId, fileName));
+  }
+
+  @Override
+  public Optional<String> getAnalysisId(String submittedAnalysisId) {
+    return join(delegate.getAnalysisId(submittedAnalysisId));
+  }
+
+  @Override
+  public String createDonorId(String submittedDonorId, String submittedProjectId) {
+    return join(delegate.createDonorId(submittedDonorId, submittedProjectId));
+  }
+
+  @Override
+  public String createSpecimenId(String submittedSpecimenId, String submittedProjectId) {
+    return join(delegate.createSpecimenId(submittedSpecimenId, submittedProjectId));
+  }
+
+  @Override
+  public String createSampleId(String submittedSampleId, String submittedProjectId) {
+    return join(delegate.createSampleId(submittedSampleId, submittedProjectId));
+  }
+
+  @Override
+  public String createMutationId(String chromosome, String chromosomeStart, String chromosomeEnd, String mutation,
+      String mutationType, String assemblyVersion) {
+    return join(delegate.createMutationId(chromosome, chromosomeStart, chromosomeEnd, mutation, mutationType,
+        assemblyVersion));
+  }
+
+  @Override
+  public String createFileId(String submittedFileId) {
+    return join(delegate.createFileId(submittedFileId));
+  }
+
+  @Override
+  public String createAnalysisId(String submittedAnalysisId) {
+    return join(delegate.createAnalysisId(submittedAnalysisId));
+  }
+
+  @Override
+  public String createRandomAnalysisId() {
+    return join(delegate.createRandomAnalysisId());
+  }
+
+  @Override
+  public String generateUniqueAnalysisId() {
+    return join(delegate.generateUniqueAnalysisId());
+  }
+
+  @Override
+  public Map<String, String> getDonorIds(String submittedProjectId, Collection<String> submittedDonorIds) {
+    return joinIds(submittedDonorIds, submittedDonorId -> delegate.getDonorId(submittedDonorId, submittedProjectId));
+  }
+
+  @Override
+  public Map<String, String> getSpecimenIds(String submittedProjectId, Collection<String> submittedSpecimenIds) {
+    return joinIds(submittedSpecimenIds,
+        submittedSpecimenId -> delegate.getSpecimenId(submittedSpecimenId, submittedProjectId));
+  }
+
+  @Override
+  public Map<String, String> getSampleIds(String submittedProjectId, Collection<String> submittedSampleIds) {
+    return joinIds(submittedSampleIds,
+        submittedSampleId -> delegate.getSampleId(submittedSampleId, submittedProjectId));
+  }
+
+  @Override
+  public Map<MutationKey, String> getMutationIds(Collection<MutationKey> mutations) {
+    return joinIds(mutations, mutation -> delegate.getMutationId(mutation.getChromosome(),
+        mutation.getChromosomeStart(), mutation.getChromosomeEnd(), mutation.getMutation(), mutation.getMutationType(),
+        mutation.getAssemblyVersion()));
+  }
+
+  @Override
+  public Map<String, String> createDonorIds(String submittedProjectId, Collection<String> submittedDonorIds) {
+    return joinIds(submittedDonorIds,
+        submittedDonorId -> delegate.createDonorId(submittedDonorId, submittedProjectId).thenApply(Optional::of));
+  }
+
+  @Override
+  public Map<String, String> createSpecimenIds(String submittedProjectId, Collection<String> submittedSpecimenIds) {
+    return joinIds(submittedSpecimenIds, submittedSpecimenId -> delegate
+        .createSpecimenId(submittedSpecimenId, submittedProjectId).thenApply(Optional::of));
+  }
+
+  @Override
+  public Map<String, String> createSampleIds(String submittedProjectId, Collection<String> submittedSampleIds) {
+    return joinIds(submittedSampleIds,
+        submittedSampleId -> delegate.createSampleId(submittedSampleId, submittedProjectId).thenApply(Optional::of));
+  }
+
+  @Override
+  public Map<MutationKey, String> createMutationIds(Collection<MutationKey> mutations) {
+    return joinIds(mutations, mutation -> delegate.createMutationId(mutation.getChromosome(),
+        mutation.getChromosomeStart(), mutation.getChromosomeEnd(), mutation.getMutation(), mutation.getMutationType(),
+        mutation.getAssemblyVersion()).thenApply(Optional::of));
+  }
+
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+
+  /**
+   * Issues every lookup before waiting on any of them, blocking while {@code maxInFlight} are outstanding.
+   */
+  private <K> Map<K, String> joinIds(Collection<K> keys, Function<K, CompletableFuture<Optional<String>>> resolver) {
+    val permits = new Semaphore(maxInFlight);
+    Map<K, CompletableFuture<Optional<String>>> futures = new LinkedHashMap<>();
+    for (K key : keys) {
+      futures.computeIfAbsent(key, k -> {
+        permits.acquireUninterruptibly();
+        try {
+          return resolver.apply(k).whenComplete((id, throwable) -> permits.release());
+        } catch (RuntimeException e) {
+          permits.release();
+          throw e;
+        }
+      });
+    }
+
+    Map<K, String> ids = new LinkedHashMap<>();
+    futures.forEach((key, future) -> join(future).ifPresent(id -> ids.put(key, id)));
+
+    return ids;
+  }
+
+  /**
+   * Rethrows the failure as the blocking client would have.
+   */
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      val cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+
+      throw new IdentifierException(cause);
+    }
+  }
+
+}
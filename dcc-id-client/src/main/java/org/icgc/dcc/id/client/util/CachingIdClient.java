@@ -20,18 +20,50 @@ package org.icgc.dcc.id.client.util;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import lombok.NonNull;
 import lombok.SneakyThrows;
 import lombok.Value;
+import lombok.val;
 import org.icgc.dcc.common.core.util.UUID5;
 import org.icgc.dcc.id.client.core.IdClient;
+import org.icgc.dcc.id.core.MutationKey;
+import org.icgc.dcc.id.core.MutationKeyCodec;
+import org.icgc.dcc.id.core.PackedMutationKey;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import static java.util.stream.Collectors.toList;
+import static org.icgc.dcc.id.core.Prefixes.MUTATION_ID_PREFIX;
+
 public class CachingIdClient extends ForwardingIdClient {
 
+  /**
+   * Constants.
+   */
+  private static final long DEFAULT_MUTATION_CACHE_MAX_BYTES = 256L * 1024 * 1024;
+
+  /**
+   * Approximate heap cost of a mutation cache entry: the cache's own entry, a {@link PackedMutationKey} and a boxed
+   * id. Keys that could not be packed add their text.
+   */
+  private static final int MUTATION_ENTRY_BYTES = 112;
+  private static final int STRING_BYTES = 40;
+
+  /**
+   * Cached value of mutations that do not exist.
+   */
+  private static final long NOT_FOUND = -1L;
+
   /**
    * Caches.
    */
@@ -42,7 +74,19 @@ public class CachingIdClient extends ForwardingIdClient {
   private final LoadingCache<Key, Optional<String>> sampleIdCache;
   private final LoadingCache<Key, Optional<String>> fileIdCache;
 
+  /**
+   * Mutation ids by encoded key, holding only the numeric part of the id.
+   */
+  private final Cache<PackedMutationKey, Long> mutationIdCache;
+
   public CachingIdClient(IdClient delegate) {
+    this(delegate, DEFAULT_MUTATION_CACHE_MAX_BYTES);
+  }
+
+  /**
+   * @param mutationCacheMaxBytes the approximate heap size at which the least recently used mutations are evicted
+   */
+  public CachingIdClient(IdClient delegate, long mutationCacheMaxBytes) {
     super(delegate);
 
     this.donorIdCache =
@@ -65,6 +109,18 @@ public class CachingIdClient extends ForwardingIdClient {
         createCache(key -> key.isCreate() ? Optional
             .of(delegate.createFileId(key.getSubmittedId())) : delegate
                 .getFileId(key.getSubmittedId()));
+    this.mutationIdCache = CacheBuilder.newBuilder()
+        .maximumWeight(mutationCacheMaxBytes)
+        .weigher(CachingIdClient::weighMutation)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * @return hit, miss and eviction counts of the mutation cache
+   */
+  public CacheStats getMutationCacheStats() {
+    return mutationIdCache.stats();
   }
 
   //
@@ -101,6 +157,23 @@ public class CachingIdClient extends ForwardingIdClient {
     return fileIdCache.get(new Key(submittedFileId, null, false));
   }
 
+  @Override
+  public Optional<String> getMutationId(String chromosome, String chromosomeStart, String chromosomeEnd,
+      String mutation, String mutationType, String assemblyVersion) {
+    val key = MutationKeyCodec.encode(chromosome, chromosomeStart, chromosomeEnd, mutation, mutationType,
+        assemblyVersion);
+    val cached = mutationIdCache.getIfPresent(key);
+    if (cached != null) {
+      return Optional.ofNullable(formatMutationId(cached));
+    }
+
+    val id = delegate.getMutationId(chromosome, chromosomeStart, chromosomeEnd, mutation, mutationType,
+        assemblyVersion);
+    cacheMutationId(key, id.orElse(null));
+
+    return id;
+  }
+
   @Override
   public Optional<String> getObjectId(String analysisId, String fileName) {
     return Optional.of(UUID5.fromUTF8(UUID5.getNamespace(), Joiner.on('/').join(analysisId, fileName)).toString());
@@ -147,10 +220,186 @@ public class CachingIdClient extends ForwardingIdClient {
     return fileIdCache.get(new Key(submittedFileId, null, true)).get();
   }
 
+  @Override
+  public String createMutationId(String chromosome, String chromosomeStart, String chromosomeEnd, String mutation,
+      String mutationType, String assemblyVersion) {
+    val key = MutationKeyCodec.encode(chromosome, chromosomeStart, chromosomeEnd, mutation, mutationType,
+        assemblyVersion);
+    val cached = mutationIdCache.getIfPresent(key);
+    if (cached != null && cached != NOT_FOUND) {
+      return formatMutationId(cached);
+    }
+
+    val id = delegate.createMutationId(chromosome, chromosomeStart, chromosomeEnd, mutation, mutationType,
+        assemblyVersion);
+    cacheMutationId(key, id);
+
+    return id;
+  }
+
+  //
+  // Batch
+  //
+
+  @Override
+  public Map<String, String> getDonorIds(String submittedProjectId, Collection<String> submittedDonorIds) {
+    return getCachedIds(donorIdCache, submittedProjectId, submittedDonorIds, false,
+        misses -> delegate.getDonorIds(submittedProjectId, misses));
+  }
+
+  @Override
+  public Map<String, String> createDonorIds(String submittedProjectId, Collection<String> submittedDonorIds) {
+    return getCachedIds(donorIdCache, submittedProjectId, submittedDonorIds, true,
+        misses -> delegate.createDonorIds(submittedProjectId, misses));
+  }
+
+  @Override
+  public Map<String, String> getSpecimenIds(String submittedProjectId, Collection<String> submittedSpecimenIds) {
+    return getCachedIds(specimenIdCache, submittedProjectId, submittedSpecimenIds, false,
+        misses -> delegate.getSpecimenIds(submittedProjectId, misses));
+  }
+
+  @Override
+  public Map<String, String> createSpecimenIds(String submittedProjectId, Collection<String> submittedSpecimenIds) {
+    return getCachedIds(specimenIdCache, submittedProjectId, submittedSpecimenIds, true,
+        misses -> delegate.createSpecimenIds(submittedProjectId, misses));
+  }
+
+  @Override
+  public Map<String, String> getSampleIds(String submittedProjectId, Collection<String> submittedSampleIds) {
+    return getCachedIds(sampleIdCache, submittedProjectId, submittedSampleIds, false,
+        misses -> delegate.getSampleIds(submittedProjectId, misses));
+  }
+
+  @Override
+  public Map<String, String> createSampleIds(String submittedProjectId, Collection<String> submittedSampleIds) {
+    return getCachedIds(sampleIdCache, submittedProjectId, submittedSampleIds, true,
+        misses -> delegate.createSampleIds(submittedProjectId, misses));
+  }
+
+  @Override
+  public Map<MutationKey, String> getMutationIds(Collection<MutationKey> mutations) {
+    return getCachedMutationIds(mutations, false, delegate::getMutationIds);
+  }
+
+  @Override
+  public Map<MutationKey, String> createMutationIds(Collection<MutationKey> mutations) {
+    return getCachedMutationIds(mutations, true, delegate::createMutationIds);
+  }
+
   //
   // Helpers
   //
 
+  /**
+   * Serves cache hits locally and forwards the misses to {@code loader} as one batch.
+   */
+  private static Map<String, String> getCachedIds(LoadingCache<Key, Optional<String>> cache,
+      String submittedProjectId, Collection<String> submittedIds, boolean create,
+      Function<List<String>, Map<String, String>> loader) {
+    val keys = submittedIds.stream()
+        .distinct()
+        .map(submittedId -> new Key(submittedId, submittedProjectId, create))
+        .collect(toList());
+
+    val cached = cache.getAllPresent(keys);
+    val misses = keys.stream()
+        .filter(key -> !cached.containsKey(key))
+        .map(Key::getSubmittedId)
+        .collect(toList());
+    val loaded = misses.isEmpty() ? Collections.<String, String> emptyMap() : loader.apply(misses);
+
+    val ids = new LinkedHashMap<String, String>(keys.size());
+    for (val key : keys) {
+      Optional<String> id = cached.get(key);
+      if (id == null) {
+        id = Optional.ofNullable(loaded.get(key.getSubmittedId()));
+        cache.put(key, id);
+      }
+
+      id.ifPresent(value -> ids.put(key.getSubmittedId(), value));
+    }
+
+    return ids;
+  }
+
+  /**
+   * Serves cached mutations locally and forwards the rest to {@code loader} as one batch. Mutations cached as not found
+   * are forwarded when creating.
+   */
+  private Map<MutationKey, String> getCachedMutationIds(Collection<MutationKey> mutations, boolean create,
+      Function<List<MutationKey>, Map<MutationKey, String>> loader) {
+    val distinct = mutations.stream().distinct().collect(toList());
+    val keys = new ArrayList<PackedMutationKey>(distinct.size());
+    val cached = new ArrayList<Long>(distinct.size());
+    val misses = new ArrayList<MutationKey>();
+    for (val mutation : distinct) {
+      val key = MutationKeyCodec.encode(mutation);
+      Long id = mutationIdCache.getIfPresent(key);
+      if (id != null && create && id == NOT_FOUND) {
+        id = null;
+      }
+      if (id == null) {
+        misses.add(mutation);
+      }
+
+      keys.add(key);
+      cached.add(id);
+    }
+
+    val loaded = misses.isEmpty() ? Collections.<MutationKey, String> emptyMap() : loader.apply(misses);
+
+    val ids = new LinkedHashMap<MutationKey, String>(distinct.size());
+    for (int i = 0; i < distinct.size(); i++) {
+      val mutation = distinct.get(i);
+      String id;
+      if (cached.get(i) != null) {
+        id = formatMutationId(cached.get(i));
+      } else {
+        id = loaded.get(mutation);
+        cacheMutationId(keys.get(i), id);
+      }
+
+      if (id != null) {
+        ids.put(mutation, id);
+      }
+    }
+
+    return ids;
+  }
+
+  /**
+   * Caches {@code id}, or that the mutation was not found if {@code null}. Ids that are not a prefixed number are not
+   * cached.
+   */
+  private void cacheMutationId(PackedMutationKey key, String id) {
+    if (id == null) {
+      mutationIdCache.put(key, NOT_FOUND);
+      return;
+    }
+
+    if (!id.startsWith(MUTATION_ID_PREFIX)) {
+      return;
+    }
+
+    try {
+      val number = Long.parseLong(id.substring(MUTATION_ID_PREFIX.length()));
+      if (number >= 0) {
+        mutationIdCache.put(key, number);
+      }
+    } catch (NumberFormatException e) {
+      // Not representable
+    }
+  }
+
+  private static String formatMutationId(long number) {
+    return number == NOT_FOUND ? null : MUTATION_ID_PREFIX + number;
+  }
+
+  private static int weighMutation(PackedMutationKey key, Long id) {
+    return MUTATION_ENTRY_BYTES + (key.isPacked() ? 0 : STRING_BYTES + 2 * key.getText().length());
+  }
+
   private static LoadingCache<Key, Optional<String>> createCache(Function<Key, Optional<String>> loader) {
     return CacheBuilder.newBuilder().build(CacheLoader.from(loader));
   }
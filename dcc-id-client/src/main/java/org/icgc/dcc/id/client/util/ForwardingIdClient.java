@@ -20,8 +20,11 @@ package org.icgc.dcc.id.client.util;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import org.icgc.dcc.id.client.core.IdClient;
+import org.icgc.dcc.id.core.MutationKey;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 
 @RequiredArgsConstructor
@@ -110,6 +113,46 @@ public abstract class ForwardingIdClient implements IdClient {
     return delegate.createFileId(submittedFileId);
   }
 
+  @Override
+  public Map<String, String> getDonorIds(String submittedProjectId, Collection<String> submittedDonorIds) {
+    return delegate.getDonorIds(submittedProjectId, submittedDonorIds);
+  }
+
+  @Override
+  public Map<String, String> getSpecimenIds(String submittedProjectId, Collection<String> submittedSpecimenIds) {
+    return delegate.getSpecimenIds(submittedProjectId, submittedSpecimenIds);
+  }
+
+  @Override
+  public Map<String, String> getSampleIds(String submittedProjectId, Collection<String> submittedSampleIds) {
+    return delegate.getSampleIds(submittedProjectId, submittedSampleIds);
+  }
+
+  @Override
+  public Map<MutationKey, String> getMutationIds(Collection<MutationKey> mutations) {
+    return delegate.getMutationIds(mutations);
+  }
+
+  @Override
+  public Map<String, String> createDonorIds(String submittedProjectId, Collection<String> submittedDonorIds) {
+    return delegate.createDonorIds(submittedProjectId, submittedDonorIds);
+  }
+
+  @Override
+  public Map<String, String> createSpecimenIds(String submittedProjectId, Collection<String> submittedSpecimenIds) {
+    return delegate.createSpecimenIds(submittedProjectId, submittedSpecimenIds);
+  }
+
+  @Override
+  public Map<String, String> createSampleIds(String submittedProjectId, Collection<String> submittedSampleIds) {
+    return delegate.createSampleIds(submittedProjectId, submittedSampleIds);
+  }
+
+  @Override
+  public Map<MutationKey, String> createMutationIds(Collection<MutationKey> mutations) {
+    return delegate.createMutationIds(mutations);
+  }
+
   @Override
   public void close() throws IOException {
     delegate.close();
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.client.util;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Read-only, memory mapped {@code key -> id} index written by {@link IdIndexWriter}.
+ * <p>
+ * Keys are sorted and stored in blocks of {@link #BLOCK_SIZE}, each holding one full key followed by keys that only
+ * store the suffix they don't share with their predecessor. A lookup binary searches the first key of every block and
+ * then scans a single block. Ids are a fixed width array in key order. Only absolute reads are made against the mapped
+ * buffers, so instances are safe for concurrent use without locking.
+ * 
+ * <pre>
+ * header | key blocks | block offsets (long[]) | ids (int[] or long[])
+ * </pre>
+ */
+@Slf4j
+public final class IdIndex implements Closeable {
+
+  /**
+   * Constants.
+   */
+  public static final long NOT_FOUND = -1L;
+
+  static final int MAGIC = 0x44434349; // "DCCI"
+  static final int VERSION = 2;
+  static final int HEADER_SIZE = 64;
+  static final int BLOCK_SIZE = 16;
+
+  /**
+   * Largest power of two {@link MappedByteBuffer} can address.
+   */
+  private static final int SEGMENT_BITS = 30;
+  private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+  /**
+   * State.
+   */
+  private final File file;
+  private final MappedByteBuffer[] segments;
+  @Getter
+  private final long count;
+  @Getter
+  private final long maxId;
+  private final int blockSize;
+  private final int idWidth;
+  private final int maxKeyLength;
+  private final long blockCount;
+  private final long offsetsOffset;
+  private final long idsOffset;
+
+  private IdIndex(File file, MappedByteBuffer[] segments) throws IOException {
+    this.file = file;
+    this.segments = segments;
+
+    if (file.length() < HEADER_SIZE || getInt(0) != MAGIC) {
+      throw new IOException("Not an id index: " + file);
+    }
+    if (getInt(4) != VERSION) {
+      throw new IOException("Unsupported id index version " + getInt(4) + ": " + file);
+    }
+
+    this.count = getLong(8);
+    this.blockSize = getInt(16);
+    this.idWidth = getInt(20);
+    this.maxKeyLength = getInt(24);
+    this.offsetsOffset = getLong(32);
+    this.idsOffset = getLong(40);
+    this.maxId = getLong(48);
+    this.blockCount = (count + blockSize - 1) / blockSize;
+
+    if (idsOffset + count * idWidth != file.length()) {
+      throw new IOException("Truncated id index: " + file);
+    }
+  }
+
+  public static IdIndex open(@NonNull File file) throws IOException {
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+      val channel = randomAccessFile.getChannel();
+      val size = channel.size();
+      val segments = new MappedByteBuffer[(int) ((size >>> SEGMENT_BITS) + 1)];
+      for (int i = 0; i < segments.length; i++) {
+        val start = (long) i << SEGMENT_BITS;
+        segments[i] = channel.map(READ_ONLY, start, Math.min(size - start, SEGMENT_MASK + 1));
+      }
+
+      // Mappings remain valid after the channel is closed
+      return new IdIndex(file, segments);
+    }
+  }
+
+  /**
+   * @return the id of {@code key} or {@link #NOT_FOUND}
+   */
+  public long get(@NonNull String key) {
+    return get(key.getBytes(UTF_8));
+  }
+
+  public boolean contains(@NonNull String key) {
+    return get(key) != NOT_FOUND;
+  }
+
+  public long get(@NonNull byte[] key) {
+    // Find the last block whose first key is <= key
+    long low = 0;
+    long high = blockCount - 1;
+    long block = -1;
+    while (low <= high) {
+      val middle = (low + high) >>> 1;
+      val result = compareFirstKey(middle, key);
+      if (result == 0) {
+        return getId(middle * blockSize);
+      } else if (result < 0) {
+        block = middle;
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+
+    if (block < 0) {
+      return NOT_FOUND;
+    }
+
+    return scanBlock(block, key);
+  }
+
+  /**
+   * Decodes all entries in key order. Used to merge this index into a new one.
+   */
+  Iterator<Entry> iterator() {
+    return new Iterator<Entry>() {
+
+      final byte[] current = new byte[maxKeyLength];
+      long index;
+      long position;
+
+      @Override
+      public boolean hasNext() {
+        return index < count;
+      }
+
+      @Override
+      public Entry next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+
+        int shared = 0;
+        if (index % blockSize == 0) {
+          position = getLong(offsetsOffset + (index / blockSize) * Long.BYTES);
+        } else {
+          shared = readVarInt(position);
+          position += varIntSize(shared);
+        }
+
+        val suffix = readVarInt(position);
+        position += varIntSize(suffix);
+        readBytes(position, current, shared, suffix);
+        position += suffix;
+
+        val key = new byte[shared + suffix];
+        System.arraycopy(current, 0, key, 0, key.length);
+
+        // Sorts ahead of entries added to a writer, so the existing id wins
+        return new Entry(key, getId(index++), -1);
+      }
+
+    };
+  }
+
+  @Override
+  public void close() {
+    // Mapped buffers are released by the GC once unreachable
+    log.debug("Closing {}", file);
+  }
+
+  private long scanBlock(long block, byte[] key) {
+    val first = block * blockSize;
+    val last = Math.min(first + blockSize, count);
+
+    val current = new byte[maxKeyLength];
+    long position = getLong(offsetsOffset + block * Long.BYTES);
+    int length = readVarInt(position);
+    position += varIntSize(length);
+    readBytes(position, current, 0, length);
+    position += length;
+
+    for (long index = first + 1; index < last; index++) {
+      val shared = readVarInt(position);
+      position += varIntSize(shared);
+      val suffix = readVarInt(position);
+      position += varIntSize(suffix);
+      readBytes(position, current, shared, suffix);
+      position += suffix;
+      length = shared + suffix;
+
+      val result = compare(current, length, key);
+      if (result == 0) {
+        return getId(index);
+      } else if (result > 0) {
+        // Sorted, so the key is absent
+        return NOT_FOUND;
+      }
+    }
+
+    return NOT_FOUND;
+  }
+
+  private int compareFirstKey(long block, byte[] key) {
+    long position = getLong(offsetsOffset + block * Long.BYTES);
+    val length = readVarInt(position);
+    position += varIntSize(length);
+
+    val n = Math.min(length, key.length);
+    for (int i = 0; i < n; i++) {
+      val result = (getByte(position + i) & 0xFF) - (key[i] & 0xFF);
+      if (result != 0) {
+        return result;
+      }
+    }
+
+    return length - key.length;
+  }
+
+  private long getId(long index) {
+    val position = idsOffset + index * idWidth;
+    return idWidth == Integer.BYTES ? getInt(position) & 0xFFFFFFFFL : getLong(position);
+  }
+
+  private void readBytes(long position, byte[] target, int offset, int length) {
+    for (int i = 0; i < length; i++) {
+      target[offset + i] = getByte(position + i);
+    }
+  }
+
+  private int readVarInt(long position) {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = getByte(position++);
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+
+    return value;
+  }
+
+  private static int varIntSize(int value) {
+    int size = 1;
+    while ((value & ~0x7F) != 0) {
+      value >>>= 7;
+      size++;
+    }
+
+    return size;
+  }
+
+  /*
+   * Key bytes may straddle segments and are read one at a time. Fixed width values are aligned to their size and never
+   * do.
+   */
+
+  private byte getByte(long position) {
+    return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+  }
+
+  private int getInt(long position) {
+    return segments[(int) (position >>> SEGMENT_BITS)].getInt((int) (position & SEGMENT_MASK));
+  }
+
+  private long getLong(long position) {
+    return segments[(int) (position >>> SEGMENT_BITS)].getLong((int) (position & SEGMENT_MASK));
+  }
+
+  @Value
+  static class Entry implements Comparable<Entry> {
+
+    byte[] key;
+    long id;
+
+    /**
+     * Insertion order, so that the first of several duplicates wins across runs.
+     */
+    long sequence;
+
+    @Override
+    public int compareTo(Entry other) {
+      val result = compare(key, key.length, other.key);
+      return result != 0 ? result : Long.compare(sequence, other.sequence);
+    }
+
+  }
+
+  /**
+   * Unsigned lexicographic comparison of {@code a[0, length)} and {@code b}.
+   */
+  static int compare(byte[] a, int length, byte[] b) {
+    val n = Math.min(length, b.length);
+    for (int i = 0; i < n; i++) {
+      val result = (a[i] & 0xFF) - (b[i] & 0xFF);
+      if (result != 0) {
+        return result;
+      }
+    }
+
+    return length - b.length;
+  }
+
+}
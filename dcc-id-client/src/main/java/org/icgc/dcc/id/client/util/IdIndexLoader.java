@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.client.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.icgc.dcc.id.client.util.IdIndexWriter.Shard;
+import org.icgc.dcc.id.core.ExportBlockReader;
+import org.icgc.dcc.id.core.ExportBlockReader.Block;
+import org.icgc.dcc.id.core.ExportLineParser;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Loads an id export into an {@link IdIndexWriter} as a three stage pipeline:
+ * <ol>
+ * <li>the calling thread reads the (decompressed) stream into blocks of whole lines</li>
+ * <li>{@code parallelism} workers split the blocks into keys and ids with an {@link ExportLineParser}, without decoding
+ * them to strings</li>
+ * <li>each worker adds to its own {@link Shard}, which sorts and spills runs independently</li>
+ * </ol>
+ * Progress and the time spent in each stage are logged periodically, so the bottleneck stage is visible.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class IdIndexLoader {
+
+  /**
+   * Constants.
+   */
+  private static final long REPORT_INTERVAL_SECONDS = 30;
+  private static final Block END = new Block(new byte[0], 0);
+
+  /**
+   * Stores keys as they appear in the export.
+   */
+  public static final KeyEncoder COPY_KEY = (data, offset, length) -> Arrays.copyOfRange(data, offset, offset + length);
+
+  /**
+   * Configuration.
+   */
+  private final int parallelism;
+  private final int blockSize;
+
+  public IdIndexLoader() {
+    // One core is left for the reader
+    this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+  }
+
+  public IdIndexLoader(int parallelism) {
+    this(parallelism, ExportBlockReader.DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * @return the number of entries added
+   */
+  public long load(@NonNull String name, @NonNull InputStream in, @NonNull IdIndexWriter writer) {
+    return load(name, in, writer, COPY_KEY);
+  }
+
+  /**
+   * @param keyEncoder converts the key of each line to the bytes stored in the index
+   * @return the number of entries added
+   */
+  @SneakyThrows
+  public long load(@NonNull String name, @NonNull InputStream in, @NonNull IdIndexWriter writer,
+      @NonNull KeyEncoder keyEncoder) {
+    checkArgument(parallelism > 0, "Parallelism must be positive: %s", parallelism);
+    val metrics = new Metrics(name);
+    val queue = new ArrayBlockingQueue<Block>(2 * parallelism);
+    val executor = Executors.newFixedThreadPool(parallelism + 1, new ThreadFactoryBuilder()
+        .setNameFormat("id-index-loader-" + name + "-%d")
+        .setDaemon(true)
+        .build());
+    try {
+      val workers = new ArrayList<Future<?>>(parallelism);
+      for (val shard : writer.newShards(parallelism)) {
+        workers.add(executor.submit(() -> parse(queue, shard, keyEncoder, metrics)));
+      }
+
+      val reporter = executor.submit(() -> report(metrics));
+      read(in, queue, workers, metrics);
+      for (val worker : workers) {
+        get(worker);
+      }
+      reporter.cancel(true);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    log.info("Finished {}", metrics);
+    return metrics.entries.get();
+  }
+
+  private void read(InputStream in, BlockingQueue<Block> queue, List<Future<?>> workers, Metrics metrics)
+      throws Exception {
+    val reader = new ExportBlockReader(in, blockSize);
+    while (true) {
+      val start = System.nanoTime();
+      val block = reader.read();
+      metrics.readNanos.addAndGet(System.nanoTime() - start);
+      if (block == null) {
+        break;
+      }
+
+      metrics.bytes.addAndGet(block.getLength());
+      put(queue, block, workers, metrics);
+    }
+
+    for (int i = 0; i < workers.size(); i++) {
+      put(queue, END, workers, metrics);
+    }
+  }
+
+  /**
+   * Blocks until there is room in the queue, failing fast if a worker died.
+   */
+  private static void put(BlockingQueue<Block> queue, Block block, List<Future<?>> workers, Metrics metrics)
+      throws Exception {
+    val start = System.nanoTime();
+    while (!queue.offer(block, 1, SECONDS)) {
+      for (val worker : workers) {
+        if (worker.isDone()) {
+          get(worker);
+        }
+      }
+    }
+
+    metrics.blockedNanos.addAndGet(System.nanoTime() - start);
+  }
+
+  private static Void parse(BlockingQueue<Block> queue, Shard shard, KeyEncoder keyEncoder, Metrics metrics)
+      throws InterruptedException {
+    val parser = new ExportLineParser();
+    val keys = new ArrayList<byte[]>();
+    long[] ids = new long[1024];
+    while (true) {
+      val block = queue.take();
+      if (block == END) {
+        return null;
+      }
+
+      val parseStart = System.nanoTime();
+      keys.clear();
+      parser.reset(block.getData(), 0, block.getLength());
+      while (parser.next()) {
+        if (keys.size() == ids.length) {
+          ids = Arrays.copyOf(ids, 2 * ids.length);
+        }
+
+        ids[keys.size()] = parser.getId();
+        keys.add(keyEncoder.encode(parser.getData(), parser.getKeyOffset(), parser.getKeyLength()));
+      }
+
+      val indexStart = System.nanoTime();
+      for (int i = 0; i < keys.size(); i++) {
+        shard.add(keys.get(i), ids[i]);
+      }
+      val indexEnd = System.nanoTime();
+
+      metrics.parseNanos.addAndGet(indexStart - parseStart);
+      metrics.indexNanos.addAndGet(indexEnd - indexStart);
+      metrics.blocks.incrementAndGet();
+      metrics.entries.addAndGet(keys.size());
+    }
+  }
+
+  private static void report(Metrics metrics) {
+    try {
+      while (true) {
+        SECONDS.sleep(REPORT_INTERVAL_SECONDS);
+        log.info("Loading {}", metrics);
+      }
+    } catch (InterruptedException e) {
+      // Finished
+    }
+  }
+
+  private static void get(Future<?> future) throws Exception {
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      val cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+
+      throw e;
+    }
+  }
+
+  /**
+   * Converts the key slice of an export line to the bytes stored in the index.
+   */
+  @FunctionalInterface
+  public interface KeyEncoder {
+
+    byte[] encode(byte[] data, int offset, int length);
+
+  }
+
+  /**
+   * Per stage counters. Stage times are summed across threads.
+   */
+  @RequiredArgsConstructor
+  private static class Metrics {
+
+    final String name;
+    final Stopwatch watch = Stopwatch.createStarted();
+    final AtomicLong bytes = new AtomicLong();
+    final AtomicLong blocks = new AtomicLong();
+    final AtomicLong entries = new AtomicLong();
+    final AtomicLong readNanos = new AtomicLong();
+    final AtomicLong blockedNanos = new AtomicLong();
+    final AtomicLong parseNanos = new AtomicLong();
+    final AtomicLong indexNanos = new AtomicLong();
+
+    @Override
+    public String toString() {
+      val elapsedSeconds = Math.max(1, watch.elapsed(SECONDS));
+      return String.format("%s: %,d entries (%,d/s) from %,d bytes in %,d blocks after %s. "
+          + "Read %ds (blocked on workers %ds), parse %ds, index %ds",
+          name, entries.get(), entries.get() / elapsedSeconds, bytes.get(), blocks.get(), watch,
+          seconds(readNanos), seconds(blockedNanos), seconds(parseNanos), seconds(indexNanos));
+    }
+
+    private static long seconds(AtomicLong nanos) {
+      return NANOSECONDS.toSeconds(nanos.get());
+    }
+
+  }
+
+}
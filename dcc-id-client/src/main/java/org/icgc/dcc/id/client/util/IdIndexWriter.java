@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.client.util;
+
+import com.google.common.collect.Iterators;
+import com.google.common.io.CountingOutputStream;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.icgc.dcc.id.client.util.IdIndex.Entry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.icgc.dcc.id.client.util.IdIndex.BLOCK_SIZE;
+import static org.icgc.dcc.id.client.util.IdIndex.HEADER_SIZE;
+import static org.icgc.dcc.id.client.util.IdIndex.MAGIC;
+import static org.icgc.dcc.id.client.util.IdIndex.NOT_FOUND;
+import static org.icgc.dcc.id.client.util.IdIndex.VERSION;
+import static org.icgc.dcc.id.client.util.IdIndex.compare;
+
+/**
+ * Builds an {@link IdIndex} file from unsorted {@code (key, id)} pairs.
+ * <p>
+ * Entries are sorted in memory in runs of {@code runSize}, spilled to temporary files and merged, so memory use is
+ * independent of the export size. The index is written next to the target and moved into place on {@link #finish()},
+ * so readers never observe a partial file. Duplicate keys keep the first id added.
+ * <p>
+ * When created with a {@code base} index, the new entries are merged into a copy of it. Only the new entries are
+ * sorted, and keys already in the base are skipped as they are added, so that their ids take precedence and
+ * {@link #getAddedCount()} tells whether there is anything to merge.
+ * <p>
+ * The writer itself is not thread-safe. Parallel builds add through {@link #newShards(int) shards} instead, one per
+ * thread, which sort and spill their runs independently. Among duplicate keys added by different shards, which id
+ * is kept is unspecified.
+ */
+@Slf4j
+public class IdIndexWriter implements Closeable {
+
+  /**
+   * Constants.
+   */
+  private static final int DEFAULT_RUN_SIZE = 1_000_000;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Configuration.
+   */
+  private final File file;
+  private final int runSize;
+  private final IdIndex base;
+
+  /**
+   * State.
+   */
+  private final List<Shard> shards = new ArrayList<>();
+  private final List<File> runFiles = new ArrayList<>();
+  private final Shard shard;
+  private final LongAdder added = new LongAdder();
+  private volatile boolean finished;
+
+  public IdIndexWriter(@NonNull File file) {
+    this(file, DEFAULT_RUN_SIZE);
+  }
+
+  public IdIndexWriter(@NonNull File file, int runSize) {
+    this(file, runSize, null);
+  }
+
+  public IdIndexWriter(@NonNull File file, @NonNull IdIndex base) {
+    this(file, DEFAULT_RUN_SIZE, base);
+  }
+
+  private IdIndexWriter(File file, int runSize, IdIndex base) {
+    checkArgument(runSize > 0, "Run size must be positive: %s", runSize);
+    this.file = file;
+    this.runSize = runSize;
+    this.base = base;
+    this.shard = newShard(runSize);
+  }
+
+  public void add(@NonNull String key, long id) {
+    shard.add(key, id);
+  }
+
+  /**
+   * @return the number of entries added so far, excluding keys already in the base index
+   */
+  public long getAddedCount() {
+    return added.sum();
+  }
+
+  /**
+   * Creates {@code count} shards for adding entries from as many threads. The shards share this writer's run size.
+   */
+  public synchronized List<Shard> newShards(int count) {
+    checkArgument(count > 0, "Shard count must be positive: %s", count);
+    val shardRunSize = Math.max(1, runSize / count);
+    val newShards = new ArrayList<Shard>(count);
+    for (int i = 0; i < count; i++) {
+      newShards.add(newShard(shardRunSize));
+    }
+
+    return newShards;
+  }
+
+  /**
+   * Writes the index and atomically replaces {@code file}.
+   */
+  @SneakyThrows
+  public void finish() {
+    checkState(!finished, "Index %s has already been written", file);
+    finished = true;
+
+    val tempFile = new File(file.getPath() + ".tmp");
+    val sources = new ArrayList<Iterator<Entry>>();
+    val readers = new ArrayList<RunReader>();
+    try {
+      if (base != null) {
+        sources.add(base.iterator());
+      }
+
+      for (val shard : shards) {
+        shard.run.sort(Entry::compareTo);
+        sources.add(shard.run.iterator());
+      }
+
+      for (val runFile : runFiles) {
+        val reader = new RunReader(runFile);
+        readers.add(reader);
+        sources.add(reader);
+      }
+
+      if (sources.size() > 1) {
+        log.info("Merging {} sorted runs into {}...", sources.size(), file);
+      }
+
+      write(Iterators.mergeSorted(sources, Entry::compareTo), tempFile);
+    } finally {
+      for (val reader : readers) {
+        reader.close();
+      }
+    }
+    for (val shard : shards) {
+      shard.run.clear();
+    }
+
+    Files.move(tempFile.toPath(), file.toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+
+  /**
+   * Removes temporary files.
+   */
+  @Override
+  public synchronized void close() {
+    for (val runFile : runFiles) {
+      runFile.delete();
+    }
+    runFiles.clear();
+  }
+
+  private synchronized Shard newShard(int shardRunSize) {
+    val newShard = new Shard(shards.size(), shardRunSize);
+    shards.add(newShard);
+
+    return newShard;
+  }
+
+  private synchronized void addRunFile(File runFile) {
+    runFiles.add(runFile);
+  }
+
+  @SneakyThrows
+  private void spill(List<Entry> run) {
+    run.sort(Entry::compareTo);
+    val runFile = File.createTempFile(file.getName() + ".run", ".tmp", file.getAbsoluteFile().getParentFile());
+    runFile.deleteOnExit();
+    addRunFile(runFile);
+
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), BUFFER_SIZE))) {
+      for (val entry : run) {
+        out.writeInt(entry.getKey().length);
+        out.write(entry.getKey());
+        out.writeLong(entry.getId());
+        out.writeLong(entry.getSequence());
+      }
+    }
+
+    run.clear();
+  }
+
+  /**
+   * Writes the header, the prefix-compressed key blocks, the block offsets and the ids, in that order. Offsets and ids
+   * are staged in temporary files since their sizes are only known once the keys have been de-duplicated.
+   */
+  private void write(Iterator<Entry> entries, File tempFile) throws IOException {
+    val offsetsFile = new File(tempFile.getPath() + ".offsets");
+    val idsFile = new File(tempFile.getPath() + ".ids");
+
+    try {
+      long count = 0;
+      long maxId = base == null ? 0 : base.getMaxId();
+      int maxKeyLength = 0;
+      long offsetsOffset;
+      long idsOffset;
+      int idWidth;
+
+      try (CountingOutputStream out =
+          new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE));
+          DataOutputStream offsets =
+              new DataOutputStream(new BufferedOutputStream(new FileOutputStream(offsetsFile), BUFFER_SIZE));
+          DataOutputStream ids =
+              new DataOutputStream(new BufferedOutputStream(new FileOutputStream(idsFile), BUFFER_SIZE))) {
+        // Placeholder, rewritten below
+        out.write(new byte[HEADER_SIZE]);
+
+        byte[] previous = null;
+        while (entries.hasNext()) {
+          val entry = entries.next();
+          val key = entry.getKey();
+          if (previous != null && compare(previous, previous.length, key) == 0) {
+            continue;
+          }
+
+          if (count % BLOCK_SIZE == 0) {
+            offsets.writeLong(out.getCount());
+            writeVarInt(out, key.length);
+            out.write(key);
+          } else {
+            val shared = sharedPrefixLength(previous, key);
+            writeVarInt(out, shared);
+            writeVarInt(out, key.length - shared);
+            out.write(key, shared, key.length - shared);
+          }
+
+          ids.writeLong(entry.getId());
+          maxId = Math.max(maxId, entry.getId());
+          maxKeyLength = Math.max(maxKeyLength, key.length);
+          previous = key;
+          count++;
+        }
+
+        offsets.flush();
+        ids.flush();
+
+        // Long aligned so that the fixed width regions never straddle a mapped segment
+        while (out.getCount() % Long.BYTES != 0) {
+          out.write(0);
+        }
+
+        offsetsOffset = out.getCount();
+        Files.copy(offsetsFile.toPath(), out);
+
+        idsOffset = out.getCount();
+        idWidth = maxId <= 0xFFFFFFFFL ? Integer.BYTES : Long.BYTES;
+        copyIds(idsFile, out, idWidth);
+      }
+
+      try (RandomAccessFile header = new RandomAccessFile(tempFile, "rw")) {
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeLong(count);
+        header.writeInt(BLOCK_SIZE);
+        header.writeInt(idWidth);
+        header.writeInt(maxKeyLength);
+        header.writeInt(0);
+        header.writeLong(offsetsOffset);
+        header.writeLong(idsOffset);
+        header.writeLong(maxId);
+      }
+
+      log.info("Wrote {} keys to {} ({} bytes)", count, tempFile, tempFile.length());
+    } finally {
+      offsetsFile.delete();
+      idsFile.delete();
+    }
+  }
+
+  private static void copyIds(File idsFile, OutputStream out, int idWidth) throws IOException {
+    val data = new DataOutputStream(out);
+    try (DataInputStream ids =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(idsFile), BUFFER_SIZE))) {
+      while (true) {
+        long id;
+        try {
+          id = ids.readLong();
+        } catch (EOFException e) {
+          break;
+        }
+
+        if (idWidth == Integer.BYTES) {
+          data.writeInt((int) id);
+        } else {
+          data.writeLong(id);
+        }
+      }
+    }
+    data.flush();
+  }
+
+  private static int sharedPrefixLength(byte[] a, byte[] b) {
+    val length = Math.min(a.length, b.length);
+    int i = 0;
+    while (i < length && a[i] == b[i]) {
+      i++;
+    }
+
+    return i;
+  }
+
+  private static void writeVarInt(OutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  /**
+   * Buffers the entries of one thread. Sequences are prefixed with the shard number so they never collide.
+   */
+  public class Shard {
+
+    private final long sequenceBase;
+    private final int runSize;
+    private final List<Entry> run = new ArrayList<>();
+    private long sequence;
+
+    private Shard(int number, int runSize) {
+      this.sequenceBase = (long) number << 40;
+      this.runSize = runSize;
+    }
+
+    public void add(@NonNull String key, long id) {
+      add(key.getBytes(UTF_8), id);
+    }
+
+    /**
+     * @param key UTF-8 encoded key, which must not be modified afterwards
+     */
+    public void add(@NonNull byte[] key, long id) {
+      checkState(!finished, "Index %s has already been written", file);
+      checkArgument(id >= 0, "Id must not be negative: %s", id);
+      if (base != null && base.get(key) != NOT_FOUND) {
+        return;
+      }
+
+      added.increment();
+      run.add(new Entry(key, id, sequenceBase + sequence++));
+
+      if (run.size() >= runSize) {
+        spill(run);
+      }
+    }
+
+  }
+
+  /**
+   * Streams a sorted run file.
+   */
+  private static class RunReader implements Iterator<Entry>, Closeable {
+
+    private final DataInputStream in;
+    private Entry next;
+
+    private RunReader(File runFile) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), BUFFER_SIZE));
+      this.next = read();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    @SneakyThrows
+    public Entry next() {
+      val entry = next;
+      next = read();
+
+      return entry;
+    }
+
+    private Entry read() throws IOException {
+      int length;
+      try {
+        length = in.readInt();
+      } catch (EOFException e) {
+        return null;
+      }
+
+      val key = new byte[length];
+      in.readFully(key);
+
+      return new Entry(key, in.readLong(), in.readLong());
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+  }
+
+}
@@ -20,12 +20,14 @@ package org.icgc.dcc.id.client.http;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
 import lombok.Cleanup;
 import lombok.val;
 import org.icgc.dcc.id.client.core.IdClient;
 import org.icgc.dcc.id.client.http.webclient.WebClientConfig;
 import org.icgc.dcc.id.core.ExhaustedRetryException;
 import org.icgc.dcc.id.core.IdentifierException;
+import org.icgc.dcc.id.core.MutationKey;
 import org.icgc.dcc.id.util.Ids;
 import org.junit.Assert;
 import org.junit.Rule;
@@ -36,16 +38,21 @@ import java.util.stream.IntStream;
 
 import static com.fasterxml.uuid.Generators.timeBasedGenerator;
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static java.lang.String.format;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.icgc.dcc.id.client.http.HttpIdClient.ANALYSIS_ID_PATH;
+import static org.icgc.dcc.id.client.http.HttpIdClient.DONOR_IDS_PATH;
 import static org.icgc.dcc.id.client.http.HttpIdClient.DONOR_ID_PATH;
+import static org.icgc.dcc.id.client.http.HttpIdClient.MUTATION_IDS_PATH;
 import static org.icgc.dcc.id.client.http.HttpIdClient.MUTATION_ID_PATH;
 import static org.icgc.dcc.id.client.http.HttpIdClient.SAMPLE_ID_PATH;
 import static org.icgc.dcc.id.client.http.HttpIdClient.SPECIMEN_ID_PATH;
@@ -226,6 +233,36 @@ public abstract class AbstractIdClientTest {
   }
 
 
+  @Test
+  public void testGetMutationIds() {
+    val requestUrl = format("%s?release=ICGC19&create=false", MUTATION_IDS_PATH);
+    stubFor(post(urlEqualTo(requestUrl))
+        .withRequestBody(equalTo("x\t1\t2\ta_b\tssm\t1\nx\t3\t4\ta_b\tssm\t1\n"))
+        .willReturn(aResponse()
+            .withStatus(200)
+            .withHeader("Content-Type", "text/tsv")
+            .withBody(createId(MUTATION_ID_PREFIX) + "\n\n")));
+
+    val found = new MutationKey("x", "1", "2", "a_b", "ssm", "1");
+    val missing = new MutationKey("x", "3", "4", "a_b", "ssm", "1");
+    val response = getIdClient().getMutationIds(ImmutableList.of(found, missing, found));
+    assertThat(response).containsOnly(entry(found, createId(MUTATION_ID_PREFIX)));
+  }
+
+  @Test
+  public void testCreateDonorIds() {
+    val requestUrl = format("%s?submittedProjectId=%s&release=ICGC19&create=true", DONOR_IDS_PATH, "p1");
+    stubFor(post(urlEqualTo(requestUrl))
+        .withRequestBody(equalTo("s1\ns2\n"))
+        .willReturn(aResponse()
+            .withStatus(200)
+            .withHeader("Content-Type", "text/tsv")
+            .withBody("DO1\nDO2\n")));
+
+    val response = getIdClient().createDonorIds("p1", ImmutableList.of("s1", "s2"));
+    assertThat(response).containsExactly(entry("s1", "DO1"), entry("s2", "DO2"));
+  }
+
   protected static WebClientConfig createClientConfig(int maxRetries) {
     return WebClientConfig.builder()
         .serviceUrl("http://localhost:" + SERVER_PORT)
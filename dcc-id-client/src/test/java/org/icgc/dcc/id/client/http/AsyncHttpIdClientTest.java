@@ -0,0 +1,157 @@
+package org.icgc.dcc.id.client.http;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.google.common.collect.ImmutableList;
+import lombok.val;
+import org.icgc.dcc.id.client.core.AsyncIdClient;
+import org.icgc.dcc.id.client.http.webclient.WebClientConfig;
+import org.icgc.dcc.id.client.util.BlockingIdClient;
+import org.icgc.dcc.id.core.IdentifierException;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.entry;
+import static org.icgc.dcc.id.client.http.HttpIdClient.DONOR_ID_PATH;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AsyncHttpIdClientTest {
+
+  private static final int SERVER_PORT = 22223;
+
+  @Rule
+  public WireMockRule wireMockRule = new WireMockRule(SERVER_PORT);
+
+  private final AsyncHttpIdClient client = new AsyncHttpIdClient(WebClientConfig.builder()
+      .serviceUrl("http://localhost:" + SERVER_PORT)
+      .release("ICGC19")
+      .maxRetries(3)
+      .retryMultiplier(1f)
+      .waitBeforeRetrySeconds(1)
+      .build());
+
+  @After
+  public void tearDown() throws Exception {
+    client.close();
+  }
+
+  @Test
+  public void testGetDonorId() {
+    stubDonor("found", 200, "DO1");
+    stubDonor("missing", 404, "");
+
+    val found = client.getDonorId("found", "p1");
+    val missing = client.getDonorId("missing", "p1");
+
+    assertThat(found.join()).isEqualTo(Optional.of("DO1"));
+    assertThat(missing.join()).isEmpty();
+  }
+
+  @Test
+  public void testRetryIsScheduled() {
+    val requestUrl = donorUrl("s1");
+    stubFor(get(urlEqualTo(requestUrl))
+        .inScenario("retry")
+        .whenScenarioStateIs(STARTED)
+        .willReturn(aResponse().withStatus(503))
+        .willSetStateTo("available"));
+    stubFor(get(urlEqualTo(requestUrl))
+        .inScenario("retry")
+        .whenScenarioStateIs("available")
+        .willReturn(aResponse().withStatus(200).withBody("DO1")));
+
+    val start = System.currentTimeMillis();
+    val future = client.getDonorId("s1", "p1");
+
+    // The caller is never blocked by the back-off
+    assertThat(System.currentTimeMillis() - start).isLessThan(1000);
+    assertThat(future.join()).isEqualTo(Optional.of("DO1"));
+    verify(2, getRequestedFor(urlEqualTo(requestUrl)));
+  }
+
+  @Test
+  public void testServerError() {
+    stubDonor("s1", 500, "boom");
+
+    val throwable = catchThrowable(() -> client.getDonorId("s1", "p1").join());
+    assertThat(throwable).isInstanceOf(CompletionException.class);
+    assertThat(throwable.getCause()).isInstanceOf(IdentifierException.class);
+  }
+
+  @Test
+  public void testBlockingAdapter() {
+    stubDonor("found", 200, "DO1");
+    stubDonor("missing", 404, "");
+    stubDonor("error", 500, "boom");
+
+    val blocking = new BlockingIdClient(client);
+
+    assertThat(blocking.getDonorIds("p1", ImmutableList.of("found", "missing", "found")))
+        .containsOnly(entry("found", "DO1"));
+    assertThat(catchThrowable(() -> blocking.getDonorId("error", "p1"))).isInstanceOf(IdentifierException.class);
+  }
+
+  @Test
+  public void testBlockingAdapterMaxInFlight() {
+    val inFlight = new AtomicInteger();
+    val maxInFlight = new AtomicInteger();
+    val executor = Executors.newScheduledThreadPool(4);
+    val delegate = mock(AsyncIdClient.class);
+    when(delegate.getDonorId(anyString(), eq("p1"))).thenAnswer(invocation -> {
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      CompletableFuture<Optional<String>> future = new CompletableFuture<>();
+      executor.schedule(() -> {
+        inFlight.decrementAndGet();
+        future.complete(Optional.of("DO" + invocation.getArguments()[0]));
+      }, 10, MILLISECONDS);
+
+      return future;
+    });
+
+    try {
+      val submittedDonorIds = IntStream.range(0, 20).mapToObj(String::valueOf).collect(toList());
+      val ids = new BlockingIdClient(delegate, 2).getDonorIds("p1", submittedDonorIds);
+
+      assertThat(ids).hasSize(20).containsEntry("19", "DO19");
+      assertThat(maxInFlight.get()).isLessThanOrEqualTo(2);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void stubDonor(String submittedDonorId, int status, String body) {
+    stubFor(get(urlEqualTo(donorUrl(submittedDonorId)))
+        .willReturn(aResponse()
+            .withStatus(status)
+            .withHeader("Content-Type", "text/plain")
+            .withBody(body)));
+  }
+
+  private static String donorUrl(String submittedDonorId) {
+    return format("%s?submittedDonorId=%s&submittedProjectId=%s&release=ICGC19&create=false", DONOR_ID_PATH,
+        submittedDonorId, "p1");
+  }
+
+}
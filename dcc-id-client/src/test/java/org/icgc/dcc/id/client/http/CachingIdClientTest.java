@@ -1,10 +1,27 @@
 package org.icgc.dcc.id.client.http;
 
+import com.google.common.collect.ImmutableList;
+import lombok.val;
 import org.icgc.dcc.id.client.core.IdClient;
 import org.icgc.dcc.id.client.util.CachingIdClient;
+import org.icgc.dcc.id.core.MutationKey;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.icgc.dcc.id.client.http.HttpIdClient.MUTATION_IDS_PATH;
+import static org.icgc.dcc.id.client.http.HttpIdClient.MUTATION_ID_PATH;
+
 public class CachingIdClientTest extends  AbstractIdClientTest{
 
   private final IdClient client = new HttpIdClient(createClientConfig(3));
@@ -14,6 +31,30 @@ public class CachingIdClientTest extends  AbstractIdClientTest{
     return new CachingIdClient(client);
   }
 
+  @Test
+  public void testMutationCache() {
+    stubFor(get(urlMatching(MUTATION_ID_PATH + "\\?.*chromosomeStart=1&.*"))
+        .willReturn(aResponse().withStatus(200).withHeader("Content-Type", "text/plain").withBody("MU1")));
+    stubFor(post(urlEqualTo(MUTATION_IDS_PATH + "?release=ICGC19&create=false"))
+        .willReturn(aResponse().withStatus(200).withHeader("Content-Type", "text/tsv").withBody("\n")));
+
+    val cachingClient = new CachingIdClient(client);
+    assertThat(cachingClient.getMutationId("1", "1", "1", "A>T", "single base substitution", "GRCh37")).hasValue("MU1");
+    assertThat(cachingClient.getMutationId("1", "1", "1", "A>T", "single base substitution", "GRCh37")).hasValue("MU1");
+    verify(1, getRequestedFor(urlMatching(MUTATION_ID_PATH + ".*")));
+
+    // Only the uncached mutation goes to the server
+    val cached = new MutationKey("1", "1", "1", "A>T", "single base substitution", "GRCh37");
+    val missing = new MutationKey("x", "3", "4", "a_b", "ssm", "1");
+    assertThat(cachingClient.getMutationIds(ImmutableList.of(cached, missing))).containsOnly(entry(cached, "MU1"));
+    assertThat(cachingClient.getMutationIds(ImmutableList.of(cached, missing))).containsOnly(entry(cached, "MU1"));
+    verify(1, postRequestedFor(urlEqualTo(MUTATION_IDS_PATH + "?release=ICGC19&create=false")));
+
+    val stats = cachingClient.getMutationCacheStats();
+    assertThat(stats.hitCount()).isEqualTo(4);
+    assertThat(stats.missCount()).isEqualTo(2);
+  }
+
   @Test
   @Ignore
   public void test_503(){
@@ -0,0 +1,108 @@
+package org.icgc.dcc.id.client.http;
+
+import com.google.common.base.Stopwatch;
+import lombok.Cleanup;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.icgc.dcc.id.client.util.IdIndex;
+import org.icgc.dcc.id.client.util.IdIndexWriter;
+import org.icgc.dcc.id.core.ExportBlockReader;
+import org.icgc.dcc.id.core.ExportBlockReader.Block;
+import org.icgc.dcc.id.core.ExportLineParser;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.icgc.dcc.common.core.util.Formats.formatCount;
+import static org.icgc.dcc.common.core.util.Formats.formatRate;
+
+/**
+ * Compares the {@link IdIndex} format used by {@link ExportIdCache} with the MapDB hash map it replaced, using the full
+ * mutation export.
+ */
+@Slf4j
+@Ignore("For development only. Downloads the full mutation export")
+public class ExportIdCacheBenchmark {
+
+  private static final File EXPORT_FILE = new File("/tmp/mutation.tsv.gz");
+
+  @Test
+  @SneakyThrows
+  public void benchmarkMapDB() {
+    val dbFile = new File("/tmp/mutation-benchmark.db");
+    dbFile.delete();
+
+    val watch = Stopwatch.createStarted();
+    @Cleanup
+    val db = DBMaker.fileDB(dbFile).concurrencyDisable().fileMmapEnable().make();
+    Map<String, Long> map = db.hashMap("mutation", Serializer.STRING_ASCII, Serializer.LONG).createOrOpen();
+    val count = readExport((key, id) -> map.put(key, id));
+    log.info("MapDB: built {} keys in {}, {} bytes", formatCount(count), watch, dbFile.length());
+
+    lookup("MapDB", key -> map.get(key));
+  }
+
+  @Test
+  @SneakyThrows
+  public void benchmarkIdIndex() {
+    val indexFile = new File("/tmp/mutation-benchmark.idx");
+
+    val watch = Stopwatch.createStarted();
+    @Cleanup
+    val writer = new IdIndexWriter(indexFile);
+    val count = readExport(writer::add);
+    writer.finish();
+    log.info("IdIndex: built {} keys in {}, {} bytes", formatCount(count), watch, indexFile.length());
+
+    @Cleanup
+    val index = IdIndex.open(indexFile);
+    lookup("IdIndex", index::get);
+  }
+
+  @SneakyThrows
+  private static void lookup(String name, ToLongFunction<String> lookup) {
+    val watch = Stopwatch.createStarted();
+    val count = readExport((key, expectedId) -> assertThat(lookup.applyAsLong(key)).isEqualTo(expectedId));
+    log.info("{}: looked up {} keys in {} ({} ids/s)", name, formatCount(count), watch, formatRate(count, watch));
+  }
+
+  @SneakyThrows
+  private static int readExport(EntryConsumer consumer) {
+    if (!EXPORT_FILE.exists()) {
+      log.info("Downloading {}...", EXPORT_FILE);
+      new ExportClient().downloadEntityExport("mutation", EXPORT_FILE);
+    }
+
+    @Cleanup
+    val export = new ExportBlockReader(new GZIPInputStream(new FileInputStream(EXPORT_FILE)));
+    val parser = new ExportLineParser();
+
+    Block block;
+    int count = 0;
+    while ((block = export.read()) != null) {
+      parser.reset(block.getData(), 0, block.getLength());
+      while (parser.next()) {
+        consumer.accept(parser.getKey(), parser.getId());
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  private interface EntryConsumer {
+
+    void accept(String key, long id);
+
+  }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.client.http;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import lombok.Cleanup;
+import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.zip.GZIPOutputStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExportIdCacheRefreshTest {
+
+  private static final int SERVER_PORT = 22223;
+  private static final String SERVICE_URL = "http://localhost:" + SERVER_PORT;
+
+  @Rule
+  public WireMockRule wireMockRule = new WireMockRule(SERVER_PORT);
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testRefresh() throws Exception {
+    stubExport("/donor/export", "1\tD1\tP1\tICGC19\n2\tD2\tP1\tICGC19\n");
+    stubExport("/donor/export?sinceId=0", "1\tD1\tP1\tICGC19\n2\tD2\tP1\tICGC19\n3\tD3\tP1\tICGC20\n");
+
+    @Cleanup
+    val cache = new ExportIdCache(tmp.newFolder(), new ExportClient(SERVICE_URL));
+    assertThat(cache.getDonorId("P1", "D1")).isEqualTo("DO1");
+    assertThat(cache.getDonorId("P1", "D3")).isNull();
+
+    cache.refresh();
+
+    verify(getRequestedFor(urlEqualTo("/donor/export?sinceId=0")));
+    assertThat(cache.getDonorId("P1", "D1")).isEqualTo("DO1");
+    assertThat(cache.getDonorId("P1", "D2")).isEqualTo("DO2");
+    assertThat(cache.getDonorId("P1", "D3")).isEqualTo("DO3");
+  }
+
+  @Test
+  public void testRefreshWithNoNewIds() throws Exception {
+    stubExport("/file/export", "1\tF1\tICGC19\n");
+    stubExport("/file/export?sinceId=0", "1\tF1\tICGC19\n");
+
+    @Cleanup
+    val cache = new ExportIdCache(tmp.newFolder(), new ExportClient(SERVICE_URL));
+    assertThat(cache.getFileId("F1")).isEqualTo("FI1");
+
+    cache.refresh("file");
+
+    assertThat(cache.getFileId("F1")).isEqualTo("FI1");
+  }
+
+  @Test
+  public void testRefreshWithLateCommit() throws Exception {
+    // Id 2 was drawn before id 3 but committed after the first export
+    stubExport("/donor/export", "1\tD1\tP1\tICGC19\n3\tD3\tP1\tICGC19\n");
+    stubExport("/donor/export?sinceId=0", "1\tD1\tP1\tICGC19\n2\tD2\tP1\tICGC19\n3\tD3\tP1\tICGC19\n");
+
+    @Cleanup
+    val cache = new ExportIdCache(tmp.newFolder(), new ExportClient(SERVICE_URL));
+    assertThat(cache.getDonorId("P1", "D2")).isNull();
+
+    cache.refresh("donor");
+
+    assertThat(cache.getDonorId("P1", "D1")).isEqualTo("DO1");
+    assertThat(cache.getDonorId("P1", "D2")).isEqualTo("DO2");
+    assertThat(cache.getDonorId("P1", "D3")).isEqualTo("DO3");
+  }
+
+  @Test
+  public void testMutationRefresh() throws Exception {
+    // One packed and one text key, with the mutation type before the mutation as in the export
+    stubExport("/mutation/export", ""
+        + "1\t1\t100\t100\tsingle base substitution\tA>T\tGRCh37\tICGC19\n"
+        + "2\tx\t1\t2\tssm\ta_b\t1\tICGC19\n");
+    stubExport("/mutation/export?sinceId=0", ""
+        + "1\t1\t100\t100\tsingle base substitution\tA>T\tGRCh37\tICGC19\n"
+        + "2\tx\t1\t2\tssm\ta_b\t1\tICGC19\n"
+        + "3\t1\t200\t201\tdeletion of <=200bp\tAC>-\tGRCh37\tICGC20\n");
+
+    @Cleanup
+    val cache = new ExportIdCache(tmp.newFolder(), new ExportClient(SERVICE_URL));
+    assertThat(cache.getMutationId("1", "100", "100", "A>T", "single base substitution", "GRCh37")).isEqualTo("MU1");
+    assertThat(cache.getMutationId("x", "1", "2", "a_b", "ssm", "1")).isEqualTo("MU2");
+    assertThat(cache.getMutationId("1", "100", "100", "A>C", "single base substitution", "GRCh37")).isNull();
+
+    cache.refresh("mutation");
+
+    assertThat(cache.getMutationId("1", "100", "100", "A>T", "single base substitution", "GRCh37")).isEqualTo("MU1");
+    assertThat(cache.getMutationId("1", "200", "201", "AC>-", "deletion of <=200bp", "GRCh37")).isEqualTo("MU3");
+  }
+
+  @Test(timeout = 10000)
+  public void testBackgroundRefresh() throws Exception {
+    stubExport("/donor/export", "1\tD1\tP1\tICGC19\n");
+    stubExport("/donor/export?sinceId=0", "1\tD1\tP1\tICGC19\n2\tD2\tP1\tICGC20\n");
+
+    @Cleanup
+    val cache = new ExportIdCache(tmp.newFolder(), new ExportClient(SERVICE_URL), Duration.ofMillis(1));
+    assertThat(cache.getDonorId("P1", "D1")).isEqualTo("DO1");
+
+    // Stale lookups keep being served while the refresh runs
+    Thread.sleep(10);
+    while (cache.getDonorId("P1", "D2") == null) {
+      assertThat(cache.getDonorId("P1", "D1")).isEqualTo("DO1");
+      Thread.sleep(10);
+    }
+  }
+
+  @SneakyThrows
+  private static void stubExport(String url, String tsv) {
+    val bytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+      gzip.write(tsv.getBytes(UTF_8));
+    }
+
+    stubFor(get(urlEqualTo(url)).willReturn(aResponse().withStatus(200).withBody(bytes.toByteArray())));
+  }
+
+}
@@ -4,6 +4,7 @@ import com.github.tomakehurst.wiremock.http.Fault;
 import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
+import lombok.Cleanup;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.icgc.dcc.id.client.core.IdClient;
@@ -15,6 +16,7 @@ import org.powermock.reflect.Whitebox;
 
 import java.io.IOException;
 import java.net.ProtocolException;
+import java.util.concurrent.Executors;
 import java.util.stream.IntStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
@@ -23,6 +25,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
 import static java.lang.String.format;
+import static java.util.stream.Collectors.toList;
 import static javax.ws.rs.core.Response.Status.NOT_FOUND;
 import static javax.ws.rs.core.Response.Status.OK;
 import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
@@ -230,4 +233,38 @@ public class HttpIdClientTest extends  AbstractIdClientTest{
     assertThat(response.get()).isEqualTo(expectedResponse);
   }
 
+  /**
+   * Unread responses must be returned to the pool, otherwise a small pool is exhausted after a few lookups.
+   */
+  @Test(timeout = 60000)
+  public void testConcurrentLookupsOnSmallPool() throws Exception {
+    val foundUrl = format("%s?submittedDonorId=%s&submittedProjectId=%s&release=ICGC19&create=false", DONOR_ID_PATH,
+        "found", "p1");
+    val missingUrl = format("%s?submittedDonorId=%s&submittedProjectId=%s&release=ICGC19&create=false", DONOR_ID_PATH,
+        "missing", "p1");
+    stubFor(get(urlEqualTo(foundUrl)).willReturn(aResponse().withStatus(OK.getStatusCode()).withBody("DO1")));
+    stubFor(get(urlEqualTo(missingUrl)).willReturn(aResponse().withStatus(NOT_FOUND.getStatusCode())));
+
+    @Cleanup
+    val client = new HttpIdClient(WebClientConfig.builder()
+        .serviceUrl("http://localhost:" + wireMockRule.port())
+        .release("ICGC19")
+        .maxConnections(2)
+        .maxConnectionsPerHost(2)
+        .build());
+
+    val executor = Executors.newFixedThreadPool(16);
+    try {
+      val futures = IntStream.range(0, 200)
+          .mapToObj(i -> executor.submit(() -> client.getDonorId(i % 2 == 0 ? "found" : "missing", "p1")))
+          .collect(toList());
+
+      for (int i = 0; i < futures.size(); i++) {
+        assertThat(futures.get(i).get().isPresent()).isEqualTo(i % 2 == 0);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.client.http;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.google.common.collect.ImmutableList;
+
+import lombok.val;
+
+public class RangeDownloadTest {
+
+  private static final int SERVER_PORT = 22223;
+  private static final String PATH = "/mutation/export";
+  private static final String CONTENT = "0123456789";
+  private static final String ETAG = "\"mutation_ids-10\"";
+  private static final String DIGEST = "md5=eB5eJF1ptWaXm4bijSPyxw==";
+
+  @Rule
+  public WireMockRule wireMockRule = new WireMockRule(SERVER_PORT);
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final ExportClientConfig config = ExportClientConfig.builder()
+      .chunkSize(4)
+      .parallelism(2)
+      .maxRetries(0)
+      .build();
+
+  private File file;
+
+  @Before
+  public void setUp() {
+    file = new File(tmp.getRoot(), "mutation.tsv.gz");
+  }
+
+  @Test
+  public void testDownload() throws Exception {
+    stubRanges(DIGEST);
+
+    download();
+
+    assertThat(read(file)).isEqualTo(CONTENT);
+    assertThat(new File(file.getPath() + ".part")).doesNotExist();
+    assertThat(new File(file.getPath() + ".progress")).doesNotExist();
+    verify(1, getRequestedFor(urlEqualTo(PATH)).withHeader("Range", equalTo("bytes=8-9")));
+  }
+
+  @Test
+  public void testResumeSkipsCompletedChunks() throws Exception {
+    stubRanges(DIGEST);
+    Files.write(new File(file.getPath() + ".part").toPath(), "01234567".getBytes(UTF_8));
+    Files.write(new File(file.getPath() + ".progress").toPath(), ImmutableList.of(ETAG, "10", "0", "1"), UTF_8);
+
+    download();
+
+    assertThat(read(file)).isEqualTo(CONTENT);
+    verify(getRequestedFor(urlEqualTo(PATH)).withHeader("If-Range", equalTo(ETAG)));
+    verify(0, getRequestedFor(urlEqualTo(PATH)).withHeader("Range", equalTo("bytes=4-7")));
+  }
+
+  @Test
+  public void testChecksumMismatch() throws Exception {
+    stubRanges("md5=AAAAAAAAAAAAAAAAAAAAAA==");
+
+    assertThatThrownBy(this::download).isInstanceOf(IllegalStateException.class).hasMessageContaining("MD5");
+    assertThat(file).doesNotExist();
+  }
+
+  @Test
+  public void testDownloadWithoutRangeSupport() throws Exception {
+    stubFor(get(urlEqualTo(PATH)).willReturn(aResponse().withStatus(200).withBody(CONTENT)));
+
+    download();
+
+    assertThat(read(file)).isEqualTo(CONTENT);
+  }
+
+  private void download() throws Exception {
+    new RangeDownload(config, new URL("http://localhost:" + SERVER_PORT + PATH), file).run();
+  }
+
+  private static void stubRanges(String digest) {
+    stubFor(get(urlEqualTo(PATH)).willReturn(aResponse()
+        .withStatus(200)
+        .withHeader("Accept-Ranges", "bytes")
+        .withHeader("ETag", ETAG)
+        .withHeader("Digest", digest)
+        .withBody(CONTENT)));
+
+    stubRange(0, 3, digest);
+    stubRange(4, 7, digest);
+    stubRange(8, 9, digest);
+  }
+
+  private static void stubRange(int start, int end, String digest) {
+    stubFor(get(urlEqualTo(PATH)).withHeader("Range", equalTo("bytes=" + start + "-" + end)).willReturn(aResponse()
+        .withStatus(206)
+        .withHeader("Accept-Ranges", "bytes")
+        .withHeader("ETag", ETAG)
+        .withHeader("Digest", digest)
+        .withHeader("Content-Range", "bytes " + start + "-" + end + "/" + CONTENT.length())
+        .withBody(CONTENT.substring(start, end + 1))));
+  }
+
+  private static String read(File file) throws Exception {
+    return new String(Files.readAllBytes(file.toPath()), UTF_8);
+  }
+
+}
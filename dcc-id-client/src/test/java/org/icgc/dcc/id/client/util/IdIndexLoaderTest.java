@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.client.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.icgc.dcc.id.client.util.IdIndex.NOT_FOUND;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Strings;
+
+import lombok.Cleanup;
+import lombok.val;
+
+public class IdIndexLoaderTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  /**
+   * Small blocks so that lines straddle block boundaries.
+   */
+  private final IdIndexLoader loader = new IdIndexLoader(4, 64);
+
+  @Test
+  public void testLineFormats() throws IOException {
+    val longKey = Strings.repeat("x", 500);
+    val export = ""
+        + "1\tDO1\tPRJ-1\tICGC21\n"
+        + "2\tDO2\tPRJ-2\r\n"
+        + "\n"
+        + "3\tPRJ-3\n"
+        + "4\t" + longKey + "\tICGC22\n"
+        + "EGAZ00001\n"
+        + "5\tDO\u00fc\tPRJ-1\tICGC22";
+
+    val file = tmp.newFile("formats.idx");
+    @Cleanup
+    val writer = new IdIndexWriter(file);
+    val count = loader.load("test", stream(export), writer);
+    writer.finish();
+
+    assertThat(count).isEqualTo(6);
+
+    @Cleanup
+    val index = IdIndex.open(file);
+    assertThat(index.getCount()).isEqualTo(6);
+    assertThat(index.get("DO1\tPRJ-1")).isEqualTo(1);
+    assertThat(index.get("DO2")).isEqualTo(2);
+    assertThat(index.get("PRJ-3")).isEqualTo(3);
+    assertThat(index.get(longKey)).isEqualTo(4);
+    assertThat(index.contains("EGAZ00001")).isTrue();
+    assertThat(index.get("DO\u00fc\tPRJ-1")).isEqualTo(5);
+    assertThat(index.get("DO1\tPRJ-1\tICGC21")).isEqualTo(NOT_FOUND);
+  }
+
+  @Test
+  public void testManyLines() throws IOException {
+    val random = new Random(1);
+    val export = new StringBuilder();
+    for (int i = 1; i <= 10_000; i++) {
+      export.append(i).append('\t').append(key(i)).append('\t').append("ICGC").append(random.nextInt(25)).append('\n');
+    }
+
+    // Small runs to exercise spilling from every shard
+    val file = tmp.newFile("many.idx");
+    @Cleanup
+    val writer = new IdIndexWriter(file, 100);
+    val count = loader.load("test", stream(export.toString()), writer);
+    writer.finish();
+
+    assertThat(count).isEqualTo(10_000);
+
+    @Cleanup
+    val index = IdIndex.open(file);
+    assertThat(index.getCount()).isEqualTo(10_000);
+    assertThat(index.getMaxId()).isEqualTo(10_000);
+    for (int i = 1; i <= 10_000; i++) {
+      assertThat(index.get(key(i))).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    val file = tmp.newFile("empty.idx");
+    @Cleanup
+    val writer = new IdIndexWriter(file);
+
+    assertThat(loader.load("test", stream(""), writer)).isEqualTo(0);
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testInvalidId() throws IOException {
+    val file = new File(tmp.getRoot(), "invalid.idx");
+    @Cleanup
+    val writer = new IdIndexWriter(file);
+
+    loader.load("test", stream("1\tDO1\tPRJ-1\nDO2\tPRJ-2\tICGC21\n"), writer);
+  }
+
+  private static ByteArrayInputStream stream(String export) {
+    return new ByteArrayInputStream(export.getBytes(UTF_8));
+  }
+
+  private static String key(int i) {
+    return "1\t" + (10_000 + i * 7) + "\t" + (10_000 + i * 7) + "\tA>T\tsingle base substitution\tGRCh37";
+  }
+
+}
@@ -0,0 +1,161 @@
+package org.icgc.dcc.id.client.util;
+
+import com.google.common.io.Files;
+import lombok.Cleanup;
+import lombok.val;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.icgc.dcc.id.client.util.IdIndex.NOT_FOUND;
+
+public class IdIndexTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testLookups() throws IOException {
+    val file = tmp.newFile("test.idx");
+
+    // Small runs to exercise the external merge
+    @Cleanup
+    val writer = new IdIndexWriter(file, 7);
+    for (int i = 999; i >= 0; i--) {
+      writer.add(key(i), i);
+    }
+    writer.add("1\tGRCh37\t\u00fc\u00f1\u00ed", 5_000_000_000L);
+    writer.finish();
+
+    @Cleanup
+    val index = IdIndex.open(file);
+    assertThat(index.getCount()).isEqualTo(1001);
+    for (int i = 0; i < 1000; i++) {
+      assertThat(index.get(key(i))).isEqualTo(i);
+    }
+    assertThat(index.get("1\tGRCh37\t\u00fc\u00f1\u00ed")).isEqualTo(5_000_000_000L);
+
+    assertThat(index.get("")).isEqualTo(NOT_FOUND);
+    assertThat(index.get("0")).isEqualTo(NOT_FOUND);
+    assertThat(index.get(key(1000))).isEqualTo(NOT_FOUND);
+    assertThat(index.get(key(5) + "x")).isEqualTo(NOT_FOUND);
+    assertThat(index.get("\uffff")).isEqualTo(NOT_FOUND);
+  }
+
+  @Test
+  public void testDuplicatesKeepFirst() throws IOException {
+    val file = tmp.newFile("duplicates.idx");
+
+    @Cleanup
+    val writer = new IdIndexWriter(file, 2);
+    writer.add("a", 1);
+    writer.add("b", 2);
+    writer.add("a", 3);
+    writer.add("a", 4);
+    writer.finish();
+
+    @Cleanup
+    val index = IdIndex.open(file);
+    assertThat(index.getCount()).isEqualTo(2);
+    assertThat(index.get("a")).isEqualTo(1);
+    assertThat(index.contains("b")).isTrue();
+  }
+
+  @Test
+  public void testMergeKeepsBase() throws IOException {
+    val baseFile = tmp.newFile("base.idx");
+    val baseWriter = new IdIndexWriter(baseFile);
+    baseWriter.add("a", 1);
+    baseWriter.add("c", 3);
+    baseWriter.finish();
+    baseWriter.close();
+
+    @Cleanup
+    val base = IdIndex.open(baseFile);
+    val file = tmp.newFile("merged.idx");
+
+    @Cleanup
+    val writer = new IdIndexWriter(file, base);
+    writer.add("a", 5);
+    writer.add("c", 3);
+    assertThat(writer.getAddedCount()).isEqualTo(0);
+
+    writer.add("b", 2);
+    assertThat(writer.getAddedCount()).isEqualTo(1);
+    writer.finish();
+
+    @Cleanup
+    val index = IdIndex.open(file);
+    assertThat(index.getCount()).isEqualTo(3);
+    assertThat(index.get("a")).isEqualTo(1);
+    assertThat(index.get("b")).isEqualTo(2);
+    assertThat(index.getMaxId()).isEqualTo(3);
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    val file = tmp.newFile("empty.idx");
+
+    @Cleanup
+    val writer = new IdIndexWriter(file);
+    writer.finish();
+
+    @Cleanup
+    val index = IdIndex.open(file);
+    assertThat(index.getCount()).isEqualTo(0);
+    assertThat(index.contains("a")).isFalse();
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidFile() throws IOException {
+    val file = tmp.newFile("invalid.idx");
+    Files.write(new byte[100], file);
+
+    IdIndex.open(file);
+  }
+
+  @Test
+  public void testConcurrentLookups() throws Exception {
+    val file = tmp.newFile("concurrent.idx");
+
+    @Cleanup
+    val writer = new IdIndexWriter(file);
+    for (int i = 0; i < 100_000; i++) {
+      writer.add(key(i), i);
+    }
+    writer.finish();
+
+    @Cleanup
+    val index = IdIndex.open(file);
+    val executor = Executors.newFixedThreadPool(8);
+    try {
+      val futures = IntStream.range(0, 8)
+          .mapToObj(seed -> executor.submit(() -> {
+            val random = new Random(seed);
+            for (int j = 0; j < 50_000; j++) {
+              val i = random.nextInt(100_000);
+              assertThat(index.get(key(i))).isEqualTo(i);
+            }
+          }))
+          .collect(toList());
+
+      for (val future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static String key(int i) {
+    return "1\t" + (10_000 + i * 7) + "\t" + (10_000 + i * 7) + "\tA>T\tsingle base substitution\tGRCh37";
+  }
+
+}
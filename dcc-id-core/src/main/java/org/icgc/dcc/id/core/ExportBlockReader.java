@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.core;
+
+import static org.icgc.dcc.id.core.ExportLineParser.lastIndexOf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.val;
+
+/**
+ * Reads an id export into blocks of whole lines for {@link ExportLineParser}.
+ * <p>
+ * Each block is a new array that the caller owns, so blocks can be handed to other threads. A line longer than the
+ * block size grows the block rather than being split.
+ */
+@RequiredArgsConstructor
+public class ExportBlockReader implements Closeable {
+
+  /**
+   * Constants.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 4 * 1024 * 1024;
+
+  /**
+   * Configuration.
+   */
+  @NonNull
+  private final InputStream in;
+  private final int blockSize;
+
+  /**
+   * State.
+   */
+  private byte[] buffer;
+  private int length;
+  private boolean eof;
+
+  public ExportBlockReader(InputStream in) {
+    this(in, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * @return the next block, or {@code null} at the end of the stream
+   */
+  public Block read() throws IOException {
+    if (buffer == null) {
+      if (eof) {
+        return null;
+      }
+
+      buffer = new byte[blockSize];
+    }
+
+    while (!eof) {
+      if (length == buffer.length) {
+        val end = lastIndexOf(buffer, 0, length, (byte) '\n') + 1;
+        if (end > 0) {
+          return cut(end);
+        }
+
+        // Line longer than a block
+        buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+      }
+
+      val n = in.read(buffer, length, buffer.length - length);
+      if (n == -1) {
+        eof = true;
+      } else {
+        length += n;
+      }
+    }
+
+    val block = length == 0 ? null : new Block(buffer, length);
+    buffer = null;
+    length = 0;
+
+    return block;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private Block cut(int end) {
+    val remaining = length - end;
+    val next = new byte[Math.max(blockSize, remaining)];
+    System.arraycopy(buffer, end, next, 0, remaining);
+
+    val block = new Block(buffer, end);
+    buffer = next;
+    length = remaining;
+
+    return block;
+  }
+
+  /**
+   * Whole lines of the export in {@code data[0, length)}.
+   */
+  @Value
+  public static class Block {
+
+    byte[] data;
+    int length;
+
+  }
+
+}
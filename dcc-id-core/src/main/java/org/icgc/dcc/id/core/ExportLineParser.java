@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Arrays;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * Reusable, allocation-free parser for the lines of an id export.
+ * <p>
+ * Export lines are {@code id TAB key... [TAB release]}. The key is everything between the id and the trailing release
+ * column, and lines without a tab (analysis ids) are keys without an id. The id is decoded directly from the bytes and
+ * the key is exposed as a slice of the block, so nothing is allocated per line unless {@link #copyKey()} or
+ * {@link #getKey()} is called.
+ * <p>
+ * Not thread-safe. Each thread should use its own instance, typically over blocks from an {@link ExportBlockReader}.
+ */
+public class ExportLineParser {
+
+  /**
+   * Value of {@link #getId()} for lines without an id.
+   */
+  public static final long NO_ID = 0L;
+
+  /**
+   * Block.
+   */
+  @Getter
+  private byte[] data = new byte[0];
+  private int position;
+  private int limit;
+
+  /**
+   * Current line.
+   */
+  @Getter
+  private long id;
+  @Getter
+  private int keyOffset;
+  @Getter
+  private int keyLength;
+
+  public ExportLineParser reset(@NonNull byte[] data, int offset, int length) {
+    this.data = data;
+    this.position = offset;
+    this.limit = offset + length;
+    this.id = NO_ID;
+    this.keyOffset = 0;
+    this.keyLength = 0;
+
+    return this;
+  }
+
+  /**
+   * Advances to the next non-empty line.
+   *
+   * @return {@code false} when the block is exhausted
+   * @throws NumberFormatException if the line's id is not a non-negative integer
+   */
+  public boolean next() {
+    while (position < limit) {
+      val lineStart = position;
+      int lineEnd = indexOf(data, lineStart, limit, (byte) '\n');
+      if (lineEnd < 0) {
+        lineEnd = limit;
+        position = limit;
+      } else {
+        position = lineEnd + 1;
+      }
+      if (lineEnd > lineStart && data[lineEnd - 1] == '\r') {
+        lineEnd--;
+      }
+      if (lineEnd == lineStart) {
+        continue;
+      }
+
+      val idTab = indexOf(data, lineStart, lineEnd, (byte) '\t');
+      if (idTab < 0) {
+        id = NO_ID;
+        keyOffset = lineStart;
+        keyLength = lineEnd - lineStart;
+      } else {
+        val releaseTab = lastIndexOf(data, idTab + 1, lineEnd, (byte) '\t');
+        id = parseId(data, lineStart, idTab);
+        keyOffset = idTab + 1;
+        keyLength = (releaseTab < 0 ? lineEnd : releaseTab) - keyOffset;
+      }
+
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * @return a copy of the current key's UTF-8 bytes
+   */
+  public byte[] copyKey() {
+    return Arrays.copyOfRange(data, keyOffset, keyOffset + keyLength);
+  }
+
+  /**
+   * @return the current key decoded as a string
+   */
+  public String getKey() {
+    return new String(data, keyOffset, keyLength, UTF_8);
+  }
+
+  private static long parseId(byte[] data, int start, int end) {
+    if (start == end) {
+      throw new NumberFormatException("Empty id");
+    }
+
+    long id = 0;
+    for (int i = start; i < end; i++) {
+      val digit = data[i] - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException("Invalid id: " + new String(data, start, end - start, UTF_8));
+      }
+
+      id = 10 * id + digit;
+    }
+
+    return id;
+  }
+
+  static int indexOf(byte[] data, int start, int end, byte value) {
+    for (int i = start; i < end; i++) {
+      if (data[i] == value) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  static int lastIndexOf(byte[] data, int start, int end, byte value) {
+    for (int i = end - 1; i >= start; i--) {
+      if (data[i] == value) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+}
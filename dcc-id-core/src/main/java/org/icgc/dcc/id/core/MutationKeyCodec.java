@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static lombok.AccessLevel.PRIVATE;
+
+import java.util.List;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * Encodes mutation keys as {@link PackedMutationKey}s.
+ * <p>
+ * Most mutations fit in 128 bits, laid out from the most significant bit of {@code high}:
+ * 
+ * <pre>
+ * chromosome      5  1-22, X, Y, MT (never 0)
+ * assemblyVersion 2  index into ASSEMBLY_VERSIONS
+ * mutationType    3  index into MUTATION_TYPES
+ * chromosomeStart 28
+ * chromosomeEnd   10 chromosomeEnd - chromosomeStart + 1
+ * mutation        10 reference and alternate allele lengths, 5 bits each ("-" is 0)
+ *                 70 alleles at 2 bits per base (A, C, G, T), up to 35 bases in total
+ * </pre>
+ * 
+ * Values outside of these vocabularies and ranges, or not in canonical form (e.g. a leading zero), fall back to the
+ * text of the key. Encoding is deterministic, so equal keys always take the same form.
+ */
+@NoArgsConstructor(access = PRIVATE)
+public final class MutationKeyCodec {
+
+  /**
+   * Vocabularies.
+   */
+  private static final List<String> CHROMOSOMES = ImmutableList.of("",
+      "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15", "16", "17", "18", "19", "20",
+      "21", "22", "X", "Y", "MT");
+  private static final List<String> ASSEMBLY_VERSIONS = ImmutableList.of("GRCh37", "GRCh38", "NCBI36");
+  private static final List<String> MUTATION_TYPES = ImmutableList.of(
+      "single base substitution",
+      "insertion of <=200bp",
+      "deletion of <=200bp",
+      "multiple base substitution (>=2bp and <=200bp)");
+  private static final String BASES = "ACGT";
+  private static final String NO_ALLELE = "-";
+
+  /**
+   * Field widths.
+   */
+  private static final int CHROMOSOME_BITS = 5;
+  private static final int ASSEMBLY_VERSION_BITS = 2;
+  private static final int MUTATION_TYPE_BITS = 3;
+  private static final int START_BITS = 28;
+  private static final int LENGTH_BITS = 10;
+  private static final int ALLELE_LENGTH_BITS = 5;
+  private static final int BASE_BITS = 2;
+  private static final int MAX_BASES = (128 - CHROMOSOME_BITS - ASSEMBLY_VERSION_BITS - MUTATION_TYPE_BITS - START_BITS
+      - LENGTH_BITS - 2 * ALLELE_LENGTH_BITS) / BASE_BITS;
+
+  private static final Joiner TAB_JOINER = Joiner.on('\t');
+  private static final Splitter TAB_SPLITTER = Splitter.on('\t');
+
+  public static PackedMutationKey encode(@NonNull MutationKey key) {
+    return encode(key.getChromosome(), key.getChromosomeStart(), key.getChromosomeEnd(), key.getMutation(),
+        key.getMutationType(), key.getAssemblyVersion());
+  }
+
+  public static PackedMutationKey encode(@NonNull String chromosome, @NonNull String chromosomeStart,
+      @NonNull String chromosomeEnd, @NonNull String mutation, @NonNull String mutationType,
+      @NonNull String assemblyVersion) {
+    val packed = pack(chromosome, chromosomeStart, chromosomeEnd, mutation, mutationType, assemblyVersion);
+    if (packed != null) {
+      return packed;
+    }
+
+    return new PackedMutationKey(0, 0,
+        TAB_JOINER.join(chromosome, chromosomeStart, chromosomeEnd, mutation, mutationType, assemblyVersion));
+  }
+
+  /**
+   * Encodes the TAB separated key columns of a mutation export line to {@link PackedMutationKey#toBytes()} form. The
+   * columns are in export (and table) order: {@code chromosome, chromosome_start, chromosome_end, mutation_type,
+   * mutation, assembly_version}, which differs from the argument order of {@link #encode(String, String, String,
+   * String, String, String)}.
+   */
+  public static byte[] encodeBytes(@NonNull byte[] data, int offset, int length) {
+    val values = TAB_SPLITTER.splitToList(new String(data, offset, length, UTF_8));
+    if (values.size() != 6) {
+      // Can't match an encoded key, but is kept distinct
+      val result = new byte[length + 1];
+      System.arraycopy(data, offset, result, 1, length);
+      return result;
+    }
+
+    return encode(values.get(0), values.get(1), values.get(2), values.get(4), values.get(3), values.get(5))
+        .toBytes();
+  }
+
+  public static MutationKey decode(@NonNull PackedMutationKey key) {
+    if (!key.isPacked()) {
+      val values = TAB_SPLITTER.splitToList(key.getText());
+      return new MutationKey(values.get(0), values.get(1), values.get(2), values.get(3), values.get(4), values.get(5));
+    }
+
+    val bits = new BitReader(key.getHigh(), key.getLow());
+    val chromosome = CHROMOSOMES.get(bits.read(CHROMOSOME_BITS));
+    val assemblyVersion = ASSEMBLY_VERSIONS.get(bits.read(ASSEMBLY_VERSION_BITS));
+    val mutationType = MUTATION_TYPES.get(bits.read(MUTATION_TYPE_BITS));
+    val start = bits.read(START_BITS);
+    val end = start + bits.read(LENGTH_BITS) - 1;
+    val referenceLength = bits.read(ALLELE_LENGTH_BITS);
+    val alternateLength = bits.read(ALLELE_LENGTH_BITS);
+    val mutation = readAllele(bits, referenceLength) + ">" + readAllele(bits, alternateLength);
+
+    return new MutationKey(chromosome, Long.toString(start), Long.toString(end), mutation, mutationType,
+        assemblyVersion);
+  }
+
+  private static PackedMutationKey pack(String chromosome, String chromosomeStart, String chromosomeEnd,
+      String mutation, String mutationType, String assemblyVersion) {
+    val chromosomeCode = CHROMOSOMES.indexOf(chromosome);
+    val assemblyVersionCode = ASSEMBLY_VERSIONS.indexOf(assemblyVersion);
+    val mutationTypeCode = MUTATION_TYPES.indexOf(mutationType);
+    if (chromosomeCode < 1 || assemblyVersionCode < 0 || mutationTypeCode < 0) {
+      return null;
+    }
+
+    val start = parsePosition(chromosomeStart);
+    val end = parsePosition(chromosomeEnd);
+    if (start < 0 || start >= 1L << START_BITS || end < 0) {
+      return null;
+    }
+    val length = end - start + 1;
+    if (length < 0 || length >= 1L << LENGTH_BITS) {
+      return null;
+    }
+
+    val separator = mutation.indexOf('>');
+    if (separator < 0) {
+      return null;
+    }
+    val reference = mutation.substring(0, separator);
+    val alternate = mutation.substring(separator + 1);
+    if (!isAllele(reference) || !isAllele(alternate)) {
+      return null;
+    }
+    val referenceLength = getAlleleLength(reference);
+    val alternateLength = getAlleleLength(alternate);
+    if (referenceLength >= 1 << ALLELE_LENGTH_BITS || alternateLength >= 1 << ALLELE_LENGTH_BITS
+        || referenceLength + alternateLength > MAX_BASES) {
+      return null;
+    }
+
+    val bits = new BitWriter();
+    bits.write(chromosomeCode, CHROMOSOME_BITS);
+    bits.write(assemblyVersionCode, ASSEMBLY_VERSION_BITS);
+    bits.write(mutationTypeCode, MUTATION_TYPE_BITS);
+    bits.write(start, START_BITS);
+    bits.write(length, LENGTH_BITS);
+    bits.write(referenceLength, ALLELE_LENGTH_BITS);
+    bits.write(alternateLength, ALLELE_LENGTH_BITS);
+    writeAllele(bits, reference, referenceLength);
+    writeAllele(bits, alternate, alternateLength);
+
+    return new PackedMutationKey(bits.high, bits.low, null);
+  }
+
+  /**
+   * @return the position, or {@code -1} if not a canonical non-negative integer of at most 9 digits
+   */
+  private static long parsePosition(String text) {
+    val length = text.length();
+    if (length == 0 || length > 9 || (length > 1 && text.charAt(0) == '0')) {
+      return -1;
+    }
+
+    long value = 0;
+    for (int i = 0; i < length; i++) {
+      val digit = text.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+
+      value = 10 * value + digit;
+    }
+
+    return value;
+  }
+
+  private static boolean isAllele(String allele) {
+    if (allele.equals(NO_ALLELE)) {
+      return true;
+    }
+    if (allele.isEmpty()) {
+      return false;
+    }
+
+    for (int i = 0; i < allele.length(); i++) {
+      if (BASES.indexOf(allele.charAt(i)) < 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static int getAlleleLength(String allele) {
+    return allele.equals(NO_ALLELE) ? 0 : allele.length();
+  }
+
+  private static void writeAllele(BitWriter bits, String allele, int length) {
+    for (int i = 0; i < length; i++) {
+      bits.write(BASES.indexOf(allele.charAt(i)), BASE_BITS);
+    }
+  }
+
+  private static String readAllele(BitReader bits, int length) {
+    if (length == 0) {
+      return NO_ALLELE;
+    }
+
+    val allele = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      allele.append(BASES.charAt((int) bits.read(BASE_BITS)));
+    }
+
+    return allele.toString();
+  }
+
+  /**
+   * Writes fields into 128 bits, most significant first.
+   */
+  private static class BitWriter {
+
+    long high;
+    long low;
+    int position;
+
+    void write(long value, int width) {
+      checkArgument(position + width <= 128, "Key overflow");
+      if (position + width <= Long.SIZE) {
+        high |= value << (Long.SIZE - position - width);
+      } else if (position >= Long.SIZE) {
+        low |= value << (2 * Long.SIZE - position - width);
+      } else {
+        val lowWidth = position + width - Long.SIZE;
+        high |= value >>> lowWidth;
+        low |= value << (Long.SIZE - lowWidth);
+      }
+
+      position += width;
+    }
+
+  }
+
+  /**
+   * Reads fields written by a {@link BitWriter}.
+   */
+  private static class BitReader {
+
+    final long high;
+    final long low;
+    int position;
+
+    BitReader(long high, long low) {
+      this.high = high;
+      this.low = low;
+    }
+
+    int read(int width) {
+      val mask = (1L << width) - 1;
+      long value;
+      if (position + width <= Long.SIZE) {
+        value = high >>> (Long.SIZE - position - width);
+      } else if (position >= Long.SIZE) {
+        value = low >>> (2 * Long.SIZE - position - width);
+      } else {
+        val lowWidth = position + width - Long.SIZE;
+        value = (high << lowWidth) | (low >>> (Long.SIZE - lowWidth));
+      }
+
+      position += width;
+      return (int) (value & mask);
+    }
+
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static lombok.AccessLevel.PACKAGE;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.val;
+
+/**
+ * Compact, comparable form of a mutation's business key, as produced by {@link MutationKeyCodec}.
+ * <p>
+ * Keys made of common values are packed into {@code high} and {@code low}. Others keep their TAB separated
+ * {@code text}. Either way, two keys are equal if and only if the mutations they were encoded from are.
+ */
+@Value
+@AllArgsConstructor(access = PACKAGE)
+public class PackedMutationKey implements Serializable {
+
+  long high;
+  long low;
+
+  /**
+   * The TAB joined key, or {@code null} when packed.
+   */
+  String text;
+
+  public boolean isPacked() {
+    return text == null;
+  }
+
+  /**
+   * Binary form for byte keyed stores. Packed keys are their 16 bytes, which never start with {@code 0}. Other keys
+   * are their UTF-8 text after a {@code 0} byte.
+   */
+  public byte[] toBytes() {
+    if (isPacked()) {
+      return ByteBuffer.allocate(2 * Long.BYTES).putLong(high).putLong(low).array();
+    }
+
+    val bytes = text.getBytes(UTF_8);
+    val result = new byte[bytes.length + 1];
+    System.arraycopy(bytes, 0, result, 1, bytes.length);
+
+    return result;
+  }
+
+}
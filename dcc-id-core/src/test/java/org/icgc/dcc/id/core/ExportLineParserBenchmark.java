@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import lombok.val;
+
+/**
+ * Compares {@link ExportLineParser} with the {@code String} based parsing it replaced, over a synthetic mutation export.
+ * <p>
+ * For development only. Run {@link #main(String...)} from the IDE, adding a {@code GCProfiler} to the options to
+ * compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ExportLineParserBenchmark {
+
+  private static final int LINE_COUNT = 1_000_000;
+
+  private byte[] export;
+
+  @Setup
+  public void setUp() {
+    val random = new Random(1);
+    val text = new StringBuilder();
+    for (int i = 1; i <= LINE_COUNT; i++) {
+      val start = random.nextInt(250_000_000);
+      text.append(i).append('\t')
+          .append(1 + random.nextInt(22)).append('\t')
+          .append(start).append('\t')
+          .append(start).append('\t')
+          .append("single base substitution").append('\t')
+          .append("A>T").append('\t')
+          .append("GRCh37").append('\t')
+          .append("ICGC").append(random.nextInt(25)).append('\n');
+    }
+
+    export = text.toString().getBytes(UTF_8);
+  }
+
+  @Benchmark
+  public void parseStrings(Blackhole blackhole) throws IOException {
+    val reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(export), UTF_8));
+
+    String line;
+    while ((line = reader.readLine()) != null) {
+      blackhole.consume(parseId(line));
+      blackhole.consume(parseKey(line));
+    }
+  }
+
+  @Benchmark
+  public void parseBytes(Blackhole blackhole) throws IOException {
+    val reader = new ExportBlockReader(new ByteArrayInputStream(export));
+    val parser = new ExportLineParser();
+
+    ExportBlockReader.Block block;
+    while ((block = reader.read()) != null) {
+      parser.reset(block.getData(), 0, block.getLength());
+      while (parser.next()) {
+        blackhole.consume(parser.getId());
+        blackhole.consume(parser.getKeyLength());
+      }
+    }
+  }
+
+  @Benchmark
+  public void parseBytesCopyingKeys(Blackhole blackhole) throws IOException {
+    val reader = new ExportBlockReader(new ByteArrayInputStream(export));
+    val parser = new ExportLineParser();
+
+    ExportBlockReader.Block block;
+    while ((block = reader.read()) != null) {
+      parser.reset(block.getData(), 0, block.getLength());
+      while (parser.next()) {
+        blackhole.consume(parser.getId());
+        blackhole.consume(parser.copyKey());
+      }
+    }
+  }
+
+  public static void main(String... args) throws Exception {
+    new Runner(new OptionsBuilder().include(ExportLineParserBenchmark.class.getSimpleName()).build()).run();
+  }
+
+  /**
+   * The previous {@code ExportIdCache} parsing.
+   */
+  private static long parseId(String line) {
+    val idTab = line.indexOf('\t');
+    return idTab < 0 ? 0 : Long.parseLong(line.substring(0, idTab));
+  }
+
+  private static String parseKey(String line) {
+    val idTab = line.indexOf('\t');
+    if (idTab < 0) return line;
+
+    val releaseTab = line.lastIndexOf('\t');
+    return releaseTab > idTab ? line.substring(idTab + 1, releaseTab) : line.substring(idTab + 1);
+  }
+
+}
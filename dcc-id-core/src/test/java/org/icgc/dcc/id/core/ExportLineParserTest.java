@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+import lombok.val;
+
+public class ExportLineParserTest {
+
+  @Test
+  public void testLineFormats() {
+    val export = bytes(""
+        + "1\tDO1\tPRJ-1\tICGC21\n"
+        + "2\tDO2\tPRJ-2\r\n"
+        + "\n"
+        + "3\tPRJ-3\n"
+        + "EGAZ00001\n"
+        + "5000000000\tDO\u00fc\tPRJ-1\tICGC22");
+
+    val parser = new ExportLineParser().reset(export, 0, export.length);
+    assertLine(parser, 1, "DO1\tPRJ-1");
+    assertLine(parser, 2, "DO2");
+    assertLine(parser, 3, "PRJ-3");
+    assertLine(parser, ExportLineParser.NO_ID, "EGAZ00001");
+    assertLine(parser, 5_000_000_000L, "DO\u00fc\tPRJ-1");
+    assertThat(parser.next()).isFalse();
+  }
+
+  @Test
+  public void testKeySlice() {
+    val export = bytes("xx1\tDO1\tPRJ-1\tICGC21\nyy");
+
+    val parser = new ExportLineParser().reset(export, 2, export.length - 4);
+    assertThat(parser.next()).isTrue();
+    assertThat(parser.getData()).isSameAs(export);
+    assertThat(parser.getKeyOffset()).isEqualTo(4);
+    assertThat(parser.getKeyLength()).isEqualTo(9);
+    assertThat(parser.copyKey()).isEqualTo(bytes("DO1\tPRJ-1"));
+    assertThat(parser.next()).isFalse();
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testInvalidId() {
+    val export = bytes("DO1\tPRJ-1\tICGC21\n");
+
+    new ExportLineParser().reset(export, 0, export.length).next();
+  }
+
+  @Test
+  public void testBlocks() throws IOException {
+    val longKey = Strings.repeat("x", 500);
+    val export = new StringBuilder();
+    for (int i = 1; i <= 1000; i++) {
+      export.append(i).append('\t').append(i % 100 == 0 ? longKey : "DO" + i).append("\tICGC21\n");
+    }
+    export.append("1001\tDO1001");
+
+    // Small blocks so that lines straddle block boundaries
+    val reader = new ExportBlockReader(new ByteArrayInputStream(bytes(export.toString())), 64);
+    val parser = new ExportLineParser();
+    List<String> keys = new ArrayList<>();
+    ExportBlockReader.Block block;
+    while ((block = reader.read()) != null) {
+      parser.reset(block.getData(), 0, block.getLength());
+      while (parser.next()) {
+        assertThat(parser.getId()).isEqualTo(keys.size() + 1);
+        keys.add(parser.getKey());
+      }
+    }
+
+    assertThat(keys).hasSize(1001);
+    assertThat(keys.get(99)).isEqualTo(longKey);
+    assertThat(keys.get(1000)).isEqualTo("DO1001");
+    assertThat(reader.read()).isNull();
+  }
+
+  private static void assertLine(ExportLineParser parser, long id, String key) {
+    assertThat(parser.next()).isTrue();
+    assertThat(parser.getId()).isEqualTo(id);
+    assertThat(parser.getKey()).isEqualTo(key);
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(UTF_8);
+  }
+
+}
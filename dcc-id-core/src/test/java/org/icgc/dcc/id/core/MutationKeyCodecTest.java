@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import lombok.val;
+
+public class MutationKeyCodecTest {
+
+  @Test
+  public void testPacked() {
+    assertRoundTrip(new MutationKey("1", "10000", "10000", "A>T", "single base substitution", "GRCh37"), true);
+    assertRoundTrip(new MutationKey("X", "248956422", "248956423", "AC>GT",
+        "multiple base substitution (>=2bp and <=200bp)", "GRCh37"), true);
+    assertRoundTrip(new MutationKey("MT", "0", "0", "->ACGTACGTACGTACGTACGTACGTACGTACG", "insertion of <=200bp",
+        "GRCh38"), true);
+    assertRoundTrip(new MutationKey("22", "5", "4", "->A", "insertion of <=200bp", "GRCh37"), true);
+    assertRoundTrip(new MutationKey("Y", "100", "102", "TTT>-", "deletion of <=200bp", "GRCh37"), true);
+  }
+
+  @Test
+  public void testFallback() {
+    assertRoundTrip(new MutationKey("x", "1", "2", "a_b", "ssm", "1"), false);
+    assertRoundTrip(new MutationKey("1", "01", "1", "A>T", "single base substitution", "GRCh37"), false);
+    assertRoundTrip(new MutationKey("1", "1000000000", "1000000000", "A>T", "single base substitution", "GRCh37"),
+        false);
+    assertRoundTrip(new MutationKey("1", "100", "98", "A>T", "single base substitution", "GRCh37"), false);
+    assertRoundTrip(new MutationKey("1", "100", "2000", "A>T", "deletion of <=200bp", "GRCh37"), false);
+    assertRoundTrip(new MutationKey("1", "100", "100", "N>T", "single base substitution", "GRCh37"), false);
+    assertRoundTrip(new MutationKey("1", "100", "100", ">T", "single base substitution", "GRCh37"), false);
+    assertRoundTrip(new MutationKey("1", "100", "100", "A>T>C", "single base substitution", "GRCh37"), false);
+    assertRoundTrip(new MutationKey("1", "100", "100", "A>T", "single base substitution", "GRCh39"), false);
+    assertRoundTrip(new MutationKey("1", "100", "100", "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA>T",
+        "multiple base substitution (>=2bp and <=200bp)", "GRCh37"), false);
+  }
+
+  @Test
+  public void testDistinct() {
+    val random = new Random(1);
+    val bases = "ACGT-";
+    for (int i = 0; i < 100_000; i++) {
+      val a = randomKey(random, bases);
+      val b = randomKey(random, bases);
+
+      val encodedA = MutationKeyCodec.encode(a);
+      val encodedB = MutationKeyCodec.encode(b);
+      assertThat(encodedA.equals(encodedB)).isEqualTo(a.equals(b));
+      assertThat(MutationKeyCodec.decode(encodedA)).isEqualTo(a);
+    }
+  }
+
+  @Test
+  public void testEncodeBytes() {
+    // Lines as served by /mutation/export: id, chromosome, chromosome_start, chromosome_end, mutation_type, mutation,
+    // assembly_version, creation_release
+    val key = new MutationKey("1", "10000", "10000", "A>T", "single base substitution", "GRCh37");
+    assertThat(encodeExportLine("483749\t1\t10000\t10000\tsingle base substitution\tA>T\tGRCh37\tICGC19"))
+        .isEqualTo(MutationKeyCodec.encode(key).toBytes());
+    assertThat(MutationKeyCodec.encode(key).toBytes()).hasSize(16);
+    assertThat(MutationKeyCodec.encode(key).toBytes()[0]).isNotEqualTo((byte) 0);
+
+    val deletion = new MutationKey("Y", "100", "102", "TTT>-", "deletion of <=200bp", "GRCh37");
+    assertThat(encodeExportLine("2\tY\t100\t102\tdeletion of <=200bp\tTTT>-\tGRCh37\tICGC20"))
+        .isEqualTo(MutationKeyCodec.encode(deletion).toBytes());
+
+    // Keys that don't pack match the text form of the lookup key
+    val fallback = new MutationKey("x", "1", "2", "a_b", "ssm", "1");
+    assertThat(MutationKeyCodec.encode(fallback).toBytes()[0]).isEqualTo((byte) 0);
+    assertThat(encodeExportLine("3\tx\t1\t2\tssm\ta_b\t1\tICGC19"))
+        .isEqualTo(MutationKeyCodec.encode(fallback).toBytes());
+
+    // Lines without six key columns are kept distinct
+    val line = "1\t10000".getBytes(UTF_8);
+    assertThat(MutationKeyCodec.encodeBytes(line, 2, 5)).isEqualTo(new byte[] { 0, '1', '0', '0', '0', '0' });
+  }
+
+  private static byte[] encodeExportLine(String line) {
+    val data = line.getBytes(UTF_8);
+    val parser = new ExportLineParser().reset(data, 0, data.length);
+    assertThat(parser.next()).isTrue();
+
+    return MutationKeyCodec.encodeBytes(parser.getData(), parser.getKeyOffset(), parser.getKeyLength());
+  }
+
+  private static void assertRoundTrip(MutationKey key, boolean packed) {
+    val encoded = MutationKeyCodec.encode(key);
+    assertThat(encoded.isPacked()).as("%s", key).isEqualTo(packed);
+    assertThat(MutationKeyCodec.decode(encoded)).isEqualTo(key);
+    assertThat(MutationKeyCodec.encode(key)).isEqualTo(encoded);
+  }
+
+  private static MutationKey randomKey(Random random, String bases) {
+    val start = random.nextInt(20);
+    return new MutationKey(
+        random.nextBoolean() ? "1" : "X",
+        Integer.toString(start),
+        Integer.toString(start + random.nextInt(3) - 1),
+        randomAllele(random, bases) + ">" + randomAllele(random, bases),
+        random.nextBoolean() ? "single base substitution" : "deletion of <=200bp",
+        random.nextBoolean() ? "GRCh37" : "GRCh38");
+  }
+
+  private static String randomAllele(Random random, String bases) {
+    val allele = new StringBuilder();
+    val length = 1 + random.nextInt(2);
+    for (int i = 0; i < length; i++) {
+      allele.append(bases.charAt(random.nextInt(bases.length())));
+    }
+
+    return allele.toString();
+  }
+
+}
@@ -0,0 +1,474 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+import org.icgc.dcc.id.core.PackedMutationKey;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Fixed size id cache stored outside of the Java heap.
+ * <p>
+ * Entries are a 128 bit fingerprint of the cache key plus the numeric part of the id, 24 bytes each, held in direct
+ * buffers organized as 4-way set associative buckets. When a bucket is full, a resident entry is replaced. Since only
+ * the fingerprint of a key is stored, distinct keys could in theory collide, but at 2<sup>-128</sup> per pair this is
+ * far less likely than a hardware fault.
+ * <p>
+ * Only ids of the form {@code <prefix><number>} are cached, which is every id produced by the repositories.
+ */
+@Slf4j
+public class OffHeapIdCache implements Cache, OffHeapIdCacheMBean {
+
+  /**
+   * Layout constants.
+   */
+  private static final int ENTRY_BYTES = 3 * Long.BYTES; // Key high, key low, value
+  private static final int BUCKET_ENTRIES = 4;
+  private static final int BUCKET_BYTES = BUCKET_ENTRIES * ENTRY_BYTES;
+  private static final int SEGMENTS = 64;
+  private static final long ABSENT = -1L;
+  private static final int CHUNK_BYTES = 1024 * BUCKET_BYTES;
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  /**
+   * Configuration.
+   */
+  @Getter
+  private final String name;
+  private final String prefix;
+
+  /**
+   * State.
+   */
+  private final Segment[] segments;
+  private final int bucketsPerSegment;
+
+  /**
+   * Statistics.
+   */
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder puts = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder objects = new LongAdder();
+
+  public OffHeapIdCache(@NonNull String name, @NonNull String prefix, long maxBytes) {
+    checkArgument(maxBytes >= SEGMENTS * BUCKET_BYTES, "Cache '%s' must be at least %s bytes", name,
+        SEGMENTS * BUCKET_BYTES);
+    this.name = name;
+    this.prefix = prefix;
+    this.bucketsPerSegment = (int) Math.min(maxBytes / SEGMENTS / BUCKET_BYTES, Integer.MAX_VALUE / BUCKET_BYTES);
+    this.segments = new Segment[SEGMENTS];
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment(ByteBuffer.allocateDirect(bucketsPerSegment * BUCKET_BYTES));
+    }
+
+    log.info("Allocated {} bytes off-heap for cache '{}' with a capacity of {} entries", getOffHeapBytes(), name,
+        getCapacity());
+  }
+
+  @Override
+  public Object getNativeCache() {
+    return this;
+  }
+
+  @Override
+  public ValueWrapper get(Object key) {
+    val value = lookup(key);
+    return value == null ? null : new SimpleValueWrapper(value);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T get(Object key, Class<T> type) {
+    val value = lookup(key);
+    if (value != null && type != null && !type.isInstance(value)) {
+      throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+    }
+
+    return (T) value;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T get(Object key, Callable<T> valueLoader) {
+    val value = lookup(key);
+    if (value != null) {
+      return (T) value;
+    }
+
+    T loaded;
+    try {
+      loaded = valueLoader.call();
+    } catch (Exception e) {
+      throw new ValueRetrievalException(key, valueLoader, e);
+    }
+
+    put(key, loaded);
+    return loaded;
+  }
+
+  @Override
+  public void put(Object key, Object value) {
+    store(key, value, false);
+  }
+
+  @Override
+  public ValueWrapper putIfAbsent(Object key, Object value) {
+    val existing = store(key, value, true);
+    return existing == ABSENT ? null : new SimpleValueWrapper(formatValue(existing));
+  }
+
+  @Override
+  public void evict(Object key) {
+    val hash = hash(key);
+    val hi = hash[0];
+    val lo = hash[1];
+    val segment = getSegment(lo);
+    val bucket = getBucketOffset(hi, lo);
+
+    val stamp = segment.lock.writeLock();
+    try {
+      val offset = segment.find(bucket, hi, lo);
+      if (offset >= 0) {
+        segment.buffer.putLong(offset, 0L);
+        segment.buffer.putLong(offset + Long.BYTES, 0L);
+        objects.decrement();
+      }
+    } finally {
+      segment.lock.unlockWrite(stamp);
+    }
+  }
+
+  @Override
+  public void clear() {
+    for (val segment : segments) {
+      val stamp = segment.lock.writeLock();
+      try {
+        for (int offset = 0; offset < segment.buffer.capacity(); offset += Long.BYTES) {
+          segment.buffer.putLong(offset, 0L);
+        }
+      } finally {
+        segment.lock.unlockWrite(stamp);
+      }
+    }
+
+    objects.reset();
+  }
+
+  @Override
+  public long getCacheHits() {
+    return hits.sum();
+  }
+
+  @Override
+  public long getCacheMisses() {
+    return misses.sum();
+  }
+
+  @Override
+  public double getCacheHitPercentage() {
+    val hitCount = getCacheHits();
+    val total = hitCount + getCacheMisses();
+    return total == 0 ? 0 : 100.0 * hitCount / total;
+  }
+
+  @Override
+  public long getPutCount() {
+    return puts.sum();
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  @Override
+  public long getObjectCount() {
+    return objects.sum();
+  }
+
+  @Override
+  public long getCapacity() {
+    return (long) SEGMENTS * bucketsPerSegment * BUCKET_ENTRIES;
+  }
+
+  @Override
+  public long getOffHeapBytes() {
+    return (long) SEGMENTS * bucketsPerSegment * BUCKET_BYTES;
+  }
+
+  @Override
+  public void clearStatistics() {
+    hits.reset();
+    misses.reset();
+    puts.reset();
+    evictions.reset();
+  }
+
+  /**
+   * Writes the entries to {@code out}, for {@link #load} to restore them after a restart.
+   */
+  public void save(@NonNull DataOutputStream out) throws IOException {
+    out.writeInt(SEGMENTS);
+    out.writeInt(bucketsPerSegment);
+
+    val chunk = new byte[CHUNK_BYTES];
+    for (val segment : segments) {
+      val stamp = segment.lock.readLock();
+      try {
+        val buffer = segment.buffer.duplicate();
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+          val length = Math.min(chunk.length, buffer.remaining());
+          buffer.get(chunk, 0, length);
+          out.write(chunk, 0, length);
+        }
+      } finally {
+        segment.lock.unlockRead(stamp);
+      }
+    }
+  }
+
+  /**
+   * Replaces the entries with those written by {@link #save}.
+   * 
+   * @return {@code false} if the entries were saved by a cache of a different size, in which case nothing is loaded
+   */
+  public boolean load(@NonNull DataInputStream in) throws IOException {
+    if (in.readInt() != SEGMENTS || in.readInt() != bucketsPerSegment) {
+      return false;
+    }
+
+    val chunk = new byte[CHUNK_BYTES];
+    long count = 0;
+    for (val segment : segments) {
+      val stamp = segment.lock.writeLock();
+      try {
+        val buffer = segment.buffer.duplicate();
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+          val length = Math.min(chunk.length, buffer.remaining());
+          in.readFully(chunk, 0, length);
+          buffer.put(chunk, 0, length);
+        }
+
+        for (int offset = 0; offset < segment.buffer.capacity(); offset += ENTRY_BYTES) {
+          if (segment.buffer.getLong(offset) != 0L) {
+            count++;
+          }
+        }
+      } finally {
+        segment.lock.unlockWrite(stamp);
+      }
+    }
+
+    objects.reset();
+    objects.add(count);
+    return true;
+  }
+
+  private String lookup(Object key) {
+    val hash = hash(key);
+    val hi = hash[0];
+    val lo = hash[1];
+    val segment = getSegment(lo);
+    val bucket = getBucketOffset(hi, lo);
+
+    // Readers only retry under the lock if a writer raced them
+    long stamp = segment.lock.tryOptimisticRead();
+    long value = segment.get(bucket, hi, lo);
+    if (!segment.lock.validate(stamp)) {
+      stamp = segment.lock.readLock();
+      try {
+        value = segment.get(bucket, hi, lo);
+      } finally {
+        segment.lock.unlockRead(stamp);
+      }
+    }
+
+    if (value == ABSENT) {
+      misses.increment();
+      return null;
+    }
+
+    hits.increment();
+    return formatValue(value);
+  }
+
+  private long store(Object key, Object value, boolean onlyIfAbsent) {
+    val number = parseValue(value);
+    if (number == ABSENT) {
+      // Not representable, so simply don't cache
+      return ABSENT;
+    }
+
+    val hash = hash(key);
+    val hi = hash[0];
+    val lo = hash[1];
+    val segment = getSegment(lo);
+    val bucket = getBucketOffset(hi, lo);
+
+    val stamp = segment.lock.writeLock();
+    try {
+      int offset = segment.find(bucket, hi, lo);
+      if (offset >= 0) {
+        val existing = segment.buffer.getLong(offset + 2 * Long.BYTES);
+        if (onlyIfAbsent) {
+          return existing;
+        }
+      } else {
+        offset = segment.findEmpty(bucket);
+        if (offset >= 0) {
+          objects.increment();
+        } else {
+          // Replace a resident entry, chosen by the otherwise unused high bits of the key
+          offset = bucket + (int) (hi >>> 62) * ENTRY_BYTES;
+          evictions.increment();
+        }
+
+        segment.buffer.putLong(offset, hi);
+        segment.buffer.putLong(offset + Long.BYTES, lo);
+      }
+
+      segment.buffer.putLong(offset + 2 * Long.BYTES, number);
+      puts.increment();
+    } finally {
+      segment.lock.unlockWrite(stamp);
+    }
+
+    return ABSENT;
+  }
+
+  private Segment getSegment(long lo) {
+    return segments[(int) (lo & (SEGMENTS - 1))];
+  }
+
+  private int getBucketOffset(long hi, long lo) {
+    return Math.floorMod((int) (lo >>> 32) ^ (int) hi, bucketsPerSegment) * BUCKET_BYTES;
+  }
+
+  private String formatValue(long value) {
+    return prefix + value;
+  }
+
+  private long parseValue(Object value) {
+    if (!(value instanceof String)) {
+      return ABSENT;
+    }
+
+    val text = (String) value;
+    if (!text.startsWith(prefix) || text.length() == prefix.length()) {
+      return ABSENT;
+    }
+
+    try {
+      val number = Long.parseLong(text.substring(prefix.length()));
+      return number < 0 ? ABSENT : number;
+    } catch (NumberFormatException e) {
+      return ABSENT;
+    }
+  }
+
+  /**
+   * Computes the 128 bit fingerprint of {@code key}. The high word is never zero, which marks an empty entry.
+   */
+  private static long[] hash(Object key) {
+    val hasher = HASH_FUNCTION.newHasher();
+    if (key instanceof PackedMutationKey) {
+      val mutationKey = (PackedMutationKey) key;
+      if (mutationKey.isPacked()) {
+        hasher.putLong(mutationKey.getHigh()).putLong(mutationKey.getLow());
+      } else {
+        hasher.putUnencodedChars(mutationKey.getText());
+      }
+    } else if (key instanceof List) {
+      // Multi-part keys as produced by SpEL list expressions
+      for (val part : (List<?>) key) {
+        hasher.putUnencodedChars(String.valueOf(part)).putChar('\t');
+      }
+    } else {
+      hasher.putUnencodedChars(String.valueOf(key));
+    }
+
+    val bytes = ByteBuffer.wrap(hasher.hash().asBytes());
+    return new long[] { bytes.getLong() | 1L, bytes.getLong() };
+  }
+
+  /**
+   * Independently locked portion of the cache.
+   */
+  private static class Segment {
+
+    private final ByteBuffer buffer;
+    private final StampedLock lock = new StampedLock();
+
+    Segment(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    long get(int bucket, long hi, long lo) {
+      val offset = find(bucket, hi, lo);
+      return offset < 0 ? ABSENT : buffer.getLong(offset + 2 * Long.BYTES);
+    }
+
+    int find(int bucket, long hi, long lo) {
+      for (int i = 0; i < BUCKET_ENTRIES; i++) {
+        val offset = bucket + i * ENTRY_BYTES;
+        if (buffer.getLong(offset) == hi && buffer.getLong(offset + Long.BYTES) == lo) {
+          return offset;
+        }
+      }
+
+      return -1;
+    }
+
+    int findEmpty(int bucket) {
+      for (int i = 0; i < BUCKET_ENTRIES; i++) {
+        val offset = bucket + i * ENTRY_BYTES;
+        if (buffer.getLong(offset) == 0L) {
+          return offset;
+        }
+      }
+
+      return -1;
+    }
+
+  }
+
+}
@@ -22,6 +22,7 @@ import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.config.DiskStoreConfiguration;
 import net.sf.ehcache.config.PersistenceConfiguration;
 import net.sf.ehcache.management.ManagementService;
+import org.icgc.dcc.id.server.cache.OffHeapIdCache;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CachingConfigurerSupport;
@@ -29,15 +30,23 @@ import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.ehcache.EhCacheCacheManager;
 import org.springframework.cache.interceptor.KeyGenerator;
 import org.springframework.cache.interceptor.SimpleKeyGenerator;
+import org.springframework.cache.support.CompositeCacheManager;
+import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.jmx.export.MBeanExporter;
 import org.springframework.jmx.support.MBeanServerFactoryBean;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
 import javax.management.MBeanServer;
 
+import static com.google.common.base.Preconditions.checkState;
 import static java.util.concurrent.TimeUnit.MINUTES;
 import static net.sf.ehcache.config.PersistenceConfiguration.Strategy.NONE;
+import static org.icgc.dcc.id.core.Prefixes.MUTATION_ID_PREFIX;
 
 /**
  * Server wide caching configuration.
@@ -51,6 +60,8 @@ public class CacheConfig extends CachingConfigurerSupport {
   private String cacheDir;
   @Value("${cache.size.mutation}")
   private String mutationSize;
+  @Value("${cache.offHeap.mutation:true}")
+  private boolean mutationOffHeap;
   @Value("${cache.size.donor}")
   private String donorSize;
   @Value("${cache.size.file}")
@@ -60,6 +71,8 @@ public class CacheConfig extends CachingConfigurerSupport {
   @Value("${cache.size.specimen}")
   private String specimenSize;
 
+  private OffHeapIdCache mutationIdCache;
+
   @Bean(destroyMethod = "shutdown")
   public net.sf.ehcache.CacheManager ehCacheManager() {
     val tokens = new CacheConfiguration();
@@ -73,7 +86,6 @@ public class CacheConfig extends CachingConfigurerSupport {
     val specimenIds = createMemoryCache("specimenIds", getCacheSize(specimenSize));
     val sampleIds = createMemoryCache("sampleIds", getCacheSize(sampleSize));
     val fileIds = createMemoryCache("fileIds", getCacheSize(fileSize));
-    val mutationIds = createMemoryCache("mutationIds", getCacheSize(mutationSize));
 
     val config = new net.sf.ehcache.config.Configuration();
     config.addCache(tokens);
@@ -82,7 +94,10 @@ public class CacheConfig extends CachingConfigurerSupport {
     config.addCache(specimenIds);
     config.addCache(sampleIds);
     config.addCache(fileIds);
-    config.addCache(mutationIds);
+    if (!mutationOffHeap) {
+      config.addCache(createMemoryCache("mutationIds", getCacheSize(mutationSize)));
+    }
+    checkHeapSize(config);
     config.addDiskStore(new DiskStoreConfiguration().path(cacheDir));
 
     return net.sf.ehcache.CacheManager.newInstance(config);
@@ -91,7 +106,26 @@ public class CacheConfig extends CachingConfigurerSupport {
   @Bean
   @Override
   public CacheManager cacheManager() {
-    return new EhCacheCacheManager(ehCacheManager());
+    val ehCacheCacheManager = new EhCacheCacheManager(ehCacheManager());
+    if (!mutationOffHeap) {
+      return ehCacheCacheManager;
+    }
+
+    // Off-heap caches take precedence over their Ehcache counterparts
+    val offHeapCacheManager = new SimpleCacheManager();
+    offHeapCacheManager.setCaches(ImmutableList.of(mutationIdCache()));
+    offHeapCacheManager.afterPropertiesSet();
+
+    return new CompositeCacheManager(offHeapCacheManager, ehCacheCacheManager);
+  }
+
+  private synchronized OffHeapIdCache mutationIdCache() {
+    // Not a bean so that it is only allocated and exported when enabled
+    if (mutationIdCache == null) {
+      mutationIdCache = new OffHeapIdCache("mutationIds", MUTATION_ID_PREFIX, getCacheSize(mutationSize));
+    }
+
+    return mutationIdCache;
   }
 
   @Bean
@@ -106,6 +140,19 @@ public class CacheConfig extends CachingConfigurerSupport {
     return new ManagementService(ehCacheManager(), mbeanServer(), true, true, true, true);
   }
 
+  @Bean
+  public MBeanExporter offHeapCacheExporter() {
+    // Expose the off-heap caches alongside the Ehcache caches, since ManagementService only knows about the latter
+    val exporter = new MBeanExporter();
+    exporter.setServer(mbeanServer());
+    if (mutationOffHeap) {
+      exporter.setBeans(ImmutableMap.<String, Object> of("org.icgc.dcc.id.server:type=OffHeapCache,name=mutationIds",
+          mutationIdCache()));
+    }
+
+    return exporter;
+  }
+
   @Bean
   public MBeanServer mbeanServer() {
     val factory = new MBeanServerFactoryBean();
@@ -115,6 +162,20 @@ public class CacheConfig extends CachingConfigurerSupport {
     return factory.getObject();
   }
 
+  /**
+   * Fails fast rather than running out of memory once the heap caches fill up, e.g. when the mutation cache is moved
+   * back on-heap without raising the heap size.
+   */
+  private static void checkHeapSize(net.sf.ehcache.config.Configuration config) {
+    val heapCacheBytes = config.getCacheConfigurations().values().stream()
+        .mapToLong(CacheConfiguration::getMaxBytesLocalHeap)
+        .sum();
+    val maxHeapBytes = Runtime.getRuntime().maxMemory();
+    checkState(heapCacheBytes < maxHeapBytes,
+        "Heap caches need %s MB but the maximum heap is %s MB. Lower cache.size.* or raise the maximum heap size",
+        heapCacheBytes / 1024 / 1024, maxHeapBytes / 1024 / 1024);
+  }
+
   private static CacheConfiguration createMemoryCache(String name, long maxBytesHeap) {
     val cache = new CacheConfiguration();
     cache.setName(name);
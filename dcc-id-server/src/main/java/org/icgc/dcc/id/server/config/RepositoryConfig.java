@@ -18,22 +18,37 @@
 package org.icgc.dcc.id.server.config;
 
 import lombok.NoArgsConstructor;
+import lombok.val;
+
 import org.icgc.dcc.id.server.repository.AnalysisRepository;
+import org.icgc.dcc.id.server.repository.BaseRepository;
 import org.icgc.dcc.id.server.repository.DonorRepository;
 import org.icgc.dcc.id.server.repository.FileRepository;
+import org.icgc.dcc.id.server.repository.IdAllocator;
+import org.icgc.dcc.id.server.repository.KeyFilter;
 import org.icgc.dcc.id.server.repository.MutationRepository;
 import org.icgc.dcc.id.server.repository.ProjectRepository;
 import org.icgc.dcc.id.server.repository.SampleRepository;
 import org.icgc.dcc.id.server.repository.SpecimenRepository;
 import org.skife.jdbi.v2.DBI;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.CacheBuilder;
+
 import javax.sql.DataSource;
 
+import static java.util.concurrent.TimeUnit.SECONDS;
+
 /**
  * Data access layer configuration.
+ * <p>
+ * Repositories are on-demand so that each call borrows a pooled connection for its duration rather than sharing one
+ * connection per repository.
  */
 @NoArgsConstructor
 @Configuration
@@ -41,45 +56,145 @@ public class RepositoryConfig {
 
   @Autowired
   private DataSource dataSource;
+  @Autowired
+  private MetricRegistry metricRegistry;
+
+  /**
+   * Configuration.
+   */
+  @Value("${id.allocation.blockSize:1000}")
+  private int allocationBlockSize;
+  @Value("${id.allocation.maxAge:10000}")
+  private long allocationMaxAge;
+  @Value("${id.mutation.keyHash:false}")
+  private boolean mutationKeyHash;
+  @Value("${cache.notFound.ttl:10}")
+  private long notFoundTtl;
+  @Value("${cache.notFound.size:100000}")
+  private long notFoundSize;
+  @Value("${cache.keyFilter.enabled:false}")
+  private boolean keyFilterEnabled;
+  @Value("${cache.keyFilter.fpp:0.01}")
+  private double keyFilterFpp;
+  @Value("${cache.keyFilter.interval:300000}")
+  private long keyFilterInterval;
 
   @Bean
   public DBI dbi() {
     return new DBI(dataSource);
   }
 
+  @Bean
+  public IdAllocator idAllocator() {
+    return new IdAllocator(dbi(), allocationBlockSize, allocationMaxAge);
+  }
+
   @Bean
   public ProjectRepository projectRepository() {
-    return dbi().open(ProjectRepository.class);
+    return createRepository(ProjectRepository.class);
   }
 
   @Bean
   public AnalysisRepository analysisRepository() {
-    return dbi().open(AnalysisRepository.class);
+    val repository = dbi().onDemand(AnalysisRepository.class);
+    if (keyFilterEnabled) {
+      repository.setKeyFilter(new KeyFilter("analysis", keyFilterFpp, keyFilterInterval));
+      registerMetrics("analysis", repository.getKeyFilter());
+    }
+
+    return repository;
   }
 
   @Bean
   public DonorRepository donorRepository() {
-    return dbi().open(DonorRepository.class);
+    return createRepository(DonorRepository.class);
   }
 
   @Bean
   public SpecimenRepository specimenRepository() {
-    return dbi().open(SpecimenRepository.class);
+    return createRepository(SpecimenRepository.class);
   }
 
   @Bean
   public SampleRepository sampleRepository() {
-    return dbi().open(SampleRepository.class);
+    return createRepository(SampleRepository.class);
   }
 
   @Bean
   public MutationRepository mutationRepository() {
-    return dbi().open(MutationRepository.class);
+    val repository = createRepository(MutationRepository.class);
+    repository.setKeyHash(mutationKeyHash);
+
+    return repository;
   }
 
   @Bean
   public FileRepository fileRepository() {
-    return dbi().open(FileRepository.class);
+    return createRepository(FileRepository.class);
+  }
+
+  private <T extends BaseRepository> T createRepository(Class<T> type) {
+    val repository = dbi().onDemand(type);
+    if (allocationBlockSize > 0) {
+      // Only consulted by the PostgreSQL bulk insert path
+      repository.setIdAllocator(idAllocator());
+    }
+
+    if (notFoundTtl > 0) {
+      repository.setNotFoundCache(CacheBuilder.newBuilder()
+          .expireAfterWrite(notFoundTtl, SECONDS)
+          .maximumSize(notFoundSize)
+          .recordStats()
+          .build());
+    }
+    if (keyFilterEnabled) {
+      repository.setKeyFilter(new KeyFilter(getEntity(type), keyFilterFpp, keyFilterInterval));
+    }
+
+    registerMetrics(type, repository);
+    return repository;
+  }
+
+  /**
+   * Publishes request coalescing counts under {@code dcc-id.singleFlight.<entity>.*} and negative cache counts under
+   * {@code dcc-id.notFound.<entity>.*}.
+   */
+  private void registerMetrics(Class<?> type, BaseRepository repository) {
+    val entity = getEntity(type);
+
+    val singleFlight = repository.getSingleFlight();
+    val prefix = MetricRegistry.name("dcc-id.singleFlight", entity);
+    metricRegistry.register(MetricRegistry.name(prefix, "executed"), (Gauge<Long>) singleFlight::getExecutedCount);
+    metricRegistry.register(MetricRegistry.name(prefix, "coalesced"), (Gauge<Long>) singleFlight::getCoalescedCount);
+    metricRegistry.register(MetricRegistry.name(prefix, "inFlight"), (Gauge<Integer>) singleFlight::getInFlightCount);
+
+    val notFoundCache = repository.getNotFoundCache();
+    if (notFoundCache != null) {
+      val notFoundPrefix = MetricRegistry.name("dcc-id.notFound", entity);
+      metricRegistry.register(MetricRegistry.name(notFoundPrefix, "hits"),
+          (Gauge<Long>) () -> notFoundCache.stats().hitCount());
+      metricRegistry.register(MetricRegistry.name(notFoundPrefix, "size"), (Gauge<Long>) notFoundCache::size);
+    }
+
+    val keyFilter = repository.getKeyFilter();
+    if (keyFilter != null) {
+      registerMetrics(entity, keyFilter);
+    }
+  }
+
+  /**
+   * Publishes key filter statistics under {@code dcc-id.keyFilter.<entity>.*}.
+   */
+  private void registerMetrics(String entity, KeyFilter keyFilter) {
+    val prefix = MetricRegistry.name("dcc-id.keyFilter", entity);
+    metricRegistry.register(MetricRegistry.name(prefix, "sizeBytes"), (Gauge<Long>) keyFilter::getSizeBytes);
+    metricRegistry.register(MetricRegistry.name(prefix, "insertions"), (Gauge<Long>) keyFilter::getInsertionCount);
+    metricRegistry.register(MetricRegistry.name(prefix, "expectedFpp"), (Gauge<Double>) keyFilter::getExpectedFpp);
+    metricRegistry.register(MetricRegistry.name(prefix, "queriesAvoided"), (Gauge<Long>) keyFilter::getAvoidedCount);
+  }
+
+  private static String getEntity(Class<?> type) {
+    return type.getSimpleName().replace("Repository", "").toLowerCase();
   }
 
   @Bean
@@ -21,11 +21,13 @@ import lombok.RequiredArgsConstructor;
 import org.icgc.dcc.id.server.config.SecurityConfig.IdCreatable;
 import org.icgc.dcc.id.server.service.AnalysisService;
 import org.icgc.dcc.id.server.service.ExportService;
+import org.icgc.dcc.id.server.service.ExportTable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
@@ -42,6 +44,7 @@ public class AnalysisController {
    */
   @NonNull private final AnalysisService analysisService;
   @NonNull private final ExportService exportService;
+  @NonNull private final ExportSnapshotSender snapshotSender;
 
   @IdCreatable
   @RequestMapping(value = "/id", method = GET)
@@ -54,7 +57,11 @@ public class AnalysisController {
 
 
   @RequestMapping(value = "/export", method = GET)
-  public void export(HttpServletResponse response) throws IOException {
+  public void export(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (snapshotSender.send(ExportTable.ANALYSIS, request, response)) {
+      return;
+    }
+
     response.setContentType("text/tsv");
     exportService.exportAnalysisIds(response.getOutputStream());
   }
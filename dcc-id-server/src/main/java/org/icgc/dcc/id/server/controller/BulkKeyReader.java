@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.controller;
+
+import static java.lang.String.format;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.icgc.dcc.id.server.repository.BadRequestException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Splitter;
+import com.google.common.collect.AbstractIterator;
+
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * Reads the business keys of a bulk request body in batches.
+ * <p>
+ * Supports TAB separated rows with fields in {@code fieldNames} order as well as newline delimited JSON objects
+ * keyed by {@code fieldNames}. Blank lines are ignored.
+ * <p>
+ * Responses are written with {@link #writeIds(Writer, List)}.
+ */
+public class BulkKeyReader {
+
+  /**
+   * Constants.
+   */
+  public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+  private static final Splitter TAB_SPLITTER = Splitter.on('\t');
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  /**
+   * Configuration.
+   */
+  @NonNull
+  private final List<String> fieldNames;
+  private final boolean json;
+
+  /**
+   * State.
+   */
+  @NonNull
+  private final BufferedReader reader;
+  private int lineNumber;
+
+  public BulkKeyReader(@NonNull Reader reader, String contentType, @NonNull List<String> fieldNames) {
+    this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    this.json = contentType != null && contentType.startsWith(NDJSON_CONTENT_TYPE);
+    this.fieldNames = fieldNames;
+  }
+
+  /**
+   * Reads the next batch of keys.
+   * 
+   * @param batchSize - the maximum number of keys to read
+   * @return the keys, empty if the end of the stream has been reached
+   */
+  public List<String[]> read(int batchSize) throws IOException {
+    val keys = new ArrayList<String[]>(batchSize);
+    String line;
+    while (keys.size() < batchSize && (line = reader.readLine()) != null) {
+      lineNumber++;
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+
+      keys.add(json ? parseJson(line) : parseTsv(line));
+    }
+
+    return keys;
+  }
+
+  /**
+   * Reads the remaining keys lazily as the returned iterator is advanced. A malformed line throws a
+   * {@link BadRequestException} and an I/O error an {@link UncheckedIOException} from {@link Iterator#hasNext()}.
+   * 
+   * @param batchSize - the maximum number of keys per batch
+   * @return the non-empty batches of keys
+   */
+  public Iterator<List<String[]>> batches(int batchSize) {
+    return new AbstractIterator<List<String[]>>() {
+
+      @Override
+      protected List<String[]> computeNext() {
+        List<String[]> batch;
+        try {
+          batch = read(batchSize);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+
+        return batch.isEmpty() ? endOfData() : batch;
+      }
+
+    };
+  }
+
+  /**
+   * Writes bulk response {@code ids}, one per line, with empty lines for missing ids.
+   * 
+   * @param writer - the response writer
+   * @param ids - the ids to write
+   */
+  public static void writeIds(Writer writer, List<String> ids) throws IOException {
+    for (val id : ids) {
+      if (id != null) {
+        writer.write(id);
+      }
+
+      writer.write('\n');
+    }
+
+    writer.flush();
+  }
+
+  private String[] parseTsv(String line) {
+    val values = TAB_SPLITTER.splitToList(line);
+    if (values.size() != fieldNames.size()) {
+      throw new BadRequestException(format("Expected %s fields %s but found %s on line %s",
+          fieldNames.size(), fieldNames, values.size(), lineNumber));
+    }
+
+    return values.toArray(new String[values.size()]);
+  }
+
+  private String[] parseJson(String line) {
+    JsonNode node;
+    try {
+      node = MAPPER.readTree(line);
+    } catch (IOException e) {
+      throw new BadRequestException(format("Malformed JSON on line %s: %s", lineNumber, e.getMessage()));
+    }
+
+    if (node == null || !node.isObject()) {
+      throw new BadRequestException(format("Expected a JSON object on line %s", lineNumber));
+    }
+
+    val values = new String[fieldNames.size()];
+    for (int i = 0; i < values.length; i++) {
+      val value = node.get(fieldNames.get(i));
+      values[i] = value == null || value.isNull() ? null : value.asText();
+    }
+
+    return values;
+  }
+
+}
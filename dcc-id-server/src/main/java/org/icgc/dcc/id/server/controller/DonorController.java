@@ -16,29 +16,45 @@
  */
 package org.icgc.dcc.id.server.controller;
 
+import static java.util.stream.Collectors.toList;
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
+import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.icgc.dcc.id.server.config.SecurityConfig.IdCreatable;
 import org.icgc.dcc.id.server.repository.DonorRepository;
 import org.icgc.dcc.id.server.service.ExportService;
+import org.icgc.dcc.id.server.service.ExportTable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.val;
 
 @RestController
 @RequestMapping("/donor")
 @RequiredArgsConstructor(onConstructor = @__(@Autowired))
 public class DonorController {
 
+  /**
+   * Constants.
+   */
+  private static final List<String> BULK_FIELD_NAMES = ImmutableList.of("submittedDonorId");
+  private static final int BULK_BATCH_SIZE = 1000;
+
   /**
    * Dependencies
    */
@@ -46,6 +62,8 @@ public class DonorController {
   private final DonorRepository repository;
   @NonNull
   private final ExportService exportService;
+  @NonNull
+  private final ExportSnapshotSender snapshotSender;
 
   @IdCreatable
   @Cacheable(value = "donorIds", key = "{ #submittedDonorId, #submittedProjectId }")
@@ -60,10 +78,46 @@ public class DonorController {
     return repository.findId(create, submittedDonorId, submittedProjectId, release);
   }
 
+  /**
+   * Resolves the ids of a stream of {@code submittedDonorId}s of one project.
+   * <p>
+   * The request body contains one {@code submittedDonorId} per line, either as plain text or as
+   * {@code application/x-ndjson} objects. The body is read in batches of {@value #BULK_BATCH_SIZE} lines, all resolved
+   * in a single transaction, so with {@code create=true} a malformed line or database error creates no ids at all. The
+   * response is only written once the whole body has been resolved and contains one id per line in request order,
+   * with empty lines for ids that were not found.
+   */
+  @IdCreatable
+  @RequestMapping(value = "/ids", method = POST)
+  public void donorIds(
+      // Required
+      @RequestParam("submittedProjectId") String submittedProjectId,
+      // Optional
+      @RequestParam(value = "release", defaultValue = "unknown") String release,
+      @RequestParam(value = "create", defaultValue = "false") boolean create,
+      HttpServletRequest request, HttpServletResponse response) throws IOException {
+    val reader = new BulkKeyReader(request.getReader(), request.getContentType(), BULK_FIELD_NAMES);
+
+    Iterator<List<String>> submittedDonorIds = Iterators.transform(reader.batches(BULK_BATCH_SIZE),
+        batch -> batch.stream().map(key -> key[0]).collect(toList()));
+    val ids = repository.findIds(create, submittedDonorIds, submittedProjectId, release);
+
+    response.setContentType("text/tsv");
+    BulkKeyReader.writeIds(response.getWriter(), ids);
+  }
+
   @RequestMapping(value = "/export", method = GET)
-  public void export(HttpServletResponse response) throws IOException {
+  public void export(
+      // Optional
+      @RequestParam(value = "sinceId", required = false) Long sinceId,
+      @RequestParam(value = "release", required = false) String release,
+      HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (sinceId == null && release == null && snapshotSender.send(ExportTable.DONOR, request, response)) {
+      return;
+    }
+
     response.setContentType("text/tsv");
-    exportService.exportDonorIds(response.getOutputStream());
+    exportService.exportDonorIds(response.getOutputStream(), sinceId, release);
   }
 
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.controller;
+
+import static java.lang.String.format;
+import static java.nio.file.StandardOpenOption.READ;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
+import static javax.servlet.http.HttpServletResponse.SC_PARTIAL_CONTENT;
+import static javax.servlet.http.HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+import static org.springframework.http.HttpHeaders.ACCEPT_ENCODING;
+import static org.springframework.http.HttpHeaders.ACCEPT_RANGES;
+import static org.springframework.http.HttpHeaders.CONTENT_ENCODING;
+import static org.springframework.http.HttpHeaders.CONTENT_RANGE;
+import static org.springframework.http.HttpHeaders.ETAG;
+import static org.springframework.http.HttpHeaders.IF_MODIFIED_SINCE;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.HttpHeaders.IF_RANGE;
+import static org.springframework.http.HttpHeaders.LAST_MODIFIED;
+import static org.springframework.http.HttpHeaders.RANGE;
+import static org.springframework.http.HttpHeaders.VARY;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.icgc.dcc.id.server.service.ExportSnapshotService;
+import org.icgc.dcc.id.server.service.ExportTable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.google.common.base.Splitter;
+
+import lombok.Cleanup;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+/**
+ * Serves {@link ExportSnapshotService} snapshots with conditional and single range request support.
+ * <p>
+ * The body is handed to Tomcat's sendfile support when available so it never passes through the JVM heap, and is
+ * otherwise copied with {@link FileChannel#transferTo}.
+ */
+@Component
+@RequiredArgsConstructor(onConstructor = @__(@Autowired))
+public class ExportSnapshotSender {
+
+  /**
+   * Constants.
+   */
+  private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+  private static final String DIGEST = "Digest";
+
+  private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d*)-(\\d*)");
+  private static final Splitter COMMA = Splitter.on(',').trimResults().omitEmptyStrings();
+
+  /**
+   * Dependencies.
+   */
+  @NonNull
+  private final ExportSnapshotService snapshotService;
+
+  /**
+   * Sends the full snapshot of {@code table}.
+   *
+   * @return {@code false} if snapshots are disabled or the client does not accept gzip, in which case nothing was
+   * written
+   */
+  public boolean send(ExportTable table, HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!snapshotService.isEnabled() || !acceptsGzip(request)) {
+      return false;
+    }
+
+    val snapshot = snapshotService.getSnapshot(table);
+    val etag = snapshot.getETag();
+    val lastModified = snapshot.getLastModified();
+    val length = snapshot.getLength();
+
+    // Already compressed, so Tomcat will not compress it again
+    response.setContentType("text/tsv");
+    response.setHeader(CONTENT_ENCODING, "gzip");
+    response.setHeader(VARY, ACCEPT_ENCODING);
+    response.setHeader(ACCEPT_RANGES, "bytes");
+    response.setHeader(ETAG, etag);
+    response.setDateHeader(LAST_MODIFIED, lastModified);
+    response.setHeader(DIGEST, snapshot.getDigest());
+
+    if (isNotModified(request, etag, lastModified)) {
+      response.setStatus(SC_NOT_MODIFIED);
+      return true;
+    }
+
+    long start = 0;
+    long end = length - 1;
+    val range = getRange(request, etag, lastModified);
+    if (range != null) {
+      val matcher = RANGE_PATTERN.matcher(range);
+      if (matcher.matches() && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+        if (matcher.group(1).isEmpty()) {
+          // Suffix range
+          start = Math.max(0, length - Long.parseLong(matcher.group(2)));
+        } else {
+          start = Long.parseLong(matcher.group(1));
+          if (!matcher.group(2).isEmpty()) {
+            end = Math.min(end, Long.parseLong(matcher.group(2)));
+          }
+        }
+
+        if (start > end) {
+          response.setHeader(CONTENT_RANGE, "bytes */" + length);
+          response.setStatus(SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+          response.setContentLength(0);
+          return true;
+        }
+
+        response.setStatus(SC_PARTIAL_CONTENT);
+        response.setHeader(CONTENT_RANGE, format("bytes %d-%d/%d", start, end, length));
+      }
+    }
+
+    transfer(snapshot.getFile(), start, end - start + 1, request, response);
+    return true;
+  }
+
+  private static void transfer(File file, long start, long count, HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
+    response.setContentLengthLong(count);
+    if ("HEAD".equals(request.getMethod())) {
+      return;
+    }
+
+    if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+      request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+      request.setAttribute(SENDFILE_START, start);
+      request.setAttribute(SENDFILE_END, start + count);
+      return;
+    }
+
+    @Cleanup
+    val channel = FileChannel.open(file.toPath(), READ);
+    val out = Channels.newChannel(response.getOutputStream());
+    long position = start;
+    long remaining = count;
+    while (remaining > 0) {
+      val transferred = channel.transferTo(position, remaining, out);
+      position += transferred;
+      remaining -= transferred;
+    }
+  }
+
+  private static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+    val ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+    if (ifNoneMatch != null) {
+      for (val tag : COMMA.split(ifNoneMatch)) {
+        if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    val ifModifiedSince = getDateHeader(request, IF_MODIFIED_SINCE);
+    return ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+  }
+
+  /**
+   * @return the {@code Range} header, or {@code null} if absent or if {@code If-Range} no longer matches
+   */
+  private static String getRange(HttpServletRequest request, String etag, long lastModified) {
+    val range = request.getHeader(RANGE);
+    val ifRange = request.getHeader(IF_RANGE);
+    if (range == null || ifRange == null) {
+      return range;
+    }
+
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      return ifRange.equals(etag) ? range : null;
+    }
+
+    val date = getDateHeader(request, IF_RANGE);
+    return date != -1 && lastModified / 1000 <= date / 1000 ? range : null;
+  }
+
+  private static long getDateHeader(HttpServletRequest request, String name) {
+    try {
+      return request.getDateHeader(name);
+    } catch (IllegalArgumentException e) {
+      return -1;
+    }
+  }
+
+  private static boolean acceptsGzip(HttpServletRequest request) {
+    val acceptEncoding = request.getHeader(ACCEPT_ENCODING);
+    return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+  }
+
+}
@@ -20,11 +20,13 @@ import static org.springframework.web.bind.annotation.RequestMethod.GET;
 
 import java.io.IOException;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.icgc.dcc.id.server.config.SecurityConfig.IdCreatable;
 import org.icgc.dcc.id.server.repository.FileRepository;
 import org.icgc.dcc.id.server.service.ExportService;
+import org.icgc.dcc.id.server.service.ExportTable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -46,6 +48,8 @@ public class FileController {
   private final FileRepository repository;
   @NonNull
   private final ExportService exportService;
+  @NonNull
+  private final ExportSnapshotSender snapshotSender;
 
   @IdCreatable
   @Cacheable(value = "fileIds", key = "{ #submittedFileId }")
@@ -59,9 +63,16 @@ public class FileController {
   }
 
   @RequestMapping(value = "/export", method = GET)
-  public void export(HttpServletResponse response) throws IOException {
+  public void export(
+      // Optional
+      @RequestParam(value = "sinceId", required = false) Long sinceId,
+      HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (sinceId == null && snapshotSender.send(ExportTable.FILE, request, response)) {
+      return;
+    }
+
     response.setContentType("text/tsv");
-    exportService.exportFileIds(response.getOutputStream());
+    exportService.exportFileIds(response.getOutputStream(), sinceId);
   }
 
 }
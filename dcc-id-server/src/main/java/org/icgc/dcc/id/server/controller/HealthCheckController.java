@@ -17,20 +17,52 @@
  */
 package org.icgc.dcc.id.server.controller;
 
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
 
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
 /**
  * For system monitoring purposes. Not used by the application proper.
  */
 @RestController
+@RequiredArgsConstructor(onConstructor = @__(@Autowired))
 public class HealthCheckController {
 
+  /**
+   * Dependencies
+   */
+  @NonNull
+  private final ReadinessChecker readinessChecker;
+
+  /**
+   * Liveness: the process is up and serving requests.
+   */
   @RequestMapping(value = "/health", method = GET)
   public String healthCheck() {
     return "OK";
   }
 
+  /**
+   * Readiness: {@code 503} when the node is up but too slow or saturated to take traffic. See
+   * {@link ReadinessChecker}.
+   */
+  @RequestMapping(value = "/ready", method = GET)
+  public ResponseEntity<Map<String, Object>> readyCheck() {
+    val result = readinessChecker.check();
+    val ready = Boolean.TRUE.equals(result.get("ready"));
+
+    return new ResponseEntity<>(result, ready ? OK : SERVICE_UNAVAILABLE);
+  }
+
 }
@@ -17,28 +17,44 @@
 package org.icgc.dcc.id.server.controller;
 
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
+import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.icgc.dcc.id.server.config.SecurityConfig.IdCreatable;
 import org.icgc.dcc.id.server.repository.MutationRepository;
 import org.icgc.dcc.id.server.service.ExportService;
+import org.icgc.dcc.id.server.service.ExportTable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.val;
 
 @RestController
 @RequestMapping("/mutation")
 @RequiredArgsConstructor(onConstructor = @__(@Autowired))
 public class MutationController {
 
+  /**
+   * Constants.
+   */
+  private static final List<String> BULK_FIELD_NAMES = ImmutableList.of(
+      "chromosome", "chromosomeStart", "chromosomeEnd", "mutation", "mutationType", "assemblyVersion");
+  private static final int BULK_BATCH_SIZE = 1000;
+
   /**
    * Dependencies
    */
@@ -46,9 +62,11 @@ public class MutationController {
   private final MutationRepository repository;
   @NonNull
   private final ExportService exportService;
+  @NonNull
+  private final ExportSnapshotSender snapshotSender;
 
   @IdCreatable
-  @Cacheable(value = "mutationIds", key = "{ #chromosome, #chromosomeStart, #chromosomeEnd, #mutation, #mutationType, #assemblyVersion }")
+  @Cacheable(value = "mutationIds", key = "T(org.icgc.dcc.id.core.MutationKeyCodec).encode(#chromosome, #chromosomeStart, #chromosomeEnd, #mutation, #mutationType, #assemblyVersion)")
   @RequestMapping(value = "/id", method = GET)
   public String mutationId(
       // Required
@@ -65,10 +83,56 @@ public class MutationController {
         assemblyVersion, release);
   }
 
+  /**
+   * Resolves the ids of a stream of mutations.
+   * <p>
+   * The request body contains one mutation per line, either as TAB separated {@code chromosome, chromosomeStart,
+   * chromosomeEnd, mutation, mutationType, assemblyVersion} or as {@code application/x-ndjson} objects with the same
+   * field names. The body is read in batches of {@value #BULK_BATCH_SIZE} lines, all resolved in a single transaction,
+   * so with {@code create=true} a malformed line or database error creates no ids at all. The response is only written
+   * once the whole body has been resolved and contains one id per line in request order, with empty lines for
+   * mutations that were not found.
+   */
+  @IdCreatable
+  @RequestMapping(value = "/ids", method = POST)
+  public void mutationIds(
+      // Optional
+      @RequestParam(value = "release", defaultValue = "unknown") String release,
+      @RequestParam(value = "create", defaultValue = "false") boolean create,
+      HttpServletRequest request, HttpServletResponse response) throws IOException {
+    val reader = new BulkKeyReader(request.getReader(), request.getContentType(), BULK_FIELD_NAMES);
+
+    Iterator<List<String[]>> mutations = Iterators.transform(reader.batches(BULK_BATCH_SIZE), batch -> {
+      batch.forEach(MutationController::toRepositoryOrder);
+      return batch;
+    });
+    val ids = repository.findIds(create, mutations, release);
+
+    response.setContentType("text/tsv");
+    BulkKeyReader.writeIds(response.getWriter(), ids);
+  }
+
   @RequestMapping(value = "/export", method = GET)
-  public void export(HttpServletResponse response) throws IOException {
+  public void export(
+      // Optional
+      @RequestParam(value = "sinceId", required = false) Long sinceId,
+      @RequestParam(value = "release", required = false) String release,
+      HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (sinceId == null && release == null && snapshotSender.send(ExportTable.MUTATION, request, response)) {
+      return;
+    }
+
     response.setContentType("text/tsv");
-    exportService.exportMutationIds(response.getOutputStream());
+    exportService.exportMutationIds(response.getOutputStream(), sinceId, release);
+  }
+
+  /**
+   * Swaps {@code mutation} and {@code mutationType} to match the repository key order.
+   */
+  private static void toRepositoryOrder(String[] mutation) {
+    val value = mutation[3];
+    mutation[3] = mutation[4];
+    mutation[4] = value;
   }
 
 }
@@ -20,11 +20,13 @@ import static org.springframework.web.bind.annotation.RequestMethod.GET;
 
 import java.io.IOException;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.icgc.dcc.id.server.config.SecurityConfig.IdCreatable;
 import org.icgc.dcc.id.server.repository.ProjectRepository;
 import org.icgc.dcc.id.server.service.ExportService;
+import org.icgc.dcc.id.server.service.ExportTable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -46,6 +48,8 @@ public class ProjectController {
   private final ProjectRepository repository;
   @NonNull
   private final ExportService exportService;
+  @NonNull
+  private final ExportSnapshotSender snapshotSender;
 
   @IdCreatable
   @Cacheable(value = "projectIds", key = "{ #submittedProjectId }")
@@ -60,9 +64,17 @@ public class ProjectController {
   }
 
   @RequestMapping(value = "/export", method = GET)
-  public void export(HttpServletResponse response) throws IOException {
+  public void export(
+      // Optional
+      @RequestParam(value = "sinceId", required = false) Long sinceId,
+      @RequestParam(value = "release", required = false) String release,
+      HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (sinceId == null && release == null && snapshotSender.send(ExportTable.PROJECT, request, response)) {
+      return;
+    }
+
     response.setContentType("text/tsv");
-    exportService.exportProjectIds(response.getOutputStream());
+    exportService.exportProjectIds(response.getOutputStream(), sinceId, release);
   }
 
 }
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2013(c) The Ontario Institute for Cancer Research. All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the GNU Public
+ * License v3.0. You should have received a copy of the GNU General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.controller;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.ObjectName;
+
+import org.icgc.dcc.id.server.cache.OffHeapIdCache;
+import org.icgc.dcc.id.server.service.CacheWarmupService;
+import org.icgc.dcc.id.server.service.CacheWarmupService.Phase;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.zaxxer.hikari.HikariDataSource;
+
+import lombok.Cleanup;
+import lombok.SneakyThrows;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.ehcache.Ehcache;
+
+/**
+ * Deep health checks for load balancers: a node that is up but slow, saturated or still warming its caches reports
+ * itself as not ready.
+ * <p>
+ * Each check reports its measurements and whether they are within the {@code ready.*} thresholds. A threshold of 0
+ * disables its check. Cache fill and hit ratios are informational only, since they are low after every restart.
+ */
+@Slf4j
+@Component
+public class ReadinessChecker {
+
+  /**
+   * Dependencies.
+   */
+  @Autowired
+  HikariDataSource dataSource;
+  @Autowired
+  ExportRequestCounter exportRequestCounter;
+  @Autowired(required = false)
+  CacheManager cacheManager;
+  @Autowired(required = false)
+  CacheWarmupService cacheWarmupService;
+
+  /**
+   * Configuration.
+   */
+  @Value("${ready.db.maxLatency:1000}")
+  long maxDbLatencyMs;
+  @Value("${ready.pool.maxPending:10}")
+  int maxPoolPending;
+  @Value("${ready.threads.maxUsage:0.9}")
+  double maxThreadUsage;
+  @Value("${ready.exports.max:0}")
+  int maxExports;
+  @Value("${ready.cache.warm:true}")
+  boolean requireWarmCaches;
+
+  /**
+   * State.
+   */
+  private final ExecutorService borrowExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+      .setNameFormat("readiness-borrow-%d")
+      .setDaemon(true)
+      .build());
+  private final AtomicBoolean borrowing = new AtomicBoolean();
+
+  /**
+   * @return the checks by name, each with a {@code ready} flag, in a map with an overall {@code ready} flag
+   */
+  public Map<String, Object> check() {
+    val checks = new LinkedHashMap<String, Map<String, Object>>();
+    checks.put("db", checkDb());
+    checks.put("pool", checkPool());
+    checks.put("threads", checkThreads());
+    checks.put("exports", checkExports());
+    checks.put("caches", checkCaches());
+
+    val ready = checks.values().stream().allMatch(check -> Boolean.TRUE.equals(check.get("ready")));
+    if (!ready) {
+      log.debug("Not ready: {}", checks);
+    }
+
+    val result = new LinkedHashMap<String, Object>();
+    result.put("ready", ready);
+    result.putAll(checks);
+
+    return result;
+  }
+
+  private Map<String, Object> checkDb() {
+    val check = new LinkedHashMap<String, Object>();
+    val pending = getPendingConnections();
+    if (maxPoolPending > 0 && pending > maxPoolPending) {
+      // Borrowing would only queue behind the requests already waiting
+      check.put("ready", false);
+      check.put("error", format("%s threads awaiting a connection", pending));
+      return check;
+    }
+
+    val start = System.nanoTime();
+    try {
+      probeDb();
+      val latency = NANOSECONDS.toMillis(System.nanoTime() - start);
+      check.put("ready", maxDbLatencyMs == 0 || latency <= maxDbLatencyMs);
+      check.put("latencyMs", latency);
+    } catch (Exception e) {
+      check.put("ready", false);
+      check.put("error", String.valueOf(e.getMessage()));
+    }
+
+    return check;
+  }
+
+  /**
+   * Round-trip through the pool, so that time waiting for a connection counts too.
+   */
+  @SneakyThrows
+  private void probeDb() {
+    @Cleanup
+    val connection = borrowConnection();
+    @Cleanup
+    val statement = connection.createStatement();
+    if (maxDbLatencyMs > 0) {
+      statement.setQueryTimeout((int) Math.max(1, maxDbLatencyMs / 1000));
+    }
+
+    @Cleanup
+    val resultSet = statement.executeQuery("SELECT 1");
+    resultSet.next();
+  }
+
+  /**
+   * Borrows a connection, waiting at most {@code maxDbLatencyMs} rather than the pool's connection timeout. A connection
+   * that arrives late is returned to the pool, and until then further checks fail without waiting.
+   */
+  private Connection borrowConnection() throws Exception {
+    if (maxDbLatencyMs == 0) {
+      return dataSource.getConnection();
+    }
+    if (!borrowing.compareAndSet(false, true)) {
+      throw new TimeoutException("Still waiting for a connection for an earlier check");
+    }
+
+    CompletableFuture<Connection> borrow = CompletableFuture.supplyAsync(this::getConnection, borrowExecutor);
+    borrow.whenComplete((connection, e) -> borrowing.set(false));
+    try {
+      return borrow.get(maxDbLatencyMs, MILLISECONDS);
+    } catch (TimeoutException e) {
+      borrow.thenAccept(ReadinessChecker::close);
+      throw new TimeoutException(format("No connection within %s ms", maxDbLatencyMs));
+    } catch (ExecutionException e) {
+      val cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+
+      throw e;
+    }
+  }
+
+  @SneakyThrows
+  private Connection getConnection() {
+    return dataSource.getConnection();
+  }
+
+  private int getPendingConnections() {
+    val pool = dataSource.getHikariPoolMXBean();
+    return pool == null ? 0 : pool.getThreadsAwaitingConnection();
+  }
+
+  private static void close(Connection connection) {
+    try {
+      connection.close();
+    } catch (Exception e) {
+      log.warn("Error returning connection: {}", e.getMessage());
+    }
+  }
+
+  private Map<String, Object> checkPool() {
+    val check = new LinkedHashMap<String, Object>();
+    val pool = dataSource.getHikariPoolMXBean();
+    if (pool == null) {
+      // Not started yet
+      check.put("ready", true);
+      return check;
+    }
+
+    val pending = pool.getThreadsAwaitingConnection();
+    check.put("ready", maxPoolPending == 0 || pending <= maxPoolPending);
+    check.put("active", pool.getActiveConnections());
+    check.put("total", pool.getTotalConnections());
+    check.put("max", dataSource.getMaximumPoolSize());
+    check.put("pending", pending);
+
+    return check;
+  }
+
+  /**
+   * Tomcat request threads in use, by the busiest connector.
+   */
+  @SneakyThrows
+  private Map<String, Object> checkThreads() {
+    val check = new LinkedHashMap<String, Object>();
+    val server = ManagementFactory.getPlatformMBeanServer();
+
+    double usage = 0;
+    int busy = 0;
+    int max = 0;
+    for (val name : server.queryNames(new ObjectName("Tomcat:type=ThreadPool,name=*"), null)) {
+      val connectorBusy = ((Number) server.getAttribute(name, "currentThreadsBusy")).intValue();
+      val connectorMax = ((Number) server.getAttribute(name, "maxThreads")).intValue();
+      if (connectorMax > 0 && (double) connectorBusy / connectorMax >= usage) {
+        usage = (double) connectorBusy / connectorMax;
+        busy = connectorBusy;
+        max = connectorMax;
+      }
+    }
+
+    check.put("ready", maxThreadUsage == 0 || usage <= maxThreadUsage);
+    check.put("busy", busy);
+    check.put("max", max);
+    check.put("usage", usage);
+
+    return check;
+  }
+
+  private Map<String, Object> checkExports() {
+    val check = new LinkedHashMap<String, Object>();
+    val inFlight = exportRequestCounter.getInFlightCount();
+    check.put("ready", maxExports == 0 || inFlight <= maxExports);
+    check.put("inFlight", inFlight);
+
+    return check;
+  }
+
+  private Map<String, Object> checkCaches() {
+    val check = new LinkedHashMap<String, Object>();
+    val warm = !requireWarmCaches || cacheWarmupService == null || isWarm(cacheWarmupService.getPhase());
+    check.put("ready", warm);
+    if (cacheWarmupService != null) {
+      check.put("warmup", cacheWarmupService.getPhase());
+    }
+
+    if (cacheManager != null) {
+      for (val name : cacheManager.getCacheNames()) {
+        val stats = getCacheStats(cacheManager.getCache(name).getNativeCache());
+        if (stats != null) {
+          check.put(name, stats);
+        }
+      }
+    }
+
+    return check;
+  }
+
+  private static boolean isWarm(Phase phase) {
+    return phase == Phase.READY || phase == Phase.FAILED;
+  }
+
+  private static Map<String, Object> getCacheStats(Object nativeCache) {
+    val stats = new LinkedHashMap<String, Object>();
+    if (nativeCache instanceof OffHeapIdCache) {
+      val cache = (OffHeapIdCache) nativeCache;
+      stats.put("entries", cache.getObjectCount());
+      stats.put("fill", (double) cache.getObjectCount() / cache.getCapacity());
+      stats.put("hitRatio", cache.getCacheHitPercentage() / 100);
+    } else if (nativeCache instanceof Ehcache) {
+      val cache = (Ehcache) nativeCache;
+      val statistics = cache.getStatistics();
+      val maxBytes = cache.getCacheConfiguration().getMaxBytesLocalHeap();
+      stats.put("entries", statistics.getSize());
+      if (maxBytes > 0) {
+        stats.put("fill", (double) statistics.getLocalHeapSizeInBytes() / maxBytes);
+      }
+      stats.put("hitRatio", statistics.cacheHitRatio());
+    } else {
+      return null;
+    }
+
+    return stats;
+  }
+
+}
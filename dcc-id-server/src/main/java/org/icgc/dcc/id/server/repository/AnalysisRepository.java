@@ -1,16 +1,78 @@
 package org.icgc.dcc.id.server.repository;
 
+import static java.util.Collections.singletonList;
+
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.mixins.GetHandle;
+
+import lombok.Getter;
+import lombok.Setter;
+
+public abstract class AnalysisRepository implements GetHandle {
 
-public abstract class AnalysisRepository {
+  /**
+   * Optional Bloom filter of the existing ids, so that definite misses skip the database.
+   */
+  @Getter
+  @Setter
+  private KeyFilter keyFilter;
 
+  /**
+   * Lazily resolved database capabilities.
+   */
+  private volatile Boolean upsertSupported;
 
   @SqlUpdate("INSERT INTO analysis_ids VALUES (:id)")
   public abstract int insertId(@Bind("id") String id);
 
+  /**
+   * Inserts the {@code id} unless it already exists. Only supported when {@link #isUpsertSupported()}.
+   * 
+   * @return the inserted id, or {@code null} if it already exists
+   */
+  @SqlQuery("INSERT INTO analysis_ids VALUES (:id) ON CONFLICT DO NOTHING RETURNING id")
+  public abstract String upsertId(@Bind("id") String id);
+
   @SqlQuery("SELECT id FROM analysis_ids WHERE  id=:id")
   public abstract String getId(@Bind("id") String id);
 
+  /**
+   * Lazily resolved, so that creates don't pay for a metadata lookup each time.
+   */
+  public boolean isUpsertSupported() {
+    if (upsertSupported == null) {
+      upsertSupported = BaseRepository.isPostgres(getHandle());
+    }
+
+    return upsertSupported;
+  }
+
+  /**
+   * @return {@code true} if the {@link #keyFilter} rules out {@code id}
+   */
+  public boolean isDefinitelyAbsent(String id) {
+    return keyFilter != null && !keyFilter.mightContain(singletonList(id));
+  }
+
+  /**
+   * Records a created {@code id} in the {@link #keyFilter}.
+   */
+  public void putKey(String id) {
+    if (keyFilter != null) {
+      keyFilter.put(singletonList(id));
+    }
+  }
+
+  /**
+   * (Re)builds the {@link #keyFilter} from a scan of the table.
+   */
+  public void loadKeyFilter() {
+    getHandle().inTransaction((handle, status) -> {
+      keyFilter.load(handle, "analysis_ids", singletonList("id"));
+      return null;
+    });
+  }
+
 }
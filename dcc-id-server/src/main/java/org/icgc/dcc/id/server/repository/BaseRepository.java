@@ -18,21 +18,92 @@ package org.icgc.dcc.id.server.repository;
 
 import static com.google.common.base.Preconditions.checkState;
 import static java.lang.String.format;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
 
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.SneakyThrows;
 import lombok.val;
 
 import org.icgc.dcc.id.util.Ids;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.ResultIterator;
+import org.skife.jdbi.v2.SQLStatement;
 import org.skife.jdbi.v2.exceptions.UnableToExecuteStatementException;
+import org.skife.jdbi.v2.sqlobject.mixins.GetHandle;
 
-public abstract class BaseRepository {
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public abstract class BaseRepository implements GetHandle {
 
   /**
    * The maximum number of times to try to resolve an id.
    */
   private static final int MAX_ATTEMPTS = 5;
 
+  /**
+   * The maximum number of keys to resolve per set-based statement.
+   */
+  private static final int BATCH_SIZE = 1000;
+
+  /**
+   * The number of rows fetched per round-trip when scanning a table.
+   */
+  private static final int SCAN_FETCH_SIZE = 10000;
+
+  /**
+   * Lazily resolved database capabilities.
+   */
+  private volatile Boolean postgres;
+
+  /**
+   * Optional source of explicit ids for bulk inserts.
+   */
+  @Setter
+  private IdAllocator idAllocator;
+
+  /**
+   * Concurrent lookups of the same key share one resolution, keyed by the create flag and the lookup key.
+   */
+  @Getter
+  private final SingleFlight<List<Object>, Long> singleFlight = new SingleFlight<>();
+
+  /**
+   * Optional short lived record of lookup keys that were not found, so that repeated probes skip the database. Keys
+   * created through this server are removed, and the expiry bounds how long ids created by other servers stay hidden.
+   */
+  @Getter
+  @Setter
+  private Cache<List<String>, Boolean> notFoundCache;
+
+  /**
+   * Number of creating lookups, so that a miss that raced with a create is not recorded.
+   */
+  private final AtomicLong creations = new AtomicLong();
+
+  /**
+   * Optional Bloom filter of the existing lookup keys, so that definite misses skip the database.
+   */
+  @Getter
+  @Setter
+  private KeyFilter keyFilter;
+
   /**
    * Template method to find or insert the id associated with the supplied business {@code keys}.
    * 
@@ -40,15 +111,19 @@ public abstract class BaseRepository {
    * @return the id
    */
   String findId(boolean create, String... keys) {
-    for (String key : keys) {
-      if (key == null) {
-        throw new BadRequestException(format("Business key value is null for keys '%s'", formatKeys(keys)));
-      }
+    checkKeys(keys);
+
+    val lookupKey = getLookupKey(keys);
+    val generation = creations.get();
+    if (!create && isNotFound(lookupKey)) {
+      throw new NotFoundException("No id found for business key: " + formatKeys(keys));
     }
 
-    // Resolve the "internal" representation of the id
-    val id = resolveId(create, keys);
+    // Resolve the "internal" representation of the id, sharing the round-trip with concurrent requests for the same key
+    val flightKey = ImmutableList.<Object> builder().add(create).addAll(lookupKey).build();
+    val id = singleFlight.execute(flightKey, () -> resolveId(create, keys));
     val missing = id == null;
+    updateKeyCaches(create, lookupKey, missing, generation);
     if (missing) {
       throw new NotFoundException("No id found for business key: " + formatKeys(keys));
     }
@@ -57,11 +132,195 @@ public abstract class BaseRepository {
     return formatId(id);
   }
 
+  /**
+   * Template method to find or insert the ids associated with the supplied list of business {@code keys}.
+   * <p>
+   * Keys are resolved in batches using set-based statements rather than one round-trip per key.
+   * 
+   * @param keys - the business keys
+   * @return the ids in the order of {@code keys}, with {@code null} elements for keys that were not found
+   */
+  List<String> findIds(boolean create, List<String[]> keys) {
+    keys.forEach(BaseRepository::checkKeys);
+
+    val ids = new ArrayList<String>(keys.size());
+    val generation = creations.get();
+    if (!isPostgres()) {
+      // Set-based statements rely on PostgreSQL syntax, so resolve one key at a time
+      for (val key : keys) {
+        val id = resolveId(create, key);
+        updateKeyCaches(create, getLookupKey(key), id == null, generation);
+        ids.add(id == null ? null : formatId(id));
+      }
+
+      return ids;
+    }
+
+    for (val batch : Lists.partition(keys, BATCH_SIZE)) {
+      val resolved = resolveIds(create, batch);
+      for (val key : batch) {
+        val lookupKey = getLookupKey(key);
+        val id = resolved.get(lookupKey);
+        updateKeyCaches(create, lookupKey, id == null, generation);
+        ids.add(id == null ? null : formatId(id));
+      }
+    }
+
+    return ids;
+  }
+
+  /**
+   * Same as {@link #findIds(boolean, List)} but in a single transaction, so that missing keys are either all created or
+   * none are.
+   */
+  List<String> findIdsInTransaction(boolean create, List<String[]> keys) {
+    val ids = getHandle().inTransaction((handle, status) -> findIds(create, keys));
+    if (create) {
+      // Misses recorded by concurrent lookups, or a key filter load, before the commit made the new keys visible
+      for (val key : keys) {
+        updateKeyCaches(true, getLookupKey(key), false, 0);
+      }
+    }
+
+    return ids;
+  }
+
+  /**
+   * Same as {@link #findIdsInTransaction(boolean, List)} for keys supplied in {@code batches}, such as read from a
+   * request body, so that only one batch of keys is held at a time. All batches are resolved in a single transaction,
+   * so an exception thrown while reading a batch rolls back the keys created by earlier ones.
+   * 
+   * @return the ids in the order of the keys of {@code batches}, with {@code null} elements for keys that were not
+   * found
+   */
+  List<String> findIdsInTransaction(boolean create, Iterator<List<String[]>> batches) {
+    val loads = keyFilter == null ? 0 : keyFilter.getLoadCount();
+    val ids = getHandle().inTransaction((handle, status) -> {
+      List<String> result = new ArrayList<>();
+      while (batches.hasNext()) {
+        result.addAll(findIds(create, batches.next()));
+      }
+
+      return result;
+    });
+
+    if (create) {
+      // Misses recorded by concurrent lookups, or a key filter load, before the commit made the new keys visible. The
+      // keys are no longer at hand, so drop every recorded miss
+      creations.incrementAndGet();
+      if (notFoundCache != null) {
+        notFoundCache.invalidateAll();
+      }
+      if (keyFilter != null && keyFilter.getLoadCount() != loads) {
+        keyFilter.invalidate();
+      }
+    }
+
+    return ids;
+  }
+
+  private boolean isNotFound(List<String> lookupKey) {
+    return notFoundCache != null && notFoundCache.getIfPresent(lookupKey) != null;
+  }
+
+  private void updateKeyCaches(boolean create, List<String> lookupKey, boolean missing, long generation) {
+    if (keyFilter != null && create && !missing) {
+      keyFilter.put(lookupKey);
+    }
+    if (notFoundCache == null) {
+      return;
+    }
+
+    if (create) {
+      // May have just been created, so stop reporting it as missing
+      creations.incrementAndGet();
+      notFoundCache.invalidate(lookupKey);
+    } else if (missing && creations.get() == generation) {
+      notFoundCache.put(ImmutableList.copyOf(lookupKey), Boolean.TRUE);
+      if (creations.get() != generation) {
+        // Raced with a create that may have invalidated before the put
+        notFoundCache.invalidate(lookupKey);
+      }
+    }
+  }
+
+  /**
+   * (Re)builds the {@link #keyFilter} from a scan of the table.
+   */
+  public void loadKeyFilter() {
+    checkState(keyFilter != null, "No key filter configured for '%s'", getTableName());
+    getHandle().inTransaction((handle, status) -> {
+      keyFilter.load(handle, getTableName(), getKeyColumns());
+      return null;
+    });
+  }
+
+  /**
+   * Streams the lookup key and formatted id of every row, or of only the rows created in {@code releases} when not
+   * empty.
+   * 
+   * @return the number of rows
+   */
+  public long scanIds(@NonNull Collection<String> releases, @NonNull BiConsumer<List<String>, String> action) {
+    val columns = getKeyColumns();
+    val sql = new StringBuilder()
+        .append("SELECT id, ").append(String.join(", ", columns))
+        .append(" FROM ").append(getTableName());
+    if (!releases.isEmpty()) {
+      sql.append(" WHERE creation_release IN (")
+          .append(IntStream.range(0, releases.size()).mapToObj(i -> ":r" + i).collect(joining(", ")))
+          .append(")");
+    }
+
+    // Fetched in batches, which PostgreSQL only does inside a transaction
+    return getHandle().inTransaction((handle, status) -> {
+      Query<Map<String, Object>> query = handle.createQuery(sql.toString()).setFetchSize(SCAN_FETCH_SIZE);
+      int i = 0;
+      for (String release : releases) {
+        query.bind("r" + i++, release);
+      }
+
+      long count = 0;
+      try (ResultIterator<Boolean> rows = query.map((index, resultSet, context) -> {
+        List<String> key = new ArrayList<>(columns.size());
+        for (int column = 0; column < columns.size(); column++) {
+          key.add(resultSet.getString(column + 2));
+        }
+
+        action.accept(key, formatId(resultSet.getLong(1)));
+        return Boolean.TRUE;
+      }).iterator()) {
+        while (rows.hasNext()) {
+          rows.next();
+          count++;
+        }
+      }
+
+      return count;
+    });
+  }
+
+  private boolean isDefinitelyAbsent(String... keys) {
+    return keyFilter != null && !keyFilter.mightContain(getLookupKey(keys));
+  }
+
   private Long resolveId(boolean create, String... keys) {
-    // Try to find the existing key
-    Long id = getId(keys);
+    // Try to find the existing key, unless the key filter rules it out
+    Long id = isDefinitelyAbsent(keys) ? null : getId(keys);
 
-    if (!create) {
+    if (!create || id != null) {
+      return id;
+    }
+
+    if (isPostgres()) {
+      // Newly discovered key, so CREATE. A concurrent insert of the same key makes this a no-op, in which case the
+      // winner's row is visible to the subsequent select.
+      id = upsertId(keys);
+      if (id == null) {
+        id = getId(keys);
+      }
+
+      checkState(id != null, "Could not acquire id for keys '%s'. Aborting.", formatKeys(keys));
       return id;
     }
 
@@ -93,6 +352,105 @@ public abstract class BaseRepository {
     return id;
   }
 
+  private Map<List<String>, Long> resolveIds(boolean create, List<String[]> keys) {
+    // Collapse duplicates so that each distinct key is only resolved once
+    val unique = new LinkedHashMap<List<String>, String[]>();
+    for (val key : keys) {
+      unique.putIfAbsent(getLookupKey(key), key);
+    }
+
+    // Try to find the existing keys, except those the key filter rules out
+    val candidates = unique.values().stream().filter(key -> !isDefinitelyAbsent(key)).collect(toList());
+    val ids = candidates.isEmpty() ? new LinkedHashMap<List<String>, Long>() : selectIds(candidates);
+    if (!create || ids.size() == unique.size()) {
+      return ids;
+    }
+
+    // Newly discovered keys, so CREATE. Concurrent inserts of the same key are ignored and picked up by the
+    // subsequent select. Keys are inserted in lookup key order so that concurrent requests with overlapping keys
+    // acquire their row locks in the same order and cannot deadlock.
+    val missing = unique.entrySet().stream()
+        .filter(entry -> !ids.containsKey(entry.getKey()))
+        .sorted((a, b) -> compareLookupKeys(a.getKey(), b.getKey()))
+        .map(Map.Entry::getValue)
+        .collect(toList());
+    insertIds(missing);
+    ids.putAll(selectIds(missing));
+
+    checkState(ids.size() == unique.size(), "Could not acquire ids for %s of %s keys. Aborting.",
+        unique.size() - ids.size(), unique.size());
+
+    return ids;
+  }
+
+  private static int compareLookupKeys(List<String> a, List<String> b) {
+    for (int i = 0; i < a.size(); i++) {
+      val result = a.get(i).compareTo(b.get(i));
+      if (result != 0) {
+        return result;
+      }
+    }
+
+    return 0;
+  }
+
+  private Map<List<String>, Long> selectIds(List<String[]> keys) {
+    val columns = getKeyColumns();
+    String sql = new StringBuilder()
+        .append("SELECT t.id, ").append(columns.stream().map(column -> "t." + column).collect(joining(", ")))
+        .append(" FROM ").append(getTableName()).append(" t")
+        .append(" JOIN (VALUES ").append(formatValues(keys.size(), columns.size(), false)).append(")")
+        .append(" AS v (").append(String.join(", ", columns)).append(")")
+        .append(" ON ").append(columns.stream().map(column -> "t." + column + " = v." + column).collect(joining(" AND ")))
+        .toString();
+
+    val keyHash = getKeyHashExpression("v");
+    if (keyHash != null) {
+      // Let the compact hash index drive the join
+      sql += " AND t.key_hash = " + keyHash;
+    }
+
+    val query = getHandle().createQuery(sql);
+    bindValues(query, keys, columns.size());
+
+    val ids = new LinkedHashMap<List<String>, Long>();
+    query
+        .map((index, resultSet, context) -> {
+          val key = new ArrayList<String>(columns.size());
+          for (int i = 0; i < columns.size(); i++) {
+            key.add(resultSet.getString(i + 2));
+          }
+
+          ids.put(key, resultSet.getLong(1));
+          return key;
+        })
+        .list();
+
+    return ids;
+  }
+
+  private void insertIds(List<String[]> keys) {
+    // Pre-allocated ids avoid drawing from the sequence once per row
+    val ids = idAllocator == null ? null : idAllocator.allocate(getTableName(), keys.size());
+    val columns = getInsertColumns();
+    val sql = new StringBuilder()
+        .append("INSERT INTO ").append(getTableName())
+        .append(" (").append(ids == null ? "" : "id, ").append(String.join(", ", columns)).append(")")
+        .append(" VALUES ").append(formatValues(keys.size(), columns.size(), ids != null))
+        .append(" ON CONFLICT DO NOTHING")
+        .toString();
+
+    val statement = getHandle().createStatement(sql);
+    bindValues(statement, keys, columns.size());
+    if (ids != null) {
+      for (int row = 0; row < ids.length; row++) {
+        statement.bind("i" + row, ids[row]);
+      }
+    }
+
+    statement.execute();
+  }
+
   /**
    * Resolve the existing {@code id}.
    * 
@@ -109,6 +467,46 @@ public abstract class BaseRepository {
    */
   abstract Long insertId(String... keys);
 
+  /**
+   * Insert the new {@code id} unless the keys already exist.
+   * 
+   * @param keys - the id keys
+   * @return the newly inserted id, or {@code null} if the keys already exist
+   */
+  abstract Long upsertId(String... keys);
+
+  /**
+   * Get the name of the id table.
+   * 
+   * @return the table name
+   */
+  abstract String getTableName();
+
+  /**
+   * Get the columns that uniquely identify a row, in business key order.
+   * 
+   * @return the key columns
+   */
+  abstract List<String> getKeyColumns();
+
+  /**
+   * Get the columns written on insert, in business key order. Always begins with {@link #getKeyColumns()}.
+   * 
+   * @return the insert columns
+   */
+  abstract List<String> getInsertColumns();
+
+  /**
+   * Get the SQL expression of the hash of the key columns of relation {@code alias}, if the table has an indexed
+   * {@code key_hash} column.
+   * 
+   * @param alias - the alias of the relation providing the key columns
+   * @return the expression, or {@code null} if not supported
+   */
+  String getKeyHashExpression(String alias) {
+    return null;
+  }
+
   /**
    * Get the the {@code id} prefix
    * 
@@ -131,13 +529,85 @@ public abstract class BaseRepository {
     return Ids.formatId(getPrefix(), id);
   }
 
+  /**
+   * Determines if the underlying database is PostgreSQL.
+   * 
+   * @return {@code true} if PostgreSQL specific syntax may be used
+   */
+  boolean isPostgres() {
+    if (postgres == null) {
+      postgres = isPostgres(getHandle());
+    }
+
+    return postgres;
+  }
+
+  /**
+   * Determines if the database of the supplied {@code handle} is PostgreSQL.
+   * 
+   * @param handle - the handle to inspect
+   * @return {@code true} if PostgreSQL specific syntax may be used
+   */
+  @SneakyThrows
+  static boolean isPostgres(Handle handle) {
+    val productName = handle.getConnection().getMetaData().getDatabaseProductName();
+    return "PostgreSQL".equals(productName);
+  }
+
+  /**
+   * Gets the portion of the business {@code keys} that uniquely identifies a row.
+   * 
+   * @param keys - the business keys
+   * @return the lookup key
+   */
+  private List<String> getLookupKey(String... keys) {
+    return Arrays.asList(keys).subList(0, getKeyColumns().size());
+  }
+
+  /**
+   * Formats a {@code VALUES} list of named parameters for {@code rows} rows of {@code columns} columns, optionally
+   * preceded by an id column.
+   */
+  private static String formatValues(int rows, int columns, boolean id) {
+    return IntStream.range(0, rows)
+        .mapToObj(row -> IntStream.range(0, columns)
+            .mapToObj(column -> ":k" + row + "_" + column)
+            .collect(joining(", ", id ? "(:i" + row + ", " : "(", ")")))
+        .collect(joining(", "));
+  }
+
+  /**
+   * Binds the key parameters formatted by {@link #formatValues(int, int, boolean)}.
+   */
+  private static void bindValues(SQLStatement<?> statement, List<String[]> keys, int columns) {
+    for (int row = 0; row < keys.size(); row++) {
+      val key = keys.get(row);
+      for (int column = 0; column < columns; column++) {
+        statement.bind("k" + row + "_" + column, key[column]);
+      }
+    }
+  }
+
+  /**
+   * Verifies that none of the business {@code keys} are {@code null}.
+   * 
+   * @param keys - the business keys
+   */
+  private static void checkKeys(String... keys) {
+    for (String key : keys) {
+      if (key == null) {
+        throw new BadRequestException(format("Business key value is null for keys '%s'", formatKeys(keys)));
+      }
+    }
+  }
+
   /**
    * Formats the business {@code keys}.
    * 
    * @param keys - the business keys
    * @return the formatted value
    */
-  private String formatKeys(String... keys) {
+  private static String formatKeys(String... keys) {
     return Arrays.toString(keys);
   }
 
@@ -16,18 +16,64 @@
  */
 package org.icgc.dcc.id.server.repository;
 
+import static java.util.stream.Collectors.toList;
+
+import java.util.Iterator;
+import java.util.List;
+
+import lombok.val;
+
 import org.icgc.dcc.id.core.Prefixes;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+
 public abstract class DonorRepository extends BaseRepository {
 
+  /**
+   * Set-based statement metadata.
+   */
+  private static final String TABLE_NAME = "donor_ids";
+  private static final List<String> KEY_COLUMNS = ImmutableList.of("donor_id", "project_id");
+  private static final List<String> INSERT_COLUMNS = ImmutableList.<String> builder()
+      .addAll(KEY_COLUMNS).add("creation_release").build();
+
   public String findId(boolean create, String submittedDonorId, String submittedProjectId, String release) {
     return super.findId(create, submittedDonorId, submittedProjectId, release);
   }
 
+  /**
+   * Finds the ids of the supplied {@code submittedDonorIds} of a project. Missing ids are created in a single
+   * transaction.
+   * 
+   * @return the ids in the order of {@code submittedDonorIds}, with {@code null} elements for ids that were not found
+   */
+  public List<String> findIds(boolean create, List<String> submittedDonorIds, String submittedProjectId,
+      String release) {
+    val keys = submittedDonorIds.stream()
+        .map(submittedDonorId -> new String[] { submittedDonorId, submittedProjectId, release })
+        .collect(toList());
+
+    return super.findIdsInTransaction(create, keys);
+  }
+
+  /**
+   * Same as {@link #findIds(boolean, List, String, String)} for {@code submittedDonorIds} supplied in batches.
+   * Missing ids are created in a single transaction for all batches.
+   */
+  public List<String> findIds(boolean create, Iterator<List<String>> submittedDonorIds, String submittedProjectId,
+      String release) {
+    Iterator<List<String[]>> keys = Iterators.transform(submittedDonorIds, batch -> batch.stream()
+        .map(submittedDonorId -> new String[] { submittedDonorId, submittedProjectId, release })
+        .collect(toList()));
+
+    return super.findIdsInTransaction(create, keys);
+  }
+
   /**
    * Template method extension point.
    */
@@ -49,6 +95,41 @@ public abstract class DonorRepository extends BaseRepository {
         keys[2] /* creationRelease */);
   }
 
+  /**
+   * Template method extension point.
+   */
+  @Override
+  Long upsertId(String... keys) {
+    return upsertDonorId(
+        keys[0] /* donorId */,
+        keys[1] /* projectId */,
+        keys[2] /* creationRelease */);
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  String getTableName() {
+    return TABLE_NAME;
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  List<String> getKeyColumns() {
+    return KEY_COLUMNS;
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  List<String> getInsertColumns() {
+    return INSERT_COLUMNS;
+  }
+
   /**
    * Template method extension point.
    */
@@ -78,4 +159,15 @@ public abstract class DonorRepository extends BaseRepository {
 
       @Bind("creationRelease") String creationRelease);
 
+  /**
+   * JDBI instrumented.
+   */
+  @SqlQuery("sql/donor-id-upsert")
+  abstract Long upsertDonorId(
+      @Bind("donorId") String donorId,
+
+      @Bind("projectId") String projectId,
+
+      @Bind("creationRelease") String creationRelease);
+
 }
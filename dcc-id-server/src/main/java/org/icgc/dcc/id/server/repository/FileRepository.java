@@ -16,14 +16,24 @@
  */
 package org.icgc.dcc.id.server.repository;
 
+import java.util.List;
+
 import org.icgc.dcc.id.core.Prefixes;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 
+import com.google.common.collect.ImmutableList;
+
 public abstract class FileRepository extends BaseRepository {
 
+  /**
+   * Set-based statement metadata.
+   */
+  private static final String TABLE_NAME = "file_ids";
+  private static final List<String> KEY_COLUMNS = ImmutableList.of("file_id");
+
   public String findId(boolean create, String fileId) {
     return super.findId(create, fileId);
   }
@@ -45,6 +55,39 @@ public abstract class FileRepository extends BaseRepository {
         keys[0] /* fileId */);
   }
 
+  /**
+   * Template method extension point.
+   */
+  @Override
+  Long upsertId(String... keys) {
+    return upsertFileId(
+        keys[0] /* fileId */);
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  String getTableName() {
+    return TABLE_NAME;
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  List<String> getKeyColumns() {
+    return KEY_COLUMNS;
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  List<String> getInsertColumns() {
+    return KEY_COLUMNS;
+  }
+
   /**
    * Template method extension point.
    */
@@ -68,4 +111,11 @@ public abstract class FileRepository extends BaseRepository {
   abstract Long insertFileId(
       @Bind("fileId") String fileId);
 
+  /**
+   * JDBI instrumented.
+   */
+  @SqlQuery("sql/file-id-upsert")
+  abstract Long upsertFileId(
+      @Bind("fileId") String fileId);
+
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013(c) The Ontario Institute for Cancer Research. All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the GNU Public
+ * License v3.0. You should have received a copy of the GNU General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.repository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+import org.skife.jdbi.v2.IDBI;
+
+import com.google.common.primitives.Longs;
+
+/**
+ * Hands out numeric ids from blocks reserved ahead of time from each table's {@code BIGSERIAL} sequence.
+ * <p>
+ * Reserving a block costs one round-trip, after which ids are served from memory. This lets bulk inserts carry
+ * explicit ids instead of drawing from the sequence once per row. Ids drawn by rows inserted without an explicit id
+ * come from the same sequence, so the two never collide. Unused reserved ids are lost on shutdown, which only leaves
+ * gaps, as rolled back inserts already do.
+ * <p>
+ * Ids served from a block are lower than those drawn by other connections since it was reserved, so they commit out
+ * of order. Export consumers re-read a margin below the highest id they have seen (see
+ * {@code ExportIdCache.DELTA_ID_MARGIN}) to pick up such ids. To stay within that margin, blocks are kept small and
+ * the unused rest of a block is dropped once it is older than {@code maxAgeMs}: an id is then at most
+ * {@code blockSize} plus the ids drawn server-wide in {@code maxAgeMs} behind the highest id.
+ * <p>
+ * PostgreSQL only.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class IdAllocator {
+
+  /**
+   * Dependencies.
+   */
+  @NonNull
+  private final IDBI dbi;
+
+  /**
+   * Configuration.
+   */
+  private final int blockSize;
+  private final long maxAgeMs;
+
+  /**
+   * State.
+   */
+  private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+  /**
+   * Allocates {@code count} ids for rows of {@code tableName}.
+   * 
+   * @param tableName - the table whose sequence to draw from
+   * @param count - the number of ids
+   * @return the ids
+   */
+  public long[] allocate(@NonNull String tableName, int count) {
+    checkArgument(count >= 0, "Cannot allocate %s ids", count);
+    return blocks.computeIfAbsent(tableName, Block::new).allocate(count);
+  }
+
+  private long[] reserve(String tableName, int count) {
+    log.debug("Reserving {} ids for '{}'...", count, tableName);
+    val ids = dbi.withHandle(handle -> handle
+        .createQuery("SELECT nextval(pg_get_serial_sequence(:tableName, 'id')) FROM generate_series(1, :count)")
+        .bind("tableName", tableName)
+        .bind("count", count)
+        .mapTo(Long.class)
+        .list());
+
+    return Longs.toArray(ids);
+  }
+
+  /**
+   * The reserved but unallocated ids of a table.
+   */
+  @RequiredArgsConstructor
+  private class Block {
+
+    private final String tableName;
+
+    private long[] ids = new long[0];
+    private int next;
+    private long reservedAt;
+
+    synchronized long[] allocate(int count) {
+      val allocated = new long[count];
+      int filled = 0;
+      while (filled < count) {
+        if (next == ids.length || isExpired()) {
+          ids = reserve(tableName, Math.max(blockSize, count - filled));
+          next = 0;
+          reservedAt = System.nanoTime();
+        }
+
+        val n = Math.min(count - filled, ids.length - next);
+        System.arraycopy(ids, next, allocated, filled, n);
+        next += n;
+        filled += n;
+      }
+
+      return allocated;
+    }
+
+    private boolean isExpired() {
+      return NANOSECONDS.toMillis(System.nanoTime() - reservedAt) >= maxAgeMs;
+    }
+
+  }
+
+}
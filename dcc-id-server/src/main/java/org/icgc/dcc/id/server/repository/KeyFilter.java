@@ -0,0 +1,290 @@
+/*
+ * Copyright 2013(c) The Ontario Institute for Cancer Research. All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the GNU Public
+ * License v3.0. You should have received a copy of the GNU General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.ResultIterator;
+import org.skife.jdbi.v2.util.LongMapper;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bloom filter of the lookup keys in an id table, used to answer definite misses without a query.
+ * <p>
+ * The filter answers "maybe" for every key until {@link #load} has scanned the table. Keys created afterwards must be
+ * {@link #put} once committed. Keys created by other servers are only picked up by the next load, so once the filter
+ * is older than {@code maxAgeMs} it answers "maybe" again and misses are confirmed by the database until it is
+ * reloaded.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class KeyFilter {
+
+  /**
+   * Constants.
+   */
+  private static final int MIN_EXPECTED_KEYS = 1 << 20;
+  private static final int FETCH_SIZE = 10000;
+
+  /**
+   * Sized for this many times the number of keys at load time, so the false positive rate holds as the table grows.
+   */
+  private static final double GROWTH_FACTOR = 1.5;
+
+  /**
+   * Separates key columns so that {@code ["ab", "c"]} and {@code ["a", "bc"]} hash differently.
+   */
+  private static final Funnel<List<String>> KEY_FUNNEL = (key, into) -> {
+    for (val value : key) {
+      into.putString(value, UTF_8).putByte((byte) 0);
+    }
+  };
+
+  /**
+   * Configuration.
+   */
+  @Getter
+  @NonNull
+  private final String name;
+  private final double fpp;
+  private final long maxAgeMs;
+
+  /**
+   * State.
+   * <p>
+   * A reload builds {@code loading} while {@code filter} keeps answering, and puts go to both until it is swapped in.
+   */
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private BloomFilter<List<String>> filter;
+  private BloomFilter<List<String>> loading;
+  private long insertions;
+  private long loadingInsertions;
+  private volatile long loadedAt;
+  private long loads;
+  private long invalidatedLoads;
+  @Getter
+  private volatile boolean ready;
+  @Getter
+  private volatile long sizeBytes;
+
+  /**
+   * Statistics.
+   */
+  private final LongAdder avoided = new LongAdder();
+
+  /**
+   * @return {@code false} if {@code key} is definitely absent, {@code true} if it may be present or the filter is not
+   * loaded yet or is older than {@code maxAgeMs}
+   */
+  public boolean mightContain(@NonNull List<String> key) {
+    if (!isCurrent()) {
+      return true;
+    }
+
+    lock.readLock().lock();
+    try {
+      if (filter.mightContain(key)) {
+        return true;
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    avoided.increment();
+    return false;
+  }
+
+  /**
+   * Records a created key. A no-op before {@link #load} starts, whose scan then includes the key.
+   */
+  public void put(@NonNull List<String> key) {
+    lock.writeLock().lock();
+    try {
+      if (filter != null) {
+        filter.put(key);
+        insertions++;
+      }
+      if (loading != null) {
+        loading.put(key);
+        loadingInsertions++;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * (Re)builds the filter from a streaming scan of {@code columns} of {@code tableName}. Must run in a transaction for
+   * the scan to be fetched in batches. The previous filter, if any, keeps answering until the scan completes.
+   */
+  public synchronized void load(@NonNull Handle handle, @NonNull String tableName, @NonNull List<String> columns) {
+    log.info("Loading '{}' key filter...", name);
+    val watch = Stopwatch.createStarted();
+
+    val count = handle.createQuery("SELECT count(*) FROM " + tableName).map(LongMapper.FIRST).first();
+    val expected = (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_EXPECTED_KEYS, (long) (count * GROWTH_FACTOR)));
+
+    // Install the new filter before scanning so that keys created during the scan are not lost. Its age counts from
+    // here, as keys created by other servers after the scan starts may be missing from it
+    val startedAt = System.nanoTime();
+    long load;
+    lock.writeLock().lock();
+    try {
+      loading = BloomFilter.create(KEY_FUNNEL, expected, fpp);
+      loadingInsertions = 0;
+      load = ++loads;
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    try {
+      val query = handle.createQuery("SELECT " + String.join(", ", columns) + " FROM " + tableName)
+          .setFetchSize(FETCH_SIZE)
+          .map((index, resultSet, context) -> {
+            val key = new ArrayList<String>(columns.size());
+            for (int i = 0; i < columns.size(); i++) {
+              key.add(resultSet.getString(i + 1));
+            }
+
+            return key;
+          });
+
+      try (ResultIterator<ArrayList<String>> keys = query.iterator()) {
+        while (keys.hasNext()) {
+          putLoading(keys.next());
+        }
+      }
+
+      lock.writeLock().lock();
+      try {
+        filter = loading;
+        insertions = loadingInsertions;
+        sizeBytes = getSizeBytes(expected, fpp);
+        loadedAt = startedAt;
+        ready = load > invalidatedLoads;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    } finally {
+      lock.writeLock().lock();
+      try {
+        loading = null;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    log.info("Loaded '{}' key filter with {} keys ({} bytes) in {}", name, getInsertionCount(), sizeBytes, watch);
+  }
+
+  /**
+   * @return the number of loads started so far
+   */
+  public long getLoadCount() {
+    lock.readLock().lock();
+    try {
+      return loads;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Answers "maybe" for every key until a load that starts after this call completes. Used when keys were put before
+   * they were committed and a load may have scanned the table in between, missing them.
+   */
+  public void invalidate() {
+    lock.writeLock().lock();
+    try {
+      ready = false;
+      invalidatedLoads = loads;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of keys put, counting keys put more than once
+   */
+  public long getInsertionCount() {
+    lock.readLock().lock();
+    try {
+      return insertions;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of lookups answered as definite misses
+   */
+  public long getAvoidedCount() {
+    return avoided.sum();
+  }
+
+  /**
+   * @return the estimated false positive rate given the keys put so far
+   */
+  public double getExpectedFpp() {
+    lock.readLock().lock();
+    try {
+      return filter == null ? 0 : filter.expectedFpp();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private boolean isCurrent() {
+    return ready && NANOSECONDS.toMillis(System.nanoTime() - loadedAt) < maxAgeMs;
+  }
+
+  private void putLoading(List<String> key) {
+    lock.writeLock().lock();
+    try {
+      loading.put(key);
+      loadingInsertions++;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Size of the bit array Guava allocates for {@code expected} keys at false positive rate {@code fpp}.
+   */
+  private static long getSizeBytes(long expected, double fpp) {
+    val bits = (long) (-expected * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+    return bits / Byte.SIZE;
+  }
+
+}
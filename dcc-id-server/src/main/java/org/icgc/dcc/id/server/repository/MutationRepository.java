@@ -16,25 +16,90 @@
  */
 package org.icgc.dcc.id.server.repository;
 
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+import java.util.Iterator;
+import java.util.List;
+
+import lombok.Setter;
+import lombok.val;
+
 import org.icgc.dcc.id.core.Prefixes;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.ObjectArrays;
+
 public abstract class MutationRepository extends BaseRepository {
 
+  /**
+   * Set-based statement metadata.
+   */
+  private static final String TABLE_NAME = "mutation_ids";
+  private static final List<String> KEY_COLUMNS = ImmutableList.of("chromosome", "chromosome_start", "chromosome_end", "mutation_type", "mutation", "assembly_version");
+  private static final List<String> INSERT_COLUMNS = ImmutableList.<String> builder()
+      .addAll(KEY_COLUMNS).add("creation_release").build();
+
+  /**
+   * Whether lookups use the {@code key_hash} column. See {@code sql/migration/mutation-key-hash.sql}.
+   */
+  @Setter
+  private boolean keyHash;
+
   public String findId(boolean create, String chromosome, String chromosomeStart, String chromosomeEnd,
       String mutationType, String mutation, String assemblyVersion, String release) {
     return super.findId(create, chromosome, chromosomeStart, chromosomeEnd, mutationType, mutation, assemblyVersion,
         release);
   }
 
+  /**
+   * Finds the ids of the supplied {@code mutations}.
+   * 
+   * @param mutations - rows of {@code chromosome, chromosomeStart, chromosomeEnd, mutationType, mutation,
+   * assemblyVersion}
+   * @return the ids in the order of {@code mutations}, with {@code null} elements for mutations that were not found
+   */
+  public List<String> findIds(boolean create, List<String[]> mutations, String release) {
+    val keys = mutations.stream()
+        .map(mutation -> ObjectArrays.concat(mutation, release))
+        .collect(toList());
+
+    return super.findIds(create, keys);
+  }
+
+  /**
+   * Same as {@link #findIds(boolean, List, String)} for {@code mutations} supplied in batches. Missing ids are created
+   * in a single transaction for all batches.
+   */
+  public List<String> findIds(boolean create, Iterator<List<String[]>> mutations, String release) {
+    Iterator<List<String[]>> keys = Iterators.transform(mutations, batch -> batch.stream()
+        .map(mutation -> ObjectArrays.concat(mutation, release))
+        .collect(toList()));
+
+    return super.findIdsInTransaction(create, keys);
+  }
+
   /**
    * Template method extension point.
    */
   @Override
   Long getId(String... keys) {
+    if (keyHash) {
+      return getMutationIdByHash(
+          keys[0], // chromosome
+          keys[1], // chromosomeStart
+          keys[2], // chromosomeEnd
+          keys[3], // mutationType
+          keys[4], // mutation
+          keys[5] // assemblyVersion
+      );
+    }
+
     return getMutationId(
         keys[0], // chromosome
         keys[1], // chromosomeStart
@@ -61,6 +126,54 @@ public abstract class MutationRepository extends BaseRepository {
     );
   }
 
+  /**
+   * Template method extension point.
+   */
+  @Override
+  Long upsertId(String... keys) {
+    return upsertMutationId(
+        keys[0], // chromosome
+        keys[1], // chromosomeStart
+        keys[2], // chromosomeEnd
+        keys[3], // mutationType
+        keys[4], // mutation
+        keys[5], // assemblyVersion
+        keys[6] // creation_release
+    );
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  String getTableName() {
+    return TABLE_NAME;
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  List<String> getKeyColumns() {
+    return KEY_COLUMNS;
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  List<String> getInsertColumns() {
+    return INSERT_COLUMNS;
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  String getKeyHashExpression(String alias) {
+    return keyHash ? formatKeyHashExpression(alias) : null;
+  }
+
   /**
    * Template method extension point.
    */
@@ -86,6 +199,36 @@ public abstract class MutationRepository extends BaseRepository {
 
       @Bind("assemblyVersion") String assemblyVersion);
 
+  /**
+   * Formats the SQL expression of the {@code key_hash} of a row. Must agree with the {@code mutation_ids_key_hash}
+   * trigger.
+   * 
+   * @param alias - the alias of the row's relation
+   * @return the expression
+   */
+  public static String formatKeyHashExpression(String alias) {
+    return KEY_COLUMNS.stream()
+        .map(column -> alias + "." + column)
+        .collect(joining(" || chr(9) || ", "md5(", ")::uuid"));
+  }
+
+  /**
+   * JDBI instrumented.
+   */
+  @SqlQuery("sql/mutation-id-select-hashed")
+  abstract Long getMutationIdByHash(
+      @Bind("chromosome") String chromosome,
+
+      @Bind("chromosomeStart") String chromosomeStart,
+
+      @Bind("chromosomeEnd") String chromosomeEnd,
+
+      @Bind("mutationType") String mutationType,
+
+      @Bind("mutation") String mutation,
+
+      @Bind("assemblyVersion") String assemblyVersion);
+
   /**
    * JDBI instrumented.
    */
@@ -105,4 +248,23 @@ public abstract class MutationRepository extends BaseRepository {
       @Bind("assemblyVersion") String assemblyVersion,
 
       @Bind("creationRelease") String creationRlease);
+
+  /**
+   * JDBI instrumented.
+   */
+  @SqlQuery("sql/mutation-id-upsert")
+  abstract Long upsertMutationId(
+      @Bind("chromosome") String chromosome,
+
+      @Bind("chromosomeStart") String chromosomeStart,
+
+      @Bind("chromosomeEnd") String chromosomeEnd,
+
+      @Bind("mutationType") String mutationType,
+
+      @Bind("mutation") String mutation,
+
+      @Bind("assemblyVersion") String assemblyVersion,
+
+      @Bind("creationRelease") String creationRelease);
 }
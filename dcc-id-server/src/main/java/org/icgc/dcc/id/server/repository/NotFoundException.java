@@ -31,6 +31,14 @@ public class NotFoundException extends RuntimeException {
   @NonNull
   private final String message;
 
+  /**
+   * Misses are an expected outcome answered with a 404, so skip capturing the stack trace.
+   */
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
+
   public static void checkExistence(boolean expression, String formatString, Object...args){
     if(!expression){
       throw new NotFoundException(format(formatString, args));
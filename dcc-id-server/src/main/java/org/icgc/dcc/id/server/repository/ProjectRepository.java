@@ -16,14 +16,26 @@
  */
 package org.icgc.dcc.id.server.repository;
 
+import java.util.List;
+
 import org.icgc.dcc.id.core.Prefixes;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 
+import com.google.common.collect.ImmutableList;
+
 public abstract class ProjectRepository extends BaseRepository {
 
+  /**
+   * Set-based statement metadata.
+   */
+  private static final String TABLE_NAME = "project_ids";
+  private static final List<String> KEY_COLUMNS = ImmutableList.of("project_id");
+  private static final List<String> INSERT_COLUMNS = ImmutableList.<String> builder()
+      .addAll(KEY_COLUMNS).add("creation_release").build();
+
   public String findId(boolean create, String submittedProjectId, String release) {
     return super.findId(create, submittedProjectId, release);
   }
@@ -46,6 +58,40 @@ public abstract class ProjectRepository extends BaseRepository {
         keys[1] /* creationRelease */);
   }
 
+  /**
+   * Template method extension point.
+   */
+  @Override
+  Long upsertId(String... keys) {
+    return upsertProjectId(
+        keys[0], /* projectId */
+        keys[1] /* creationRelease */);
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  String getTableName() {
+    return TABLE_NAME;
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  List<String> getKeyColumns() {
+    return KEY_COLUMNS;
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  List<String> getInsertColumns() {
+    return INSERT_COLUMNS;
+  }
+
   /**
    * Template method extension point.
    */
@@ -70,4 +116,13 @@ public abstract class ProjectRepository extends BaseRepository {
       @Bind("projectId") String projectId,
 
       @Bind("creationRelease") String creationRlease);
+
+  /**
+   * JDBI instrumented.
+   */
+  @SqlQuery("sql/project-id-upsert")
+  abstract Long upsertProjectId(
+      @Bind("projectId") String projectId,
+
+      @Bind("creationRelease") String creationRelease);
 }
@@ -16,18 +16,64 @@
  */
 package org.icgc.dcc.id.server.repository;
 
+import static java.util.stream.Collectors.toList;
+
+import java.util.Iterator;
+import java.util.List;
+
+import lombok.val;
+
 import org.icgc.dcc.id.core.Prefixes;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+
 public abstract class SampleRepository extends BaseRepository {
 
+  /**
+   * Set-based statement metadata.
+   */
+  private static final String TABLE_NAME = "sample_ids";
+  private static final List<String> KEY_COLUMNS = ImmutableList.of("sample_id", "project_id");
+  private static final List<String> INSERT_COLUMNS = ImmutableList.<String> builder()
+      .addAll(KEY_COLUMNS).add("creation_release").build();
+
   public String findId(boolean create, String submittedSampleId, String submittedProjectId, String release) {
     return super.findId(create, submittedSampleId, submittedProjectId, release);
   }
 
+  /**
+   * Finds the ids of the supplied {@code submittedSampleIds} of a project. Missing ids are created in a single
+   * transaction.
+   * 
+   * @return the ids in the order of {@code submittedSampleIds}, with {@code null} elements for ids that were not found
+   */
+  public List<String> findIds(boolean create, List<String> submittedSampleIds, String submittedProjectId,
+      String release) {
+    val keys = submittedSampleIds.stream()
+        .map(submittedSampleId -> new String[] { submittedSampleId, submittedProjectId, release })
+        .collect(toList());
+
+    return super.findIdsInTransaction(create, keys);
+  }
+
+  /**
+   * Same as {@link #findIds(boolean, List, String, String)} for {@code submittedSampleIds} supplied in batches.
+   * Missing ids are created in a single transaction for all batches.
+   */
+  public List<String> findIds(boolean create, Iterator<List<String>> submittedSampleIds, String submittedProjectId,
+      String release) {
+    Iterator<List<String[]>> keys = Iterators.transform(submittedSampleIds, batch -> batch.stream()
+        .map(submittedSampleId -> new String[] { submittedSampleId, submittedProjectId, release })
+        .collect(toList()));
+
+    return super.findIdsInTransaction(create, keys);
+  }
+
   /**
    * Template method extension point.
    */
@@ -47,6 +93,41 @@ public abstract class SampleRepository extends BaseRepository {
         keys[2] /* creationRelease */);
   }
 
+  /**
+   * Template method extension point.
+   */
+  @Override
+  Long upsertId(String... keys) {
+    return upsertSampleId(
+        keys[0] /* sampleId */,
+        keys[1] /* projectId */,
+        keys[2] /* creationRelease */);
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  String getTableName() {
+    return TABLE_NAME;
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  List<String> getKeyColumns() {
+    return KEY_COLUMNS;
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  List<String> getInsertColumns() {
+    return INSERT_COLUMNS;
+  }
+
   /**
    * Template method extension point.
    */
@@ -76,4 +157,15 @@ public abstract class SampleRepository extends BaseRepository {
 
       @Bind("creationRelease") String creationRlease);
 
+  /**
+   * JDBI instrumented.
+   */
+  @SqlQuery("sql/sample-id-upsert")
+  abstract Long upsertSampleId(
+      @Bind("sampleId") String sampleId,
+
+      @Bind("projectId") String projectId,
+
+      @Bind("creationRelease") String creationRelease);
+
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013(c) The Ontario Institute for Cancer Research. All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the GNU Public
+ * License v3.0. You should have received a copy of the GNU General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.repository;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * Coalesces concurrent calls for the same key into one.
+ * <p>
+ * The first caller for a key executes the call, and callers that arrive while it is in flight wait for and share its
+ * result, or its exception. Nothing is retained once the call completes, so this is not a cache: a caller arriving
+ * afterwards executes again.
+ * 
+ * @param <K> - the key type
+ * @param <V> - the result type
+ */
+public class SingleFlight<K, V> {
+
+  /**
+   * State.
+   */
+  private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+  /**
+   * Statistics.
+   */
+  private final LongAdder executed = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+
+  /**
+   * Executes {@code call} unless a call for {@code key} is already in flight, in which case its result is returned.
+   * 
+   * @param key - the key identifying equivalent calls
+   * @param call - the call to execute
+   * @return the result, which may be shared with concurrent callers
+   */
+  public V execute(@NonNull K key, @NonNull Supplier<V> call) {
+    val future = new CompletableFuture<V>();
+    val inFlight = calls.putIfAbsent(key, future);
+    if (inFlight != null) {
+      coalesced.increment();
+      return await(inFlight);
+    }
+
+    executed.increment();
+    try {
+      val result = call.get();
+      future.complete(result);
+
+      return result;
+    } catch (Throwable t) {
+      future.completeExceptionally(t);
+      throw t;
+    } finally {
+      calls.remove(key, future);
+    }
+  }
+
+  /**
+   * @return the number of calls executed
+   */
+  public long getExecutedCount() {
+    return executed.sum();
+  }
+
+  /**
+   * @return the number of calls that shared the result of an in-flight call
+   */
+  public long getCoalescedCount() {
+    return coalesced.sum();
+  }
+
+  /**
+   * @return the number of calls currently in flight
+   */
+  public int getInFlightCount() {
+    return calls.size();
+  }
+
+  private static <V> V await(CompletableFuture<V> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for in-flight call", e);
+    } catch (ExecutionException e) {
+      // Rethrow the leader's exception as is, so that callers handle it as if they had made the call
+      val cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+
+      throw new CompletionException(cause);
+    }
+  }
+
+}
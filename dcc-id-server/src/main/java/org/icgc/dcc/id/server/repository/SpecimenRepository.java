@@ -16,18 +16,64 @@
  */
 package org.icgc.dcc.id.server.repository;
 
+import static java.util.stream.Collectors.toList;
+
+import java.util.Iterator;
+import java.util.List;
+
+import lombok.val;
+
 import org.icgc.dcc.id.core.Prefixes;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+
 public abstract class SpecimenRepository extends BaseRepository {
 
+  /**
+   * Set-based statement metadata.
+   */
+  private static final String TABLE_NAME = "specimen_ids";
+  private static final List<String> KEY_COLUMNS = ImmutableList.of("specimen_id", "project_id");
+  private static final List<String> INSERT_COLUMNS = ImmutableList.<String> builder()
+      .addAll(KEY_COLUMNS).add("creation_release").build();
+
   public String findId(boolean create, String submittedSpecimenId, String submittedProjectId, String release) {
     return super.findId(create, submittedSpecimenId, submittedProjectId, release);
   }
 
+  /**
+   * Finds the ids of the supplied {@code submittedSpecimenIds} of a project. Missing ids are created in a single
+   * transaction.
+   * 
+   * @return the ids in the order of {@code submittedSpecimenIds}, with {@code null} elements for ids that were not found
+   */
+  public List<String> findIds(boolean create, List<String> submittedSpecimenIds, String submittedProjectId,
+      String release) {
+    val keys = submittedSpecimenIds.stream()
+        .map(submittedSpecimenId -> new String[] { submittedSpecimenId, submittedProjectId, release })
+        .collect(toList());
+
+    return super.findIdsInTransaction(create, keys);
+  }
+
+  /**
+   * Same as {@link #findIds(boolean, List, String, String)} for {@code submittedSpecimenIds} supplied in batches.
+   * Missing ids are created in a single transaction for all batches.
+   */
+  public List<String> findIds(boolean create, Iterator<List<String>> submittedSpecimenIds, String submittedProjectId,
+      String release) {
+    Iterator<List<String[]>> keys = Iterators.transform(submittedSpecimenIds, batch -> batch.stream()
+        .map(submittedSpecimenId -> new String[] { submittedSpecimenId, submittedProjectId, release })
+        .collect(toList()));
+
+    return super.findIdsInTransaction(create, keys);
+  }
+
   /**
    * Template method extension point.
    */
@@ -48,6 +94,41 @@ public abstract class SpecimenRepository extends BaseRepository {
         keys[2] /* creationRelease */);
   }
 
+  /**
+   * Template method extension point.
+   */
+  @Override
+  Long upsertId(String... keys) {
+    return upsertSpecimenId(
+        keys[0] /* specimenId */,
+        keys[1] /* projectId */,
+        keys[2] /* creationRelease */);
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  String getTableName() {
+    return TABLE_NAME;
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  List<String> getKeyColumns() {
+    return KEY_COLUMNS;
+  }
+
+  /**
+   * Template method extension point.
+   */
+  @Override
+  List<String> getInsertColumns() {
+    return INSERT_COLUMNS;
+  }
+
   /**
    * Template method extension point.
    */
@@ -77,4 +158,15 @@ public abstract class SpecimenRepository extends BaseRepository {
 
       @Bind("creationRelease") String creationRelease);
 
+  /**
+   * JDBI instrumented.
+   */
+  @SqlQuery("sql/specimen-id-upsert")
+  abstract Long upsertSpecimenId(
+      @Bind("specimenId") String specimenId,
+
+      @Bind("projectId") String projectId,
+
+      @Bind("creationRelease") String creationRelease);
+
 }
@@ -70,7 +70,8 @@ public class AnalysisService {
    */
   public boolean isExist(@NonNull String submittedAnalysisId){
     validateAnalysisId(submittedAnalysisId);
-    return isValidId(submittedAnalysisId) && isValidId(analysisRepository.getId(submittedAnalysisId));
+    return isValidId(submittedAnalysisId) && !analysisRepository.isDefinitelyAbsent(submittedAnalysisId)
+        && isValidId(analysisRepository.getId(submittedAnalysisId));
   }
 
 
@@ -83,8 +84,8 @@ public class AnalysisService {
    */
   private String findId(boolean create, @NonNull String id) {
 
-    // Try to find the existing key
-    String foundId = analysisRepository.getId(id);
+    // Try to find the existing key, unless the key filter rules it out
+    String foundId = analysisRepository.isDefinitelyAbsent(id) ? null : analysisRepository.getId(id);
     boolean exists = isValidId(foundId);
 
     if(!create){
@@ -92,6 +93,18 @@ public class AnalysisService {
       return foundId;
     }
 
+    if (!exists && analysisRepository.isUpsertSupported()) {
+      // Newly discovered key, so CREATE. A concurrent insert of the same key makes this a no-op.
+      foundId = analysisRepository.upsertId(id);
+      if (!isValidId(foundId)) {
+        foundId = analysisRepository.getId(id);
+      }
+
+      checkState(isValidId(foundId), "Could not create Id '%s'. Aborting.", id);
+      analysisRepository.putKey(foundId);
+      return foundId;
+    }
+
     int attempts = 0;
     while (!exists) {
       // Bound the number of attempts
@@ -116,6 +129,7 @@ public class AnalysisService {
       exists = isValidId(foundId);
     }
 
+    analysisRepository.putKey(foundId);
     return foundId;
   }
 
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013(c) The Ontario Institute for Cancer Research. All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the GNU Public
+ * License v3.0. You should have received a copy of the GNU General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.service;
+
+import org.icgc.dcc.id.server.service.CacheWarmupService.Phase;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import lombok.val;
+
+/**
+ * Reports cache warm-up progress as {@code cacheWarmup} under the management health endpoint. Out of service until the
+ * warm-up completes. A failed warm-up is reported as up, since the caches still fill on demand.
+ */
+@Component
+@Profile("production")
+public class CacheWarmupHealthIndicator extends AbstractHealthIndicator {
+
+  /**
+   * Dependencies.
+   */
+  @Autowired
+  CacheWarmupService warmupService;
+
+  @Override
+  protected void doHealthCheck(Health.Builder builder) {
+    val phase = warmupService.getPhase();
+    if (phase == Phase.READY || phase == Phase.FAILED) {
+      builder.up();
+    } else {
+      builder.outOfService();
+    }
+
+    builder
+        .withDetail("phase", phase)
+        .withDetail("entries", warmupService.getEntries())
+        .withDetail("completed", warmupService.getCompleted())
+        .withDetail("total", warmupService.getTotal());
+
+    val current = warmupService.getCurrent();
+    if (current != null) {
+      builder.withDetail("current", current);
+    }
+  }
+
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2013(c) The Ontario Institute for Cancer Research. All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the GNU Public
+ * License v3.0. You should have received a copy of the GNU General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.service;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Arrays.asList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.icgc.dcc.id.core.MutationKeyCodec;
+import org.icgc.dcc.id.server.cache.OffHeapIdCache;
+import org.icgc.dcc.id.server.repository.BaseRepository;
+import org.icgc.dcc.id.server.repository.DonorRepository;
+import org.icgc.dcc.id.server.repository.FileRepository;
+import org.icgc.dcc.id.server.repository.MutationRepository;
+import org.icgc.dcc.id.server.repository.ProjectRepository;
+import org.icgc.dcc.id.server.repository.SampleRepository;
+import org.icgc.dcc.id.server.repository.SpecimenRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Stopwatch;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+/**
+ * Fills the id caches in the background after a start, so that the first requests after a deploy don't all go to the
+ * database.
+ * <p>
+ * When {@code cache.persist} is set, the caches are saved under {@code cache.dir/warmup} on shutdown and restored
+ * first. Ids never change once assigned, so entries saved by an earlier run stay valid. Then, when
+ * {@code cache.warmup.enabled} is set, the configured entities are streamed from their tables. Mutations are limited
+ * to {@code cache.warmup.releases}, if any, since the full table rarely fits.
+ */
+@Slf4j
+@Service
+@Profile("production")
+@DependsOn("ehCacheManager") // Saved before the caches are shut down
+public class CacheWarmupService {
+
+  /**
+   * Constants.
+   */
+  private static final int END_OF_ENTRIES = -1;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Dependencies.
+   */
+  @Autowired
+  CacheManager cacheManager;
+  @Autowired
+  ProjectRepository projectRepository;
+  @Autowired
+  DonorRepository donorRepository;
+  @Autowired
+  SpecimenRepository specimenRepository;
+  @Autowired
+  SampleRepository sampleRepository;
+  @Autowired
+  FileRepository fileRepository;
+  @Autowired
+  MutationRepository mutationRepository;
+
+  /**
+   * Configuration.
+   */
+  @Value("${cache.dir}")
+  String cacheDir;
+  @Value("${cache.persist:false}")
+  boolean persist;
+  @Value("${cache.warmup.enabled:false}")
+  boolean enabled;
+  @Value("${cache.warmup.entities:project,donor,specimen,sample}")
+  String[] entities;
+  @Value("${cache.warmup.releases:}")
+  String[] releases;
+
+  /**
+   * State.
+   */
+  @Getter
+  private volatile Phase phase = Phase.STARTING;
+  @Getter
+  private volatile String current;
+  @Getter
+  private volatile int completed;
+  private final AtomicLong entries = new AtomicLong();
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    if (!persist && !enabled) {
+      phase = Phase.READY;
+      return;
+    }
+
+    val thread = new Thread(this::warmup, "cache-warmup");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Restores the saved caches, then streams the configured entities into them.
+   */
+  public void warmup() {
+    val watch = Stopwatch.createStarted();
+    try {
+      if (persist) {
+        phase = Phase.RESTORING;
+        for (val entity : Entity.values()) {
+          current = entity.getCacheName();
+          restore(entity);
+        }
+      }
+
+      if (enabled) {
+        phase = Phase.WARMING;
+        completed = 0;
+        for (val name : entities) {
+          val entity = Entity.valueOf(name.trim().toUpperCase());
+          current = entity.getCacheName();
+          warmup(entity);
+          completed++;
+        }
+      }
+
+      current = null;
+      phase = Phase.READY;
+      log.info("Cache warm-up loaded {} entries in {}", entries.get(), watch);
+    } catch (Exception e) {
+      // The caches still fill on demand
+      phase = Phase.FAILED;
+      log.error("Error warming up '{}'", current, e);
+    }
+  }
+
+  /**
+   * Saves the caches for the next start.
+   */
+  @PreDestroy
+  public void save() {
+    if (!persist) {
+      return;
+    }
+
+    for (val entity : Entity.values()) {
+      try {
+        save(entity);
+      } catch (Exception e) {
+        log.error("Error saving '{}'", entity.getCacheName(), e);
+      }
+    }
+  }
+
+  /**
+   * @return the number of entries loaded so far
+   */
+  public long getEntries() {
+    return entries.get();
+  }
+
+  /**
+   * @return the number of entities to stream from the database
+   */
+  public int getTotal() {
+    return enabled ? entities.length : 0;
+  }
+
+  private void warmup(Entity entity) {
+    log.info("Warming up '{}'...", entity.getCacheName());
+    val watch = Stopwatch.createStarted();
+    val cache = getCache(entity);
+    val repository = getRepository(entity);
+
+    // Only mutations are worth limiting to recent releases
+    val filter = entity == Entity.MUTATION ? asList(releases) : Collections.<String> emptyList();
+    val count = repository.scanIds(filter, (key, id) -> {
+      cache.put(entity.getCacheKey(key), id);
+      entries.incrementAndGet();
+    });
+
+    log.info("Warmed up '{}' with {} entries in {}", entity.getCacheName(), count, watch);
+  }
+
+  private void restore(Entity entity) throws IOException {
+    val nativeCache = getCache(entity).getNativeCache();
+    val file = getFile(entity, nativeCache);
+    if (!file.exists()) {
+      return;
+    }
+
+    log.info("Restoring '{}' from {}...", entity.getCacheName(), file);
+    val watch = Stopwatch.createStarted();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+      if (nativeCache instanceof OffHeapIdCache) {
+        if (!((OffHeapIdCache) nativeCache).load(in)) {
+          log.warn("Skipping '{}' saved by a cache of a different size", entity.getCacheName());
+        }
+      } else if (nativeCache instanceof Ehcache) {
+        restore((Ehcache) nativeCache, in);
+      }
+    }
+
+    log.info("Restored '{}' in {}", entity.getCacheName(), watch);
+  }
+
+  private void restore(Ehcache cache, DataInputStream in) throws IOException {
+    int parts;
+    while ((parts = in.readInt()) != END_OF_ENTRIES) {
+      val key = new ArrayList<String>(parts);
+      for (int i = 0; i < parts; i++) {
+        key.add(in.readUTF());
+      }
+
+      cache.put(new Element(key, in.readUTF()));
+      entries.incrementAndGet();
+    }
+  }
+
+  private void save(Entity entity) throws IOException {
+    val nativeCache = getCache(entity).getNativeCache();
+    if (!(nativeCache instanceof OffHeapIdCache) && !(nativeCache instanceof Ehcache)) {
+      return;
+    }
+
+    val file = getFile(entity, nativeCache);
+    log.info("Saving '{}' to {}...", entity.getCacheName(), file);
+    val watch = Stopwatch.createStarted();
+
+    val tempFile = new File(file.getPath() + ".tmp");
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE))) {
+        if (nativeCache instanceof OffHeapIdCache) {
+          ((OffHeapIdCache) nativeCache).save(out);
+        } else {
+          save((Ehcache) nativeCache, out);
+        }
+      }
+
+      Files.move(tempFile.toPath(), file.toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+    } finally {
+      tempFile.delete();
+    }
+
+    log.info("Saved '{}' in {}", entity.getCacheName(), watch);
+  }
+
+  private static void save(Ehcache cache, DataOutputStream out) throws IOException {
+    for (val key : cache.getKeys()) {
+      val element = cache.getQuiet(key);
+      if (element == null || !(key instanceof List) || !(element.getObjectValue() instanceof String)) {
+        continue;
+      }
+
+      // Keys are the lists of request parameters built by the controllers' @Cacheable expressions
+      val parts = (List<?>) key;
+      out.writeInt(parts.size());
+      for (val part : parts) {
+        out.writeUTF(String.valueOf(part));
+      }
+      out.writeUTF((String) element.getObjectValue());
+    }
+
+    out.writeInt(END_OF_ENTRIES);
+  }
+
+  private Cache getCache(Entity entity) {
+    return cacheManager.getCache(entity.getCacheName());
+  }
+
+  private BaseRepository getRepository(Entity entity) {
+    switch (entity) {
+    case PROJECT:
+      return projectRepository;
+    case DONOR:
+      return donorRepository;
+    case SPECIMEN:
+      return specimenRepository;
+    case SAMPLE:
+      return sampleRepository;
+    case FILE:
+      return fileRepository;
+    default:
+      return mutationRepository;
+    }
+  }
+
+  /**
+   * Off-heap and Ehcache saves differ in format, so they are kept apart in case the configuration changes.
+   */
+  private File getFile(Entity entity, Object nativeCache) {
+    val dir = new File(cacheDir, "warmup");
+    dir.mkdirs();
+
+    val extension = nativeCache instanceof OffHeapIdCache ? ".offheap" : ".entries";
+    return new File(dir, entity.getCacheName() + extension);
+  }
+
+  public enum Phase {
+
+    STARTING, RESTORING, WARMING, READY, FAILED;
+
+  }
+
+  /**
+   * Cached entities and how their controllers key them.
+   */
+  @Getter
+  @RequiredArgsConstructor
+  private enum Entity {
+
+    PROJECT("projectIds"),
+    DONOR("donorIds"),
+    SPECIMEN("specimenIds"),
+    SAMPLE("sampleIds"),
+    FILE("fileIds"),
+    MUTATION("mutationIds") {
+
+      @Override
+      Object getCacheKey(List<String> key) {
+        // Lookup keys are in table order: chromosome, start, end, mutation type, mutation, assembly
+        return MutationKeyCodec.encode(key.get(0), key.get(1), key.get(2), key.get(4), key.get(3), key.get(5));
+      }
+
+    };
+
+    private final String cacheName;
+
+    /**
+     * Same as the {@code @Cacheable} key, a list of the lookup key parts.
+     */
+    Object getCacheKey(List<String> key) {
+      return key;
+    }
+
+  }
+
+}
@@ -17,78 +17,300 @@
  */
 package org.icgc.dcc.id.server.service;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 import javax.sql.DataSource;
 
+import org.icgc.dcc.id.server.repository.BadRequestException;
 import org.postgresql.copy.CopyManager;
 import org.postgresql.core.BaseConnection;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import lombok.Cleanup;
+import lombok.NonNull;
 import lombok.SneakyThrows;
 import lombok.val;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Streams id tables as TSV using {@code COPY ... TO STDOUT}.
+ * <p>
+ * Every export has the same columns in the same order, whether or not it is filtered. Filtered exports are ordered by
+ * {@code id} so clients can resume from the last id they have seen. See {@code sql/migration/export-indexes.sql} for
+ * the supporting indexes.
+ */
 @Slf4j
 @Service
 public class ExportService {
 
+  /**
+   * Constants.
+   */
+  private static final Pattern RELEASE_PATTERN = Pattern.compile("[\\w.-]+");
+  private static final Joiner AND = Joiner.on(" AND ");
+  private static final int BUFFER_SIZE = 64 * 1024;
+
   /**
    * Dependencies.
    */
   @Autowired
   DataSource dataSource;
 
+  /**
+   * Configuration.
+   */
+  @Value("${export.parallelism:4}")
+  int parallelism;
+  @Value("${export.rangeSize:10000000}")
+  long rangeSize;
+
   public void exportProjectIds(OutputStream out) {
-    export("project_ids", out);
+    exportProjectIds(out, null, null);
+  }
+
+  public void exportProjectIds(OutputStream out, Long sinceId, String release) {
+    export(ExportTable.PROJECT, sinceId, release, out);
   }
 
   public void exportDonorIds(OutputStream out) {
-    export("donor_ids", out);
+    exportDonorIds(out, null, null);
+  }
+
+  public void exportDonorIds(OutputStream out, Long sinceId, String release) {
+    export(ExportTable.DONOR, sinceId, release, out);
   }
 
   public void exportSpecimenIds(OutputStream out) {
-    export("specimen_ids", out);
+    exportSpecimenIds(out, null, null);
+  }
+
+  public void exportSpecimenIds(OutputStream out, Long sinceId, String release) {
+    export(ExportTable.SPECIMEN, sinceId, release, out);
   }
 
   public void exportSampleIds(OutputStream out) {
-    export("sample_ids", out);
+    exportSampleIds(out, null, null);
+  }
+
+  public void exportSampleIds(OutputStream out, Long sinceId, String release) {
+    export(ExportTable.SAMPLE, sinceId, release, out);
   }
 
   public void exportMutationIds(OutputStream out) {
-    export("mutation_ids", out);
+    exportMutationIds(out, null, null);
+  }
+
+  public void exportMutationIds(OutputStream out, Long sinceId, String release) {
+    export(ExportTable.MUTATION, sinceId, release, out);
   }
 
   public void exportFileIds(OutputStream out) {
-    export("file_ids", out);
+    exportFileIds(out, null);
   }
 
+  /**
+   * File ids have no creation release, so only {@code sinceId} is supported.
+   */
+  public void exportFileIds(OutputStream out, Long sinceId) {
+    export(ExportTable.FILE, sinceId, null, out);
+  }
+
+  /**
+   * Analysis ids are not sequential, so there is no delta variant.
+   */
   public void exportAnalysisIds(OutputStream out) {
-    export("analysis_ids", out);
+    export(ExportTable.ANALYSIS, null, null, out);
+  }
+
+  /**
+   * @param sinceId when not {@code null}, only rows with a greater id are exported
+   * @param release when not {@code null}, only rows created in {@code release} are exported
+   */
+  public void export(@NonNull ExportTable table, Long sinceId, String release, OutputStream out) {
+    export(table, new IdRange(sinceId, null), release, out);
+  }
+
+  /**
+   * Writes a gzipped export of {@code table} to {@code file}.
+   * <p>
+   * The id space is split into ranges of {@code export.rangeSize} ids that are copied in parallel on separate pooled
+   * connections, at most {@code export.parallelism} at a time. Each range is compressed independently and appended in
+   * id order as its own gzip member, which gzip readers (including {@link java.util.zip.GZIPInputStream}) decompress as
+   * one stream.
+   */
+  @SneakyThrows
+  public void exportGzip(@NonNull ExportTable table, @NonNull File file) {
+    val ranges = table.isSequential() ? getIdRanges(table) : getIdRanges(null, null, rangeSize);
+    log.info("Exporting table '{}' in {} ranges with parallelism {}", table.getTableName(), ranges.size(),
+        parallelism);
+    val watch = Stopwatch.createStarted();
+
+    val executor = Executors.newFixedThreadPool(Math.min(parallelism, ranges.size()), new ThreadFactoryBuilder()
+        .setNameFormat("export-" + table.getTableName() + "-%d")
+        .setDaemon(true)
+        .build());
+    val parts = new ArrayList<File>(ranges.size());
+    val futures = new ArrayList<Future<?>>(ranges.size());
+    try {
+      for (int i = 0; i < ranges.size(); i++) {
+        val range = ranges.get(i);
+        val part = new File(file.getPath() + ".part" + i);
+        parts.add(part);
+        futures.add(executor.submit(() -> exportGzipPart(table, range, part)));
+      }
+
+      // Append in order while later ranges are still being copied
+      try (FileChannel out = FileChannel.open(file.toPath(), CREATE, TRUNCATE_EXISTING, WRITE)) {
+        for (int i = 0; i < parts.size(); i++) {
+          futures.get(i).get();
+          try (FileChannel in = FileChannel.open(parts.get(i).toPath(), READ)) {
+            long position = 0;
+            while (position < in.size()) {
+              position += in.transferTo(position, in.size() - position, out);
+            }
+          }
+
+          parts.get(i).delete();
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+      parts.forEach(File::delete);
+    }
+
+    log.info("Finished exporting '{}' to {} bytes in {}", table.getTableName(), file.length(), watch);
+  }
+
+  @SneakyThrows
+  private void exportGzipPart(ExportTable table, IdRange range, File part) {
+    try (GZIPOutputStream out =
+        new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(part), BUFFER_SIZE), BUFFER_SIZE)) {
+      export(table, range, null, out);
+    }
+  }
+
+  @SneakyThrows
+  private void export(ExportTable table, IdRange range, String release, OutputStream out) {
+    val sql = getCopySql(table, range, release);
+
+    @Cleanup
+    val connection = dataSource.getConnection();
+
+    log.info("Exporting table '{}' ids {} for release {}", table.getTableName(), range, release);
+    val rows = copy(sql, connection.unwrap(BaseConnection.class), out);
+    log.info("Finished exporting {} '{}' rows.", table.getTableName(), rows);
   }
 
   @SneakyThrows
-  private void export(String tableName, OutputStream out) {
+  private List<IdRange> getIdRanges(ExportTable table) {
     @Cleanup
     val connection = dataSource.getConnection();
+    @Cleanup
+    val statement = connection.createStatement();
+    @Cleanup
+    val resultSet = statement.executeQuery(format("SELECT min(id), max(id) FROM %s", table.getTableName()));
+    resultSet.next();
 
-    log.info("Exporting table '{}'", tableName);
-    val rows = copy(tableName, connection.unwrap(BaseConnection.class), out);
-    out.flush();
-    log.info("Finished exporting {} '{}' rows.", tableName, rows);
+    val minId = resultSet.getLong(1);
+    if (resultSet.wasNull()) {
+      return getIdRanges(null, null, rangeSize);
+    }
 
+    return getIdRanges(minId, resultSet.getLong(2), rangeSize);
+  }
+
+  /**
+   * Splits {@code [minId, maxId]} into consecutive ranges of at most {@code rangeSize} ids. The first and last ranges
+   * are open ended so that rows inserted while exporting are not missed.
+   */
+  static List<IdRange> getIdRanges(Long minId, Long maxId, long rangeSize) {
+    checkArgument(rangeSize > 0, "rangeSize must be positive");
+    val ranges = new ArrayList<IdRange>();
+    if (minId == null || maxId == null) {
+      ranges.add(new IdRange(null, null));
+      return ranges;
+    }
+
+    Long sinceId = null;
+    for (long untilId = minId - 1 + rangeSize; untilId < maxId; untilId += rangeSize) {
+      ranges.add(new IdRange(sinceId, untilId));
+      sinceId = untilId;
+    }
+    ranges.add(new IdRange(sinceId, null));
+
+    return ranges;
+  }
+
+  private static String getCopySql(ExportTable table, IdRange range, String release) {
+    val conditions = new ArrayList<String>();
+    if (range.getSinceId() != null) {
+      conditions.add("id > " + range.getSinceId());
+    }
+    if (range.getUntilId() != null) {
+      conditions.add("id <= " + range.getUntilId());
+    }
+    if (release != null) {
+      if (!table.isReleased()) {
+        throw new BadRequestException(format("Table '%s' has no creation release", table.getTableName()));
+      }
+      if (!RELEASE_PATTERN.matcher(release).matches()) {
+        throw new BadRequestException(format("Invalid release '%s'", release));
+      }
+
+      // COPY does not accept bind parameters, hence the validation above
+      conditions.add("creation_release = '" + release + "'");
+    }
+
+    if (conditions.isEmpty()) {
+      return format("COPY %s (%s) TO STDOUT", table.getTableName(), table.getColumns());
+    }
+
+    return format("COPY (SELECT %s FROM %s WHERE %s ORDER BY id) TO STDOUT",
+        table.getColumns(), table.getTableName(), AND.join(conditions));
   }
 
   @SneakyThrows
-  private static long copy(String tableName, BaseConnection connection, OutputStream out) {
+  private static long copy(String sql, BaseConnection connection, OutputStream out) {
     try {
       val copy = new CopyManager(connection);
-      return copy.copyOut("COPY " + tableName + " TO STDOUT", out);
+      return copy.copyOut(sql, out);
     } finally {
       out.flush();
     }
   }
 
+  /**
+   * Ids in {@code (sinceId, untilId]}, where {@code null} bounds are unbounded.
+   */
+  @lombok.Value
+  static class IdRange {
+
+    Long sinceId;
+    Long untilId;
+
+  }
+
 }
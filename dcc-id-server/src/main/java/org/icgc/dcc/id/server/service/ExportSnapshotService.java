@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.service;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.io.BaseEncoding;
+
+import lombok.Cleanup;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Materializes full table exports as gzipped files under {@code cache.dir/export} so that concurrent downloads share
+ * one {@code COPY} and one compression pass.
+ * <p>
+ * A snapshot is identified by its table's version (the row count and max id, or just the row count for analysis ids)
+ * and is only regenerated when that changes. The version is part of the file name, so a file left by an earlier run
+ * is only reused once the table has been checked to still be at that version. The previous snapshot is kept until the
+ * next one replaces it so in-flight downloads can finish.
+ */
+@Slf4j
+@Service
+public class ExportSnapshotService {
+
+  /**
+   * Constants.
+   */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Dependencies.
+   */
+  @Autowired
+  ExportService exportService;
+  @Autowired
+  DataSource dataSource;
+
+  /**
+   * Configuration.
+   */
+  @Getter
+  @Value("${export.snapshot.enabled:true}")
+  boolean enabled;
+  @Value("${cache.dir}")
+  String cacheDir;
+
+  /**
+   * State.
+   */
+  private final ConcurrentMap<ExportTable, Snapshot> snapshots = new ConcurrentHashMap<>();
+  private final ConcurrentMap<ExportTable, Object> locks = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the latest snapshot of {@code table}, materializing it first if there is none yet.
+   */
+  public Snapshot getSnapshot(@NonNull ExportTable table) {
+    val snapshot = snapshots.get(table);
+    return snapshot != null ? snapshot : refresh(table);
+  }
+
+  @Scheduled(initialDelayString = "${export.snapshot.interval:300000}",
+      fixedDelayString = "${export.snapshot.interval:300000}")
+  public void refreshAll() {
+    if (!enabled) {
+      return;
+    }
+
+    for (val table : ExportTable.values()) {
+      try {
+        refresh(table);
+      } catch (Exception e) {
+        log.error("Error refreshing '{}' snapshot", table.getTableName(), e);
+      }
+    }
+  }
+
+  /**
+   * Materializes {@code table} unless the latest snapshot is still current.
+   */
+  public Snapshot refresh(@NonNull ExportTable table) {
+    synchronized (locks.computeIfAbsent(table, key -> new Object())) {
+      val version = getVersion(table);
+      val current = snapshots.get(table);
+      if (current != null && current.getVersion().equals(version)) {
+        return current;
+      }
+
+      val file = getSnapshotFile(table, version);
+      if (!file.exists()) {
+        materialize(table, file);
+      }
+
+      val snapshot = new Snapshot(table, version, file, getMd5(file));
+      snapshots.put(table, snapshot);
+      purge(table, current);
+
+      return snapshot;
+    }
+  }
+
+  @SneakyThrows
+  private void materialize(ExportTable table, File file) {
+    log.info("Materializing '{}' snapshot {}...", table.getTableName(), file);
+    val watch = Stopwatch.createStarted();
+
+    val tempFile = new File(file.getPath() + ".tmp");
+    try {
+      exportService.exportGzip(table, tempFile);
+      writeMd5(file, tempFile);
+      Files.move(tempFile.toPath(), file.toPath(), ATOMIC_MOVE);
+    } finally {
+      tempFile.delete();
+    }
+
+    log.info("Materialized '{}' snapshot of {} bytes in {}", table.getTableName(), file.length(), watch);
+  }
+
+  /**
+   * Deletes all snapshot files of {@code table} except the latest and the one it replaced.
+   */
+  private void purge(ExportTable table, Snapshot previous) {
+    val latest = snapshots.get(table);
+    val prefix = table.getTableName() + "-";
+    val files = getSnapshotDir().listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".tsv.gz"));
+    if (files == null) {
+      return;
+    }
+
+    Arrays.stream(files)
+        .filter(file -> !file.equals(latest.getFile()))
+        .filter(file -> previous == null || !file.equals(previous.getFile()))
+        .forEach(file -> {
+          log.info("Deleting stale snapshot {}", file);
+          file.delete();
+          getMd5File(file).delete();
+        });
+  }
+
+  /**
+   * Returns the hex MD5 of {@code file}, computing it if the snapshot predates its checksum file.
+   */
+  @SneakyThrows
+  private static String getMd5(File file) {
+    val md5File = getMd5File(file);
+    if (!md5File.exists()) {
+      writeMd5(file, file);
+    }
+
+    return new String(Files.readAllBytes(md5File.toPath()), US_ASCII).trim();
+  }
+
+  @SneakyThrows
+  private static void writeMd5(File file, File content) {
+    val digest = MessageDigest.getInstance("MD5");
+    val buffer = new byte[BUFFER_SIZE];
+    try (InputStream in = new FileInputStream(content)) {
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, n);
+      }
+    }
+
+    val md5 = BaseEncoding.base16().lowerCase().encode(digest.digest());
+    Files.write(getMd5File(file).toPath(), md5.getBytes(US_ASCII));
+  }
+
+  private static File getMd5File(File file) {
+    return new File(file.getPath() + ".md5");
+  }
+
+  /**
+   * Proxy for the table's contents. Rows are only ever added, so the count changes with every insert, including those
+   * that commit an id below the max id. The max id is kept alongside for readability.
+   */
+  @SneakyThrows
+  private String getVersion(ExportTable table) {
+    val sql = table.isSequential() ?
+        format("SELECT count(*), max(id) FROM %s", table.getTableName()) :
+        format("SELECT count(*) FROM %s", table.getTableName());
+
+    @Cleanup
+    val connection = dataSource.getConnection();
+    @Cleanup
+    val statement = connection.createStatement();
+    @Cleanup
+    val resultSet = statement.executeQuery(sql);
+
+    if (!resultSet.next()) {
+      return "0";
+    }
+
+    val count = resultSet.getLong(1);
+    return table.isSequential() ? count + "-" + resultSet.getLong(2) : String.valueOf(count);
+  }
+
+  private File getSnapshotFile(ExportTable table, String version) {
+    return new File(getSnapshotDir(), table.getTableName() + "-" + version + ".tsv.gz");
+  }
+
+  private File getSnapshotDir() {
+    val dir = new File(cacheDir, "export");
+    dir.mkdirs();
+
+    return dir;
+  }
+
+  /**
+   * An immutable, gzipped export of one table version.
+   */
+  @lombok.Value
+  public static class Snapshot {
+
+    ExportTable table;
+    String version;
+    File file;
+
+    /**
+     * Hex MD5 of the file.
+     */
+    String md5;
+
+    public String getETag() {
+      return "\"" + table.getTableName() + "-" + version + "\"";
+    }
+
+    /**
+     * RFC 3230 instance digest, which applies to the whole file regardless of any requested range.
+     */
+    public String getDigest() {
+      return "md5=" + BaseEncoding.base64().encode(BaseEncoding.base16().lowerCase().decode(md5));
+    }
+
+    public long getLastModified() {
+      return file.lastModified();
+    }
+
+    public long getLength() {
+      return file.length();
+    }
+
+  }
+
+}
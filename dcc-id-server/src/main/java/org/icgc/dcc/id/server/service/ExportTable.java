@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Exported id tables and their columns in export order. Excludes derived columns such as {@code key_hash}.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum ExportTable {
+
+  PROJECT("project_ids", "id, project_id, creation_release", true),
+  DONOR("donor_ids", "id, donor_id, project_id, creation_release", true),
+  SPECIMEN("specimen_ids", "id, specimen_id, project_id, creation_release", true),
+  SAMPLE("sample_ids", "id, sample_id, project_id, creation_release", true),
+  MUTATION("mutation_ids",
+      "id, chromosome, chromosome_start, chromosome_end, mutation_type, mutation, assembly_version, creation_release",
+      true),
+  FILE("file_ids", "id, file_id", false),
+  ANALYSIS("analysis_ids", "id", false);
+
+  private final String tableName;
+  private final String columns;
+
+  /**
+   * Whether the table has a {@code creation_release} column.
+   */
+  private final boolean released;
+
+  /**
+   * Whether {@code id} is a generated sequence, as opposed to the submitted analysis id.
+   */
+  public boolean isSequential() {
+    return this != ANALYSIS;
+  }
+
+}
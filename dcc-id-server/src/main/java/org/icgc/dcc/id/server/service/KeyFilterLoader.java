@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013(c) The Ontario Institute for Cancer Research. All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the GNU Public
+ * License v3.0. You should have received a copy of the GNU General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.service;
+
+import java.util.List;
+
+import org.icgc.dcc.id.server.repository.AnalysisRepository;
+import org.icgc.dcc.id.server.repository.BaseRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Loads the repository key filters in the background once the server has started, then rebuilds them every
+ * {@code cache.keyFilter.interval} ms to pick up keys created by other servers. Until a filter is loaded its
+ * repository queries as usual.
+ */
+@Slf4j
+@Service
+public class KeyFilterLoader {
+
+  /**
+   * Dependencies.
+   */
+  @Autowired
+  List<BaseRepository> repositories;
+  @Autowired
+  AnalysisRepository analysisRepository;
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    val thread = new Thread(this::loadAll, "key-filter-loader");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Scheduled(initialDelayString = "${cache.keyFilter.interval:300000}",
+      fixedDelayString = "${cache.keyFilter.interval:300000}")
+  public synchronized void loadAll() {
+    for (val repository : repositories) {
+      if (repository.getKeyFilter() != null) {
+        load(repository.getKeyFilter().getName(), repository::loadKeyFilter);
+      }
+    }
+
+    if (analysisRepository.getKeyFilter() != null) {
+      load("analysis", analysisRepository::loadKeyFilter);
+    }
+  }
+
+  private static void load(String name, Runnable loader) {
+    try {
+      loader.run();
+    } catch (Exception e) {
+      // Leaves the filter answering "maybe", so lookups keep querying
+      log.error("Error loading '{}' key filter", name, e);
+    }
+  }
+
+}
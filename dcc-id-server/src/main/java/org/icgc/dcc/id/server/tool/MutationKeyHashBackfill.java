@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.tool;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.id.server.repository.MutationRepository.formatKeyHashExpression;
+
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import com.google.common.base.Stopwatch;
+
+import lombok.NoArgsConstructor;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Populates {@code mutation_ids.key_hash} for rows inserted before {@code sql/migration/mutation-key-hash.sql} was
+ * applied.
+ * <p>
+ * Rows are updated in id ranges, each in its own transaction, so the tool can be interrupted and re-run at any time and
+ * does not hold long running locks on a live table. The ranges are found through {@code mutation_ids_id_idx}, so the
+ * tool refuses to run until the migration has created it.
+ * <p>
+ * Usage: {@code MutationKeyHashBackfill <jdbc url> <user> <password> [batch size]}
+ */
+@Slf4j
+@NoArgsConstructor(access = PRIVATE)
+public final class MutationKeyHashBackfill {
+
+  /**
+   * Constants.
+   */
+  private static final int DEFAULT_BATCH_SIZE = 100_000;
+
+  public static void main(String... args) {
+    checkArgument(args.length >= 3, "Usage: MutationKeyHashBackfill <jdbc url> <user> <password> [batch size]");
+    val batchSize = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_BATCH_SIZE;
+
+    backfill(new DBI(args[0], args[1], args[2]), batchSize);
+  }
+
+  public static void backfill(DBI dbi, int batchSize) {
+    val sql = "UPDATE mutation_ids m SET key_hash = " + formatKeyHashExpression("m") + " "
+        + "WHERE m.id >= :fromId AND m.id < :toId AND m.key_hash IS NULL";
+
+    try (Handle handle = dbi.open()) {
+      // Without it every range would scan the whole table
+      val indexed = handle.createQuery("SELECT to_regclass('mutation_ids_id_idx') IS NOT NULL")
+          .mapTo(Boolean.class).first();
+      checkState(indexed, "Index mutation_ids_id_idx is missing, apply sql/migration/mutation-key-hash.sql first");
+
+      val minId = handle.createQuery("SELECT coalesce(min(id), 0) FROM mutation_ids").mapTo(Long.class).first();
+      val maxId = handle.createQuery("SELECT coalesce(max(id), 0) FROM mutation_ids").mapTo(Long.class).first();
+      log.info("Backfilling key_hash for ids [{}, {}] in batches of {}...", minId, maxId, batchSize);
+
+      val watch = Stopwatch.createStarted();
+      long updated = 0;
+      for (long fromId = minId; fromId <= maxId; fromId += batchSize) {
+        updated += handle.createStatement(sql)
+            .bind("fromId", fromId)
+            .bind("toId", fromId + batchSize)
+            .execute();
+
+        log.info("Backfilled {} rows up to id {} in {}", updated, Math.min(fromId + batchSize - 1, maxId), watch);
+      }
+
+      log.info("Finished backfilling {} rows in {}", updated, watch);
+    }
+  }
+
+}
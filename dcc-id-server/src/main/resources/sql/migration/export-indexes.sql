@@ -0,0 +1,36 @@
+-- Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+--
+-- This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+-- You should have received a copy of the GNU General Public License along with
+-- this program. If not, see <http://www.gnu.org/licenses/>.
+--
+-- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+-- EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+-- OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+-- SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+-- INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+-- TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+-- OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+-- IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+-- ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+/* 
+ * Adds the indexes used by the filtered /<entity>/export endpoints (PostgreSQL only).
+ *
+ * The id tables are keyed by their business keys, so "WHERE id > ? ORDER BY id" and "WHERE creation_release = ?" 
+ * would otherwise scan the whole table.
+ */
+
+/* Must not run inside a transaction block */
+CREATE INDEX CONCURRENTLY IF NOT EXISTS project_ids_id_idx  ON project_ids  (id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS donor_ids_id_idx    ON donor_ids    (id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS specimen_ids_id_idx ON specimen_ids (id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS sample_ids_id_idx   ON sample_ids   (id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS mutation_ids_id_idx ON mutation_ids (id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS file_ids_id_idx     ON file_ids     (id);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS project_ids_creation_release_idx  ON project_ids  (creation_release, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS donor_ids_creation_release_idx    ON donor_ids    (creation_release, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS specimen_ids_creation_release_idx ON specimen_ids (creation_release, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS sample_ids_creation_release_idx   ON sample_ids   (creation_release, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS mutation_ids_creation_release_idx ON mutation_ids (creation_release, id);
@@ -0,0 +1,48 @@
+-- Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+--
+-- This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+-- You should have received a copy of the GNU General Public License along with
+-- this program. If not, see <http://www.gnu.org/licenses/>.
+--
+-- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+-- EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+-- OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+-- SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+-- INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+-- TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+-- OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+-- IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+-- ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+/* 
+ * Adds a 128 bit digest of the mutation key to mutation_ids (PostgreSQL only).
+ *
+ * New rows are populated by trigger. Existing rows are populated by MutationKeyHashBackfill, after which
+ * id.mutation.keyHash can be set to route lookups through the key_hash index.
+ */
+
+ALTER TABLE mutation_ids ADD COLUMN IF NOT EXISTS key_hash UUID;
+
+CREATE OR REPLACE FUNCTION mutation_ids_key_hash() RETURNS trigger AS $$
+BEGIN
+  NEW.key_hash := md5(
+    NEW.chromosome       || chr(9) || 
+    NEW.chromosome_start || chr(9) || 
+    NEW.chromosome_end   || chr(9) || 
+    NEW.mutation_type    || chr(9) || 
+    NEW.mutation         || chr(9) || 
+    NEW.assembly_version)::uuid;
+  RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS mutation_ids_key_hash ON mutation_ids;
+CREATE TRIGGER mutation_ids_key_hash 
+  BEFORE INSERT ON mutation_ids 
+  FOR EACH ROW EXECUTE PROCEDURE mutation_ids_key_hash();
+
+/* Must not run inside a transaction block */
+CREATE INDEX CONCURRENTLY IF NOT EXISTS mutation_ids_key_hash_idx ON mutation_ids (key_hash);
+
+/* MutationKeyHashBackfill updates rows in id ranges. Also created by export-indexes.sql */
+CREATE INDEX CONCURRENTLY IF NOT EXISTS mutation_ids_id_idx ON mutation_ids (id);
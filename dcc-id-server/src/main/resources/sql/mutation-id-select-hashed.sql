@@ -0,0 +1,29 @@
+-- Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+--
+-- This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+-- You should have received a copy of the GNU General Public License along with
+-- this program. If not, see <http://www.gnu.org/licenses/>.
+--
+-- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+-- EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+-- OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+-- SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+-- INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+-- TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+-- OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+-- IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+-- ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+/* Find mutation id using the key_hash index, verifying the full key on match */
+SELECT
+	m.id 
+FROM
+	mutation_ids m
+WHERE 
+	m.key_hash         = md5(:chromosome || chr(9) || :chromosomeStart || chr(9) || :chromosomeEnd || chr(9) || :mutationType || chr(9) || :mutation || chr(9) || :assemblyVersion)::uuid AND
+	m.chromosome       = :chromosome      AND 
+	m.chromosome_start = :chromosomeStart AND
+	m.chromosome_end   = :chromosomeEnd   AND
+	m.mutation_type    = :mutationType    AND
+	m.mutation         = :mutation        AND
+	m.assembly_version = :assemblyVersion
@@ -116,3 +116,17 @@ CREATE TABLE file_ids
 
   PRIMARY KEY(file_id)
 );
+
+/* Create export indexes. See migration/export-indexes.sql */
+CREATE INDEX project_ids_id_idx  ON project_ids  (id);
+CREATE INDEX donor_ids_id_idx    ON donor_ids    (id);
+CREATE INDEX specimen_ids_id_idx ON specimen_ids (id);
+CREATE INDEX sample_ids_id_idx   ON sample_ids   (id);
+CREATE INDEX mutation_ids_id_idx ON mutation_ids (id);
+CREATE INDEX file_ids_id_idx     ON file_ids     (id);
+
+CREATE INDEX project_ids_creation_release_idx  ON project_ids  (creation_release, id);
+CREATE INDEX donor_ids_creation_release_idx    ON donor_ids    (creation_release, id);
+CREATE INDEX specimen_ids_creation_release_idx ON specimen_ids (creation_release, id);
+CREATE INDEX sample_ids_creation_release_idx   ON sample_ids   (creation_release, id);
+CREATE INDEX mutation_ids_creation_release_idx ON mutation_ids (creation_release, id);
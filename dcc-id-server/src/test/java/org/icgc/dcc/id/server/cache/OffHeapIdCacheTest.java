@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013(c) The Ontario Institute for Cancer Research. All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the GNU Public
+ * License v3.0. You should have received a copy of the GNU General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.cache;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.icgc.dcc.id.core.MutationKeyCodec;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import lombok.val;
+
+public class OffHeapIdCacheTest {
+
+  /**
+   * Smallest cache, a single 4 entry bucket per segment.
+   */
+  private static final long MIN_BYTES = 64 * 4 * 24;
+  private static final long BYTES = 1024 * 1024;
+
+  private static final int THREADS = 8;
+  private static final int KEYS = 2000;
+
+  @Test
+  public void testPutGet() {
+    val cache = new OffHeapIdCache("mutation", "MU", BYTES);
+
+    cache.put("key", "MU1");
+    cache.put(ImmutableList.of("1", "100"), "MU2");
+    cache.put(MutationKeyCodec.encode("1", "100", "100", "A>T", "single base substitution", "GRCh37"), "MU3");
+
+    assertThat(cache.get("key", String.class)).isEqualTo("MU1");
+    assertThat(cache.get(ImmutableList.of("1", "100")).get()).isEqualTo("MU2");
+    assertThat(cache.get(MutationKeyCodec.encode("1", "100", "100", "A>T", "single base substitution", "GRCh37"),
+        String.class)).isEqualTo("MU3");
+    assertThat(cache.get("other")).isNull();
+    assertThat(cache.getObjectCount()).isEqualTo(3);
+
+    // Replacing keeps a single entry
+    cache.put("key", "MU4");
+    assertThat(cache.get("key", String.class)).isEqualTo("MU4");
+    assertThat(cache.getObjectCount()).isEqualTo(3);
+
+    // First writer wins
+    assertThat(cache.putIfAbsent("key", "MU5").get()).isEqualTo("MU4");
+    assertThat(cache.putIfAbsent("new", "MU6")).isNull();
+    assertThat(cache.get("new", String.class)).isEqualTo("MU6");
+
+    // Ids that don't fit the prefix are not cached
+    cache.put("foreign", "DO1");
+    cache.put("text", "MUx");
+    assertThat(cache.get("foreign")).isNull();
+    assertThat(cache.get("text")).isNull();
+
+    cache.evict("key");
+    assertThat(cache.get("key")).isNull();
+    assertThat(cache.getObjectCount()).isEqualTo(3);
+
+    cache.clear();
+    assertThat(cache.get("new")).isNull();
+    assertThat(cache.getObjectCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testEviction() {
+    val cache = new OffHeapIdCache("mutation", "MU", MIN_BYTES);
+    assertThat(cache.getCapacity()).isEqualTo(256);
+
+    for (int i = 0; i < KEYS; i++) {
+      cache.put("key" + i, "MU" + i);
+
+      // The latest entry always survives, whichever resident entry of its bucket it replaced
+      assertThat(cache.get("key" + i, String.class)).isEqualTo("MU" + i);
+    }
+
+    assertThat(cache.getObjectCount()).isLessThanOrEqualTo(cache.getCapacity());
+    assertThat(cache.getEvictionCount()).isEqualTo(KEYS - cache.getObjectCount());
+
+    // Surviving entries still map to their own ids
+    int hits = 0;
+    for (int i = 0; i < KEYS; i++) {
+      val value = cache.get("key" + i, String.class);
+      if (value != null) {
+        assertThat(value).isEqualTo("MU" + i);
+        hits++;
+      }
+    }
+    assertThat((long) hits).isEqualTo(cache.getObjectCount());
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentAccess() throws Exception {
+    val cache = new OffHeapIdCache("mutation", "MU", MIN_BYTES);
+    val executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      val futures = new ArrayList<Future<?>>();
+      for (int t = 0; t < THREADS; t++) {
+        futures.add(executor.submit(() -> {
+          // Threads share keys and race on the few buckets, but each key only ever maps to one id
+          for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < KEYS; i++) {
+              cache.put("key" + i, "MU" + i);
+              val value = cache.get("key" + i, String.class);
+              if (value != null) {
+                assertThat(value).isEqualTo("MU" + i);
+              }
+            }
+          }
+        }));
+      }
+
+      for (val future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, MINUTES);
+    }
+
+    assertThat(cache.getObjectCount()).isEqualTo(cache.getCapacity());
+    assertThat(cache.getPutCount()).isEqualTo((long) THREADS * 20 * KEYS);
+  }
+
+  @Test
+  public void testSaveLoad() throws Exception {
+    val cache = new OffHeapIdCache("mutation", "MU", BYTES);
+    for (int i = 0; i < KEYS; i++) {
+      cache.put("key" + i, "MU" + i);
+    }
+
+    val bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      cache.save(out);
+    }
+
+    val restored = new OffHeapIdCache("mutation", "MU", BYTES);
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      assertThat(restored.load(in)).isTrue();
+    }
+
+    assertThat(restored.getObjectCount()).isEqualTo(cache.getObjectCount());
+    for (int i = 0; i < KEYS; i++) {
+      assertThat(restored.get("key" + i, String.class)).isEqualTo(cache.get("key" + i, String.class));
+    }
+
+    // A differently sized cache has a different layout
+    val resized = new OffHeapIdCache("mutation", "MU", 2 * BYTES);
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      assertThat(resized.load(in)).isFalse();
+    }
+    assertThat(resized.getObjectCount()).isEqualTo(0);
+  }
+
+}
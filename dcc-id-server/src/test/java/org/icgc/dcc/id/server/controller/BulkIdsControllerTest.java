@@ -0,0 +1,180 @@
+/*
+ * Copyright 2013(c) The Ontario Institute for Cancer Research. All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the GNU Public
+ * License v3.0. You should have received a copy of the GNU General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.controller;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import lombok.SneakyThrows;
+import lombok.val;
+
+/**
+ * Exercises the {@code /ids} endpoints of the donor, specimen, sample and mutation controllers with bodies spanning
+ * several batches.
+ */
+@SpringBootTest
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestPropertySource("classpath:application-test.properties")
+@ActiveProfiles({ "test", "development" })
+public class BulkIdsControllerTest {
+
+  /**
+   * More than two batches.
+   */
+  private static final int KEYS = 2500;
+  private static final int BATCH_SIZE = 1000;
+
+  @Autowired
+  private WebApplicationContext context;
+
+  private MockMvc mvc;
+  private String projectId;
+
+  @Before
+  public void setUp() {
+    mvc = MockMvcBuilders.webAppContextSetup(context).build();
+    projectId = UUID.randomUUID().toString();
+  }
+
+  @Test
+  public void testDonorIds() {
+    verifyIds("/donor/ids", "submittedDonorId", "DO");
+  }
+
+  @Test
+  public void testSpecimenIds() {
+    verifyIds("/specimen/ids", "submittedSpecimenId", "SP");
+  }
+
+  @Test
+  public void testSampleIds() {
+    verifyIds("/sample/ids", "submittedSampleId", "SA");
+  }
+
+  @Test
+  public void testMalformedJson() throws Exception {
+    mvc.perform(post("/donor/ids")
+        .param("submittedProjectId", projectId)
+        .contentType(BulkKeyReader.NDJSON_CONTENT_TYPE)
+        .content("{\"submittedDonorId\":"))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void testDonorIdsRollback() {
+    verifyRollback("/donor/ids", getSubmittedIds());
+  }
+
+  @Test
+  public void testSpecimenIdsRollback() {
+    verifyRollback("/specimen/ids", getSubmittedIds());
+  }
+
+  @Test
+  public void testSampleIdsRollback() {
+    verifyRollback("/sample/ids", getSubmittedIds());
+  }
+
+  @Test
+  public void testMutationIdsRollback() {
+    val mutations = IntStream.range(0, KEYS)
+        .mapToObj(i -> String.join("\t", projectId, String.valueOf(i), String.valueOf(i), "A>T",
+            "single base substitution", "GRCh37"))
+        .collect(toList());
+
+    verifyRollback("/mutation/ids", mutations);
+  }
+
+  private void verifyIds(String path, String fieldName, String prefix) {
+    val submittedIds = IntStream.range(0, KEYS).mapToObj(i -> "S" + i).toArray(String[]::new);
+
+    // Lookups of unknown keys leave empty lines
+    val missing = postIds(path, "text/plain", String.join("\n", submittedIds), false);
+    assertThat(missing).hasSize(KEYS).containsOnly("");
+
+    val created = postIds(path, "text/plain", String.join("\n", submittedIds), true);
+    assertThat(created).hasSize(KEYS).doesNotHaveDuplicates().allMatch(id -> id.matches(prefix + "\\d+"));
+
+    // The same keys as JSON, in reverse order, with a blank line and an unknown key at the end
+    val json = IntStream.range(0, KEYS)
+        .mapToObj(i -> "{\"" + fieldName + "\":\"" + submittedIds[KEYS - 1 - i] + "\"}")
+        .collect(joining("\n")) + "\n\n{\"" + fieldName + "\":\"unknown\"}";
+    val found = postIds(path, BulkKeyReader.NDJSON_CONTENT_TYPE, json, false);
+    assertThat(found).hasSize(KEYS + 1);
+    for (int i = 0; i < KEYS; i++) {
+      assertThat(found.get(i)).isEqualTo(created.get(KEYS - 1 - i));
+    }
+    assertThat(found.get(KEYS)).isEmpty();
+  }
+
+  private void verifyRollback(String path, List<String> lines) {
+    // A malformed line in the second batch, after the first has been resolved
+    val malformed = new ArrayList<String>(lines);
+    malformed.set(BATCH_SIZE, "malformed\tline");
+    postIds(path, "text/plain", String.join("\n", malformed), true, status().isBadRequest());
+
+    // Nothing was created, including the first batch
+    val found = postIds(path, "text/plain", String.join("\n", lines), false);
+    assertThat(found).hasSize(lines.size()).containsOnly("");
+  }
+
+  private static List<String> getSubmittedIds() {
+    return IntStream.range(0, KEYS).mapToObj(i -> "S" + i).collect(toList());
+  }
+
+  private List<String> postIds(String path, String contentType, String body, boolean create) {
+    return postIds(path, contentType, body, create, status().isOk());
+  }
+
+  @SneakyThrows
+  private List<String> postIds(String path, String contentType, String body, boolean create, ResultMatcher expected) {
+    val result = mvc.perform(post(path)
+        .param("submittedProjectId", projectId)
+        .param("create", String.valueOf(create))
+        .contentType(contentType)
+        .content(body))
+        .andExpect(expected)
+        .andReturn();
+
+    // Every id is terminated by a newline
+    val lines = Arrays.asList(result.getResponse().getContentAsString().split("\n", -1));
+    return lines.subList(0, lines.size() - 1);
+  }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.controller;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+
+import org.icgc.dcc.id.server.service.ExportSnapshotService;
+import org.icgc.dcc.id.server.service.ExportSnapshotService.Snapshot;
+import org.icgc.dcc.id.server.service.ExportTable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import lombok.SneakyThrows;
+import lombok.val;
+
+public class ExportSnapshotSenderTest {
+
+  private static final String CONTENT = "0123456789";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private ExportSnapshotSender sender;
+  private Snapshot snapshot;
+
+  @Before
+  @SneakyThrows
+  public void setUp() {
+    val file = tmp.newFile("donor_ids-40-42.tsv.gz");
+    Files.write(file.toPath(), CONTENT.getBytes(UTF_8));
+    snapshot = new Snapshot(ExportTable.DONOR, "40-42", file, "781e5e245d69b566979b86e28d23f2c7");
+
+    val snapshotService = mock(ExportSnapshotService.class);
+    when(snapshotService.isEnabled()).thenReturn(true);
+    when(snapshotService.getSnapshot(ExportTable.DONOR)).thenReturn(snapshot);
+    sender = new ExportSnapshotSender(snapshotService);
+  }
+
+  @Test
+  public void testSend() throws Exception {
+    val response = send(request());
+
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(response.getHeader("ETag")).isEqualTo("\"donor_ids-40-42\"");
+    assertThat(response.getHeader("Digest")).isEqualTo("md5=eB5eJF1ptWaXm4bijSPyxw==");
+    assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+  }
+
+  @Test
+  public void testSendWithoutGzip() throws Exception {
+    val request = new MockHttpServletRequest("GET", "/donor/export");
+    val response = new MockHttpServletResponse();
+
+    assertThat(sender.send(ExportTable.DONOR, request, response)).isFalse();
+    assertThat(response.getContentAsString()).isEmpty();
+  }
+
+  @Test
+  public void testNotModified() throws Exception {
+    val request = request();
+    request.addHeader("If-None-Match", "\"donor_ids-40-42\"");
+    val response = send(request);
+
+    assertThat(response.getStatus()).isEqualTo(304);
+    assertThat(response.getContentAsString()).isEmpty();
+  }
+
+  @Test
+  public void testModified() throws Exception {
+    val request = request();
+    request.addHeader("If-None-Match", "\"donor_ids-41\"");
+
+    assertThat(send(request).getStatus()).isEqualTo(200);
+  }
+
+  @Test
+  public void testRange() throws Exception {
+    val request = request();
+    request.addHeader("Range", "bytes=2-5");
+    val response = send(request);
+
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.getHeader("Content-Range")).isEqualTo("bytes 2-5/10");
+    assertThat(response.getContentAsString()).isEqualTo("2345");
+  }
+
+  @Test
+  public void testOpenRange() throws Exception {
+    val request = request();
+    request.addHeader("Range", "bytes=7-");
+    val response = send(request);
+
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.getContentAsString()).isEqualTo("789");
+  }
+
+  @Test
+  public void testSuffixRange() throws Exception {
+    val request = request();
+    request.addHeader("Range", "bytes=-3");
+    val response = send(request);
+
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.getHeader("Content-Range")).isEqualTo("bytes 7-9/10");
+    assertThat(response.getContentAsString()).isEqualTo("789");
+  }
+
+  @Test
+  public void testUnsatisfiableRange() throws Exception {
+    val request = request();
+    request.addHeader("Range", "bytes=10-");
+    val response = send(request);
+
+    assertThat(response.getStatus()).isEqualTo(416);
+    assertThat(response.getHeader("Content-Range")).isEqualTo("bytes */10");
+  }
+
+  @Test
+  public void testStaleIfRange() throws Exception {
+    val request = request();
+    request.addHeader("Range", "bytes=2-5");
+    request.addHeader("If-Range", "\"donor_ids-41\"");
+    val response = send(request);
+
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+  }
+
+  @Test
+  public void testSendfile() throws Exception {
+    val request = request();
+    request.setAttribute("org.apache.tomcat.sendfile.support", true);
+    request.addHeader("Range", "bytes=2-5");
+    val response = send(request);
+
+    assertThat(response.getContentAsString()).isEmpty();
+    assertThat(request.getAttribute("org.apache.tomcat.sendfile.filename"))
+        .isEqualTo(snapshot.getFile().getCanonicalPath());
+    assertThat(request.getAttribute("org.apache.tomcat.sendfile.start")).isEqualTo(2L);
+    assertThat(request.getAttribute("org.apache.tomcat.sendfile.end")).isEqualTo(6L);
+  }
+
+  private MockHttpServletResponse send(MockHttpServletRequest request) throws Exception {
+    val response = new MockHttpServletResponse();
+    assertThat(sender.send(ExportTable.DONOR, request, response)).isTrue();
+
+    return response;
+  }
+
+  private static MockHttpServletRequest request() {
+    val request = new MockHttpServletRequest("GET", "/donor/export");
+    request.addHeader("Accept-Encoding", "gzip, deflate");
+
+    return request;
+  }
+
+}
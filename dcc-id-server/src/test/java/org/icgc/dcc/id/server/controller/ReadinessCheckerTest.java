@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013(c) The Ontario Institute for Cancer Research. All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the GNU Public
+ * License v3.0. You should have received a copy of the GNU General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.controller;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import lombok.val;
+
+@SpringBootTest
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestPropertySource("classpath:application-test.properties")
+@ActiveProfiles({ "test", "development" })
+public class ReadinessCheckerTest {
+
+  @Autowired
+  private ReadinessChecker readinessChecker;
+  @Autowired
+  private HikariDataSource dataSource;
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testCheck() {
+    val result = readinessChecker.check();
+
+    assertThat(result).containsKeys("ready", "db", "pool", "threads", "exports", "caches");
+    assertThat(result.get("ready")).isEqualTo(true);
+    assertThat((Map<String, Object>) result.get("db")).containsKey("latencyMs");
+    assertThat((Map<String, Object>) result.get("exports")).containsEntry("inFlight", 0);
+  }
+
+  @Test(timeout = 60000)
+  @SuppressWarnings("unchecked")
+  public void testExhaustedPool() throws Exception {
+    val connections = new ArrayList<Connection>();
+    try {
+      for (int i = 0; i < dataSource.getMaximumPoolSize(); i++) {
+        connections.add(dataSource.getConnection());
+      }
+
+      val start = System.nanoTime();
+      val result = readinessChecker.check();
+
+      // Fails within the latency budget rather than after the pool's connection timeout
+      assertThat(NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(dataSource.getConnectionTimeout());
+      assertThat(result.get("ready")).isEqualTo(false);
+      assertThat((Map<String, Object>) result.get("db")).containsEntry("ready", false).containsKey("error");
+    } finally {
+      for (val connection : connections) {
+        connection.close();
+      }
+    }
+
+    // The connection borrowed for the timed out check is returned
+    while (!Boolean.TRUE.equals(readinessChecker.check().get("ready"))) {
+      Thread.sleep(10);
+    }
+  }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.repository;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.icgc.dcc.id.server.repository.MutationRepository.formatKeyHashExpression;
+
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import com.google.common.base.Stopwatch;
+
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compares lookups against the six column primary key of {@code mutation_ids} with lookups through the
+ * {@code key_hash} index on a generated table.
+ * <p>
+ * Requires a PostgreSQL database, e.g.:
+ * 
+ * <pre>
+ * mvn test -Dtest=MutationKeyHashBenchmark -Dbenchmark.url=jdbc:postgresql://localhost/bench -Dbenchmark.user=...
+ * </pre>
+ */
+@Slf4j
+@Ignore("For development only")
+public class MutationKeyHashBenchmark {
+
+  /**
+   * Configuration.
+   */
+  private static final String URL = System.getProperty("benchmark.url", "jdbc:postgresql://localhost/bench");
+  private static final String USER = System.getProperty("benchmark.user", "postgres");
+  private static final String PASSWORD = System.getProperty("benchmark.password", "");
+  private static final long ROWS = Long.getLong("benchmark.rows", 100_000_000L);
+  private static final int LOOKUPS = Integer.getInteger("benchmark.lookups", 100_000);
+
+  private static final String PLAIN_TABLE = "bench_mutation_ids_plain";
+  private static final String HASHED_TABLE = "bench_mutation_ids_hashed";
+  private static final String KEY_COLUMNS =
+      "chromosome, chromosome_start, chromosome_end, mutation_type, mutation, assembly_version";
+  private static final String[] MUTATION_TYPES = { "single base substitution", "insertion of <=200bp",
+      "deletion of <=200bp" };
+  private static final String[] MUTATIONS = { "A>T", "C>G", "G>A", "T>C", "->AT", "AT>-" };
+
+  @Test
+  public void testBenchmark() {
+    try (Handle handle = new DBI(URL, USER, PASSWORD).open()) {
+      createTable(handle, PLAIN_TABLE, false);
+      createTable(handle, HASHED_TABLE, true);
+
+      report(handle, PLAIN_TABLE, lookup(handle, PLAIN_TABLE, false));
+      report(handle, HASHED_TABLE, lookup(handle, HASHED_TABLE, true));
+    }
+  }
+
+  private static void createTable(Handle handle, String table, boolean hashed) {
+    val watch = Stopwatch.createStarted();
+    handle.execute("DROP TABLE IF EXISTS " + table);
+    handle.execute("CREATE TABLE " + table + " ("
+        + "id BIGINT NOT NULL, "
+        + "chromosome VARCHAR(512) NOT NULL, chromosome_start VARCHAR(512) NOT NULL, "
+        + "chromosome_end VARCHAR(512) NOT NULL, mutation_type VARCHAR(512) NOT NULL, "
+        + "mutation VARCHAR(512) NOT NULL, assembly_version VARCHAR(512) NOT NULL, "
+        + "creation_release VARCHAR(512) NOT NULL"
+        + (hashed ? ", key_hash UUID" : "") + ")");
+
+    // Deterministic keys so both tables hold the same rows
+    handle.createStatement("INSERT INTO " + table + " SELECT "
+        + "g, " + chromosome("g") + ", " + start("g") + ", " + end("g") + ", "
+        + mutationType("g") + ", " + mutation("g") + ", 'GRCh37', '1'"
+        + (hashed ? ", NULL" : "") + " FROM generate_series(1, :rows) g")
+        .bind("rows", ROWS)
+        .execute();
+
+    if (hashed) {
+      handle.execute("UPDATE " + table + " t SET key_hash = " + formatKeyHashExpression("t"));
+      handle.execute("CREATE INDEX ON " + table + " (key_hash)");
+    }
+    handle.execute("ALTER TABLE " + table + " ADD PRIMARY KEY (" + KEY_COLUMNS + ")");
+    handle.execute("VACUUM ANALYZE " + table);
+
+    log.info("Built '{}' with {} rows in {}", table, ROWS, watch);
+  }
+
+  private static double lookup(Handle handle, String table, boolean hashed) {
+    val sql = "SELECT t.id FROM " + table + " t WHERE "
+        + (hashed ? "t.key_hash = md5(:chromosome || chr(9) || :chromosomeStart || chr(9) || :chromosomeEnd || chr(9) "
+            + "|| :mutationType || chr(9) || :mutation || chr(9) || :assemblyVersion)::uuid AND " : "")
+        + "t.chromosome = :chromosome AND t.chromosome_start = :chromosomeStart AND "
+        + "t.chromosome_end = :chromosomeEnd AND t.mutation_type = :mutationType AND "
+        + "t.mutation = :mutation AND t.assembly_version = :assemblyVersion";
+
+    val random = new Random(1);
+    val watch = Stopwatch.createStarted();
+    for (int i = 0; i < LOOKUPS; i++) {
+      val g = 1 + (long) (random.nextDouble() * ROWS);
+      handle.createQuery(sql)
+          .bind("chromosome", String.valueOf(1 + g % 24))
+          .bind("chromosomeStart", String.valueOf(g))
+          .bind("chromosomeEnd", String.valueOf(g + g % 3))
+          .bind("mutationType", MUTATION_TYPES[(int) (g % MUTATION_TYPES.length)])
+          .bind("mutation", MUTATIONS[(int) (g % MUTATIONS.length)])
+          .bind("assemblyVersion", "GRCh37")
+          .mapTo(Long.class)
+          .first();
+    }
+
+    return LOOKUPS / (watch.elapsed(NANOSECONDS) / 1e9);
+  }
+
+  private static void report(Handle handle, String table, double lookupsPerSecond) {
+    val tableSize = handle.createQuery("SELECT pg_size_pretty(pg_table_size(CAST(:table AS regclass)))")
+        .bind("table", table).mapTo(String.class).first();
+    val indexSize = handle.createQuery("SELECT pg_size_pretty(pg_indexes_size(CAST(:table AS regclass)))")
+        .bind("table", table).mapTo(String.class).first();
+
+    log.info("{}: table = {}, indexes = {}, lookups/sec = {}", table, tableSize, indexSize,
+        String.format("%.0f", lookupsPerSecond));
+  }
+
+  /**
+   * Key generators, mirrored in {@link #lookup(Handle, String, boolean)}.
+   */
+  private static String chromosome(String g) {
+    return "(1 + " + g + " % 24)::text";
+  }
+
+  private static String start(String g) {
+    return g + "::text";
+  }
+
+  private static String end(String g) {
+    return "(" + g + " + " + g + " % 3)::text";
+  }
+
+  private static String mutationType(String g) {
+    return "(ARRAY['" + String.join("','", MUTATION_TYPES) + "'])[1 + " + g + " % " + MUTATION_TYPES.length + "]";
+  }
+
+  private static String mutation(String g) {
+    return "(ARRAY['" + String.join("','", MUTATIONS) + "'])[1 + " + g + " % " + MUTATIONS.length + "]";
+  }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013(c) The Ontario Institute for Cancer Research. All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the GNU Public
+ * License v3.0. You should have received a copy of the GNU General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+import lombok.val;
+
+/**
+ * Runs {@link RepositoryConcurrencyTest} against PostgreSQL, which exercises the {@code ON CONFLICT} and set-based
+ * paths that H2 skips. Opt-in, since it needs a disposable database whose tables are dropped and recreated:
+ * 
+ * <pre>
+ * mvn test -Dtest=PostgresRepositoryConcurrencyTest -Ddcc.id.test.postgres.url=jdbc:postgresql://localhost/dcc_identifier_test
+ * </pre>
+ * 
+ * Credentials default to {@code postgres} with an empty password and may be set with
+ * {@code -Ddcc.id.test.postgres.username} and {@code -Ddcc.id.test.postgres.password}.
+ */
+@ActiveProfiles(value = "test", inheritProfiles = false)
+@TestPropertySource(properties = {
+    "spring.datasource.url=${dcc.id.test.postgres.url}",
+    "spring.datasource.username=${dcc.id.test.postgres.username:postgres}",
+    "spring.datasource.password=${dcc.id.test.postgres.password:}",
+    "spring.datasource.driverClassName=org.postgresql.Driver",
+    "spring.datasource.schema=classpath:/sql/schema.sql",
+    "export.snapshot.enabled=false" })
+public class PostgresRepositoryConcurrencyTest extends RepositoryConcurrencyTest {
+
+  static final String URL_PROPERTY = "dcc.id.test.postgres.url";
+
+  @BeforeClass
+  public static void checkDatabase() {
+    assumeTrue(URL_PROPERTY + " is not set", !Strings.isNullOrEmpty(System.getProperty(URL_PROPERTY)));
+  }
+
+  @Test
+  public void testUpsertPaths() {
+    val repository = dbi.open(DonorRepository.class);
+    try {
+      assertThat(repository.isPostgres()).isTrue();
+    } finally {
+      repository.close();
+    }
+
+    val analysisRepository = dbi.open(AnalysisRepository.class);
+    try {
+      assertThat(analysisRepository.isUpsertSupported()).isTrue();
+    } finally {
+      analysisRepository.close();
+    }
+  }
+
+  @Test
+  public void testAllocatedIds() {
+    val projectId = UUID.randomUUID().toString();
+    val repository = dbi.open(DonorRepository.class);
+    try {
+      repository.setIdAllocator(new IdAllocator(dbi, 100, 60000));
+
+      // Bulk inserts carry ids from one reserved block, which single inserts draw past
+      val bulk = parseIds(repository.findIds(true, ImmutableList.of("DO-a", "DO-b", "DO-c"), projectId, "1"));
+      val single = parseId(repository.findId(true, "DO-single", projectId, "1"));
+      val next = parseIds(repository.findIds(true, ImmutableList.of("DO-d"), projectId, "1"));
+      assertThat(bulk[1]).isEqualTo(bulk[0] + 1);
+      assertThat(bulk[2]).isEqualTo(bulk[0] + 2);
+      assertThat(next[0]).isEqualTo(bulk[0] + 3).isLessThan(single);
+
+      // No further behind than the block size
+      assertThat(single - next[0]).isLessThanOrEqualTo(100);
+    } finally {
+      repository.close();
+    }
+  }
+
+  @Test
+  public void testExpiredBlock() {
+    val projectId = UUID.randomUUID().toString();
+    val repository = dbi.open(DonorRepository.class);
+    try {
+      repository.setIdAllocator(new IdAllocator(dbi, 100, 0));
+
+      // The rest of an expired block is dropped rather than served behind newer ids
+      val bulk = parseIds(repository.findIds(true, ImmutableList.of("DO-a"), projectId, "1"));
+      val single = parseId(repository.findId(true, "DO-single", projectId, "1"));
+      val next = parseIds(repository.findIds(true, ImmutableList.of("DO-b"), projectId, "1"));
+      assertThat(single).isGreaterThan(bulk[0]);
+      assertThat(next[0]).isGreaterThan(single);
+    } finally {
+      repository.close();
+    }
+  }
+
+  private static long parseId(String id) {
+    return Long.parseLong(id.substring("DO".length()));
+  }
+
+  private static long[] parseIds(List<String> ids) {
+    return ids.stream().mapToLong(PostgresRepositoryConcurrencyTest::parseId).toArray();
+  }
+
+}
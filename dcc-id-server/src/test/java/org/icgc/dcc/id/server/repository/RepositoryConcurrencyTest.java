@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.repository;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.logging.NoOpLog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+
+import lombok.val;
+
+@SpringBootTest
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestPropertySource("classpath:application-test.properties")
+@ActiveProfiles({ "test", "development" })
+public class RepositoryConcurrencyTest {
+
+  /**
+   * Constants.
+   */
+  private static final int THREADS = 16;
+  private static final int KEYS = 50;
+
+  /**
+   * Statement bounds per call. The upsert path needs at most a select, an upsert and a fallback select. The legacy
+   * path needs a select plus an insert and a select for each retry.
+   */
+  private static final int MAX_UPSERT_STATEMENTS = 3;
+  private static final int MAX_LEGACY_STATEMENTS = 9;
+
+  /**
+   * Dependencies.
+   */
+  @Autowired
+  private DataSource dataSource;
+
+  /**
+   * State.
+   */
+  final CountingLog log = new CountingLog();
+  DBI dbi;
+
+  @Before
+  public void setUp() {
+    dbi = new DBI(dataSource);
+    dbi.setSQLLog(log);
+  }
+
+  @Test
+  public void testConcurrentCreate() throws Exception {
+    val projectId = UUID.randomUUID().toString();
+    val ids = new ConcurrentHashMap<String, Set<String>>();
+    val maxStatements = new AtomicInteger();
+    val start = new CountDownLatch(1);
+
+    val tasks = Lists.<Callable<Void>> newArrayList();
+    for (int i = 0; i < THREADS; i++) {
+      tasks.add(() -> {
+        val repository = dbi.open(DonorRepository.class);
+        try {
+          start.await();
+          for (int k = 0; k < KEYS; k++) {
+            val donorId = "DO" + k;
+
+            log.reset();
+            val id = repository.findId(true, donorId, projectId, "1");
+            maxStatements.accumulateAndGet(log.getCount(), Math::max);
+
+            ids.computeIfAbsent(donorId, key -> ConcurrentHashMap.newKeySet()).add(id);
+          }
+        } finally {
+          repository.close();
+        }
+
+        return null;
+      });
+    }
+
+    val executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      val futures = Lists.<Future<Void>> newArrayList();
+      for (val task : tasks) {
+        futures.add(executor.submit(task));
+      }
+
+      start.countDown();
+      for (val future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, MINUTES);
+    }
+
+    // Exactly one id per key, and no two keys sharing an id
+    assertThat(ids).hasSize(KEYS);
+    val distinct = Lists.<String> newArrayList();
+    for (val keyIds : ids.values()) {
+      assertThat(keyIds).hasSize(1);
+      distinct.addAll(keyIds);
+    }
+    assertThat(distinct).doesNotHaveDuplicates();
+
+    val repository = dbi.open(DonorRepository.class);
+    try {
+      val bound = repository.isPostgres() ? MAX_UPSERT_STATEMENTS : MAX_LEGACY_STATEMENTS;
+      assertThat(maxStatements.get()).isLessThanOrEqualTo(bound);
+    } finally {
+      repository.close();
+    }
+  }
+
+  @Test
+  public void testConcurrentBulkCreate() throws Exception {
+    val projectId = UUID.randomUUID().toString();
+    val keys = Lists.<String[]> newArrayList();
+    for (int k = 0; k < KEYS; k++) {
+      keys.add(new String[] { "DO" + k, projectId, "1" });
+    }
+
+    val results = new ConcurrentHashMap<Integer, List<String>>();
+    val executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      val futures = Lists.<Future<?>> newArrayList();
+      for (int i = 0; i < THREADS; i++) {
+        val thread = i;
+        futures.add(executor.submit(() -> {
+          val repository = dbi.open(DonorRepository.class);
+          try {
+            results.put(thread, repository.findIds(true, keys));
+          } finally {
+            repository.close();
+          }
+        }));
+      }
+
+      for (val future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, MINUTES);
+    }
+
+    // Every thread observes the same ids in input order
+    val expected = results.get(0);
+    assertThat(expected).hasSize(KEYS).doesNotContainNull().doesNotHaveDuplicates();
+    for (val ids : results.values()) {
+      assertThat(ids).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  public void testNotFoundCache() {
+    val projectId = UUID.randomUUID().toString();
+    val repository = dbi.open(DonorRepository.class);
+    try {
+      repository.setNotFoundCache(CacheBuilder.newBuilder().build());
+
+      // The first probe queries, the second is answered from the cache
+      log.reset();
+      assertThatThrownBy(() -> repository.findId(false, "DO1", projectId, "1")).isInstanceOf(NotFoundException.class);
+      assertThat(log.getCount()).isEqualTo(1);
+
+      log.reset();
+      assertThatThrownBy(() -> repository.findId(false, "DO1", projectId, "1")).isInstanceOf(NotFoundException.class);
+      assertThat(log.getCount()).isEqualTo(0);
+
+      // Creating the key makes it visible immediately
+      val id = repository.findId(true, "DO1", projectId, "1");
+      assertThat(repository.findId(false, "DO1", projectId, "1")).isEqualTo(id);
+    } finally {
+      repository.close();
+    }
+  }
+
+  @Test
+  public void testKeyFilter() {
+    val projectId = UUID.randomUUID().toString();
+    val repository = dbi.open(DonorRepository.class);
+    try {
+      val id = repository.findId(true, "DO1", projectId, "1");
+      repository.setKeyFilter(new KeyFilter("donor", 0.01, 60000));
+      repository.loadKeyFilter();
+
+      // Loaded keys are still queried, definite misses are not
+      assertThat(repository.findId(false, "DO1", projectId, "1")).isEqualTo(id);
+      log.reset();
+      assertThatThrownBy(() -> repository.findId(false, "DO2", projectId, "1")).isInstanceOf(NotFoundException.class);
+      assertThat(log.getCount()).isEqualTo(0);
+      assertThat(repository.getKeyFilter().getAvoidedCount()).isEqualTo(1);
+
+      // Created keys are added to the filter
+      val created = repository.findId(true, "DO2", projectId, "1");
+      assertThat(repository.findId(false, "DO2", projectId, "1")).isEqualTo(created);
+    } finally {
+      repository.close();
+    }
+  }
+
+  @Test
+  public void testKeyFilterRebuild() throws InterruptedException {
+    val projectId = UUID.randomUUID().toString();
+    val repository = dbi.open(DonorRepository.class);
+    try {
+      repository.setKeyFilter(new KeyFilter("donor", 0.01, 1000));
+      repository.loadKeyFilter();
+
+      // Created behind the repository's back, as by another server
+      repository.getHandle().execute(
+          "INSERT INTO donor_ids (donor_id, project_id, creation_release) VALUES (?, ?, ?)", "DO1", projectId, "1");
+      assertThatThrownBy(() -> repository.findId(false, "DO1", projectId, "1")).isInstanceOf(NotFoundException.class);
+
+      // Rebuilt filters include it
+      repository.loadKeyFilter();
+      assertThat(repository.findId(false, "DO1", projectId, "1")).isNotNull();
+
+      // Misses are confirmed by the database once the filter is older than its max age
+      repository.getHandle().execute(
+          "INSERT INTO donor_ids (donor_id, project_id, creation_release) VALUES (?, ?, ?)", "DO2", projectId, "1");
+      Thread.sleep(1100);
+      assertThat(repository.findId(false, "DO2", projectId, "1")).isNotNull();
+    } finally {
+      repository.close();
+    }
+  }
+
+  @Test
+  public void testScanIds() {
+    val projectId = UUID.randomUUID().toString();
+    val repository = dbi.open(DonorRepository.class);
+    try {
+      val id = repository.findId(true, "DO1", projectId, "1");
+
+      val ids = new ConcurrentHashMap<List<String>, String>();
+      val count = repository.scanIds(Collections.emptyList(), ids::put);
+      assertThat(count).isEqualTo(ids.size());
+      assertThat(ids).containsEntry(Arrays.asList("DO1", projectId), id);
+    } finally {
+      repository.close();
+    }
+  }
+
+  /**
+   * Counts the statements executed by the current thread.
+   */
+  private static class CountingLog extends NoOpLog {
+
+    private final ThreadLocal<AtomicInteger> count = ThreadLocal.withInitial(AtomicInteger::new);
+
+    void reset() {
+      count.get().set(0);
+    }
+
+    int getCount() {
+      return count.get().get();
+    }
+
+    @Override
+    public void logSQL(long time, String sql) {
+      count.get().incrementAndGet();
+    }
+
+  }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013(c) The Ontario Institute for Cancer Research. All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the terms of the GNU Public
+ * License v3.0. You should have received a copy of the GNU General Public License along with this
+ * program. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.repository;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import lombok.val;
+
+public class SingleFlightTest {
+
+  private static final int THREADS = 8;
+
+  private final SingleFlight<String, Long> singleFlight = new SingleFlight<>();
+
+  @Test(timeout = 10000)
+  public void testCoalesce() throws Exception {
+    val calls = new AtomicInteger();
+    val release = new CountDownLatch(1);
+    val results = execute(() -> {
+      calls.incrementAndGet();
+      await(release);
+      return 1L;
+    }, release);
+
+    for (val result : results) {
+      assertThat(result.get()).isEqualTo(1L);
+    }
+    assertThat(calls.get()).isEqualTo(1);
+    assertThat(singleFlight.getExecutedCount()).isEqualTo(1);
+    assertThat(singleFlight.getCoalescedCount()).isEqualTo(THREADS - 1);
+    assertThat(singleFlight.getInFlightCount()).isEqualTo(0);
+
+    // Completed calls are not remembered
+    assertThat(singleFlight.execute("key", () -> 2L)).isEqualTo(2L);
+    assertThat(singleFlight.getExecutedCount()).isEqualTo(2);
+  }
+
+  @Test(timeout = 10000)
+  public void testSharedException() throws Exception {
+    val release = new CountDownLatch(1);
+    val results = execute(() -> {
+      await(release);
+      throw new NotFoundException("No id found");
+    }, release);
+
+    for (val result : results) {
+      try {
+        result.get();
+        fail("Expected exception");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause()).isInstanceOf(NotFoundException.class);
+      }
+    }
+    assertThat(singleFlight.getExecutedCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testDistinctKeys() {
+    assertThat(singleFlight.execute("a", () -> 1L)).isEqualTo(1L);
+    assertThat(singleFlight.execute("b", () -> null)).isNull();
+    assertThat(singleFlight.getExecutedCount()).isEqualTo(2);
+    assertThat(singleFlight.getCoalescedCount()).isEqualTo(0);
+  }
+
+  /**
+   * Starts {@link #THREADS} concurrent calls for the same key and releases the leader once the others are waiting.
+   */
+  private ArrayList<Future<Long>> execute(Supplier<Long> call, CountDownLatch release)
+      throws InterruptedException {
+    val executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      val results = new ArrayList<Future<Long>>();
+      for (int i = 0; i < THREADS; i++) {
+        results.add(executor.submit(() -> singleFlight.execute("key", call)));
+      }
+
+      while (singleFlight.getCoalescedCount() < THREADS - 1) {
+        Thread.sleep(10);
+      }
+      release.countDown();
+
+      return results;
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(5, SECONDS);
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
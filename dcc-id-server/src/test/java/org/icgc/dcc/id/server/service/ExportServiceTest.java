@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2016 The Ontario Institute for Cancer Research. All rights reserved.
+ *                                                                                                               
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with                                  
+ * this program. If not, see <http://www.gnu.org/licenses/>.                                                     
+ *                                                                                                               
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY                           
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES                          
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT                           
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,                                
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED                          
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;                               
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER                              
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN                         
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.icgc.dcc.id.server.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.icgc.dcc.id.server.service.ExportService.getIdRanges;
+
+import org.icgc.dcc.id.server.service.ExportService.IdRange;
+import org.junit.Test;
+
+public class ExportServiceTest {
+
+  @Test
+  public void testGetIdRanges() {
+    assertThat(getIdRanges(1L, 25L, 10)).containsExactly(
+        new IdRange(null, 10L),
+        new IdRange(10L, 20L),
+        new IdRange(20L, null));
+  }
+
+  @Test
+  public void testGetIdRangesExactMultiple() {
+    assertThat(getIdRanges(101L, 120L, 10)).containsExactly(
+        new IdRange(null, 110L),
+        new IdRange(110L, null));
+  }
+
+  @Test
+  public void testGetIdRangesSingleRange() {
+    assertThat(getIdRanges(5L, 5L, 10)).containsExactly(new IdRange(null, null));
+  }
+
+  @Test
+  public void testGetIdRangesEmptyTable() {
+    assertThat(getIdRanges(null, null, 10)).containsExactly(new IdRange(null, null));
+  }
+
+}